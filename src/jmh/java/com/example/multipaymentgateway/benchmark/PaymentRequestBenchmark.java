@@ -0,0 +1,160 @@
+package com.example.multipaymentgateway.benchmark;
+
+import com.example.multipaymentgateway.controller.PaymentController;
+import com.example.multipaymentgateway.dto.PaymentRequest;
+import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.service.AsyncPaymentService;
+import com.example.multipaymentgateway.service.GatewayRouter;
+import com.example.multipaymentgateway.service.PaymentGateway;
+import com.example.multipaymentgateway.service.PaymentStatusService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-process part of {@code POST /api/payments}, with gateways stubbed out: controller dispatch (routing,
+ * response decoration), bean validation of the request and JSON serialization of the response.
+ * <p>
+ * Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.args="PaymentRequestBenchmark -prof gc"}; the gc profiler
+ * reports allocation per operation ({@code gc.alloc.rate.norm}), which is the number to watch for regressions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaymentRequestBenchmark {
+
+    private PaymentController routedController;
+    private PaymentRequest routedRequest;
+    private PaymentRequest preferredRequest;
+    private Validator validator;
+    private ObjectMapper objectMapper;
+    private PaymentResponse response;
+
+    @Setup
+    public void setUp() {
+        Map<String, PaymentGateway> gateways = new LinkedHashMap<>();
+        gateways.put("stripeService", new StubGateway("stripe"));
+        gateways.put("razorpayService", new StubGateway("razorpay"));
+        GatewayRouter gatewayRouter = new GatewayRouter(gateways, CircuitBreakerRegistry.ofDefaults(), new SimpleMeterRegistry(),
+                "stripeService", 0.2, 0.5, 0.0);
+        PaymentStatusService paymentStatusService = new PaymentStatusService(null, new SimpleMeterRegistry(), 100, Duration.ofSeconds(5));
+        // Idempotency and batch services are not on the path being measured (no Idempotency-Key, single request);
+        // async work runs on the calling thread so only dispatch itself is measured
+        routedController = new PaymentController(gateways, null, null, gatewayRouter,
+                new AsyncPaymentService(Runnable::run, paymentStatusService));
+
+        routedRequest = request(null);
+        preferredRequest = request("razorpay");
+
+        validator = Validation.buildDefaultValidatorFactory().getValidator();
+        // Same settings as Spring Boot's auto-configured mapper
+        objectMapper = JsonMapper.builder()
+                .findAndAddModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        response = new StubGateway("stripe").processPayment(routedRequest);
+        response.setTimestamp(LocalDateTime.now());
+    }
+
+    @Benchmark
+    public ResponseEntity<PaymentResponse> dispatchRouted() {
+        return routedController.processPayment(routedRequest, null).join();
+    }
+
+    @Benchmark
+    public ResponseEntity<PaymentResponse> dispatchPreferredGateway() {
+        return routedController.processPayment(preferredRequest, null).join();
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<PaymentRequest>> validateRequest() {
+        return validator.validate(routedRequest);
+    }
+
+    @Benchmark
+    public byte[] serializeResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    private static PaymentRequest request(String preferredGateway) {
+        PaymentRequest request = new PaymentRequest();
+        request.setAmount(new BigDecimal("1499.00"));
+        request.setCurrency("INR");
+        request.setPaymentMethod("card");
+        request.setCustomerEmail("bench@example.com");
+        request.setPreferredGateway(preferredGateway);
+        request.setOrderId("order-42");
+        return request;
+    }
+
+    private static final class StubGateway implements PaymentGateway {
+
+        private final String name;
+
+        private StubGateway(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Payment preparePayment(PaymentRequest paymentRequest) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public PaymentResponse processPayment(PaymentRequest paymentRequest) {
+            PaymentResponse response = new PaymentResponse();
+            response.setTransactionId("0190f5d2-7c4e-7a1b-8c3d-2e4f6a8b0c1d");
+            response.setGatewayTransactionId("pi_3Nx0000000000000");
+            response.setStatus("SUCCESS");
+            response.setMessage("Payment processed successfully.");
+            response.setGatewayName(name);
+            response.setGatewaySpecificResponse(Map.of("stripe_payment_intent_id", "pi_3Nx0000000000000"));
+            return response;
+        }
+
+        @Override
+        public PaymentResponse processPendingPayment(String transactionId, PaymentRequest paymentRequest) {
+            return processPayment(paymentRequest);
+        }
+
+        @Override
+        public PaymentResponse getPaymentStatus(String transactionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public PaymentResponse refundPayment(String transactionId, BigDecimal amount) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public PaymentResponse recoverPayment(String transactionId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getGatewayName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.multipaymentgateway.benchmark;
+
+import com.example.multipaymentgateway.service.RandomTransactionIdGenerator;
+import com.example.multipaymentgateway.service.TimeOrderedTransactionIdGenerator;
+import com.example.multipaymentgateway.service.TransactionIdGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the transaction ID generators, single-threaded and with every core generating at once
+ * (the contended case that {@code UUID.randomUUID()}'s shared {@code SecureRandom} suffers from).
+ * <p>
+ * Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.args="TransactionIdGeneratorBenchmark -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionIdGeneratorBenchmark {
+
+    private final TransactionIdGenerator random = new RandomTransactionIdGenerator();
+    private final TransactionIdGenerator timeOrdered = new TimeOrderedTransactionIdGenerator();
+
+    @Benchmark
+    @Threads(1)
+    public String randomUuid() {
+        return random.nextId();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String timeOrdered() {
+        return timeOrdered.nextId();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String randomUuidContended() {
+        return random.nextId();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String timeOrderedContended() {
+        return timeOrdered.nextId();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Status mapping, amount conversion and response construction done by the gateways on every call. Lives in the service package
+ * because the mappers and {@code createPaymentResponse} are package-private.
+ * <p>
+ * Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.args="GatewayMappingBenchmark -prof gc"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GatewayMappingBenchmark {
+
+    private static final String[] STRIPE_STATUSES = {
+            "requires_payment_method", "requires_confirmation", "requires_action", "processing",
+            "succeeded", "canceled", "requires_capture"
+    };
+    private static final String[] RAZORPAY_PAYMENT_STATUSES = {"created", "authorized", "captured", "failed", "refunded"};
+    private static final String[] RAZORPAY_ORDER_STATUSES = {"created", "attempted", "paid"};
+
+    private StripeService stripeService;
+    private RazorpayService razorpayService;
+    private Payment payment;
+
+    @Setup
+    public void setUp() {
+        // Only the pure, in-process methods are exercised; none of the collaborators are touched
+        stripeService = new StripeService(null, null, null, null, null, null);
+        razorpayService = new RazorpayService(null, null, null, null, null, null);
+
+        payment = new Payment();
+        payment.setTransactionId("0190f5d2-7c4e-7a1b-8c3d-2e4f6a8b0c1d");
+        payment.setGatewayTransactionId("pay_ABC123DEF456");
+        payment.setPaymentGateway("razorpay");
+        payment.setAmount(new BigDecimal("1499.00"));
+        payment.setCurrency("INR");
+        payment.setStatus(PaymentStatus.SUCCESS);
+        payment.setUpdatedAt(LocalDateTime.now());
+    }
+
+    @Benchmark
+    public void mapStripePaymentIntentStatus(Blackhole blackhole) {
+        for (String status : STRIPE_STATUSES) {
+            blackhole.consume(StripeService.mapStripePaymentIntentStatus(status));
+        }
+    }
+
+    @Benchmark
+    public void mapRazorpayStatus(Blackhole blackhole) {
+        for (String status : RAZORPAY_PAYMENT_STATUSES) {
+            blackhole.consume(RazorpayService.mapRazorpayOrderStatusToInternalStatus(null, status));
+        }
+        for (String status : RAZORPAY_ORDER_STATUSES) {
+            blackhole.consume(RazorpayService.mapRazorpayOrderStatusToInternalStatus(status, null));
+        }
+    }
+
+    @Benchmark
+    public PaymentResponse createStripePaymentResponse() {
+        return stripeService.createPaymentResponse(payment, "Payment processed successfully.", "pi_secret_123");
+    }
+
+    @Benchmark
+    public PaymentResponse createRazorpayPaymentResponse() {
+        return razorpayService.createPaymentResponse(payment, "Payment processed successfully.", "order_ABC123");
+    }
+
+    // The amount sent with every create and refund call
+    @Benchmark
+    public long amountInMinorUnits() {
+        return payment.toMoney().minorUnits();
+    }
+}
@@ -4,10 +4,12 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableJpaRepositories("com.example.multipaymentgateway.repository")
 @EntityScan("com.example.multipaymentgateway.model")
+@EnableScheduling
 public class MultiPaymentGatewayApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,67 @@
+package com.example.multipaymentgateway.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor that runs blocking gateway work (SDK calls, short transactions) for the asynchronous API.
+ * <p>
+ * {@code payments.async.executor=virtual} (default) starts one virtual thread per task, so tens of thousands of
+ * in-flight gateway calls need no pool sizing. Virtual threads need Java 21+; on older runtimes, or with
+ * {@code payments.async.executor=platform}, a fixed pool of {@code payments.async.platform-threads} is used instead.
+ * Its queue holds at most {@code payments.async.queue-capacity} waiting tasks; beyond that, work is rejected with a
+ * {@link java.util.concurrent.RejectedExecutionException} (answered with {@code 503 Service Unavailable}) rather than
+ * queued until the async request timeout.
+ */
+@Configuration
+public class GatewayExecutorConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayExecutorConfig.class);
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService gatewayCallExecutor(@Value("${payments.async.executor:virtual}") String mode,
+                                               @Value("${payments.async.platform-threads:200}") int platformThreads,
+                                               @Value("${payments.async.queue-capacity:1000}") int queueCapacity) {
+        if ("virtual".equalsIgnoreCase(mode)) {
+            ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+            if (virtualThreads != null) {
+                logger.info("Gateway calls run on virtual threads");
+                return virtualThreads;
+            }
+            logger.warn("Virtual threads need Java 21+ (running {}); falling back to {} platform threads",
+                    Runtime.version(), platformThreads);
+        }
+        logger.info("Gateway calls run on {} platform threads with up to {} queued", platformThreads, queueCapacity);
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(platformThreads, platformThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "gateway-call-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()); // Sheds load: the caller gets a RejectedExecutionException
+    }
+
+    // Looked up reflectively: the build targets Java 17 (java.version in the pom), and the same jar picks virtual
+    // threads up when it is run on Java 21+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.multipaymentgateway.controller;
+
+import com.example.multipaymentgateway.exception.ResourceNotFoundException;
+import com.example.multipaymentgateway.service.PaymentAuditEntry;
+import com.example.multipaymentgateway.service.PaymentAuditLog;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Support and operations access to the raw gateway payloads kept in the {@link PaymentAuditLog}.
+ */
+@RestController
+@RequestMapping("/api/admin/payments")
+public class PaymentAuditController {
+
+    private final PaymentAuditLog paymentAuditLog;
+
+    public PaymentAuditController(PaymentAuditLog paymentAuditLog) {
+        this.paymentAuditLog = paymentAuditLog;
+    }
+
+    @GetMapping("/{transactionId}/payloads")
+    public ResponseEntity<List<PaymentAuditEntry>> getPayloadHistory(@PathVariable String transactionId) {
+        List<PaymentAuditEntry> history = paymentAuditLog.history(transactionId);
+        if (history.isEmpty()) {
+            throw new ResourceNotFoundException("No gateway payloads recorded for transaction " + transactionId);
+        }
+        return ResponseEntity.ok(history);
+    }
+}
@@ -2,6 +2,11 @@ package com.example.multipaymentgateway.controller;
 
 import com.example.multipaymentgateway.dto.PaymentRequest;
 import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.example.multipaymentgateway.service.AsyncPaymentService;
+import com.example.multipaymentgateway.service.BatchPaymentService;
+import com.example.multipaymentgateway.service.GatewayRouter;
+import com.example.multipaymentgateway.service.IdempotencyService;
 import com.example.multipaymentgateway.service.PaymentGateway;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,89 +16,139 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/payments")
 public class PaymentController {
 
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    // Statuses a payment or refund call may come back with when the gateway accepted it
+    private static final Set<String> ACCEPTED_PAYMENT_STATUSES = Set.of(PaymentStatus.SUCCESS.name(), PaymentStatus.PENDING.name(),
+            PaymentStatus.PENDING_USER_ACTION.name(), PaymentStatus.AUTHORIZED.name());
+    private static final Set<String> ACCEPTED_REFUND_STATUSES = Set.of(PaymentStatus.REFUNDED.name(), PaymentStatus.PARTIALLY_REFUNDED.name());
+
     private final Map<String, PaymentGateway> paymentGateways;
+    private final IdempotencyService idempotencyService;
+    private final BatchPaymentService batchPaymentService;
+    private final GatewayRouter gatewayRouter;
+    private final AsyncPaymentService asyncPaymentService;
 
     // Using a Map to inject all beans that implement PaymentGateway
     // The key will be the bean name (e.g., "stripeService", "razorpayService")
     @Autowired
-    public PaymentController(Map<String, PaymentGateway> paymentGateways) {
+    public PaymentController(Map<String, PaymentGateway> paymentGateways, IdempotencyService idempotencyService,
+                             BatchPaymentService batchPaymentService, GatewayRouter gatewayRouter,
+                             AsyncPaymentService asyncPaymentService) {
         this.paymentGateways = paymentGateways;
+        this.idempotencyService = idempotencyService;
+        this.batchPaymentService = batchPaymentService;
+        this.gatewayRouter = gatewayRouter;
+        this.asyncPaymentService = asyncPaymentService;
     }
 
     @PostMapping
-    public ResponseEntity<PaymentResponse> processPayment(@Valid @RequestBody PaymentRequest paymentRequest) {
-        PaymentGateway gateway = selectGateway(paymentRequest.getPreferredGateway());
+    public CompletableFuture<ResponseEntity<PaymentResponse>> processPayment(@Valid @RequestBody PaymentRequest paymentRequest,
+                                                                             @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            PaymentGateway gateway = selectGateway(paymentRequest.getPreferredGateway(), paymentRequest.getCurrency());
+            if (gateway == null) {
+                return CompletableFuture.completedFuture(badRequest("Invalid or unsupported payment gateway specified."));
+            }
+            return asyncPaymentService.processPaymentAsync(gateway, paymentRequest)
+                    .thenApply(response -> toPaymentEntity(paymentRequest, response));
+        }
+        if (idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            return CompletableFuture.completedFuture(
+                    badRequest("Idempotency-Key must not be longer than " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters."));
+        }
+        // A retried request with the same key gets the stored response instead of a second charge.
+        return asyncPaymentService.supplyAsync(
+                () -> idempotencyService.execute(idempotencyKey, paymentRequest, () -> doProcessPayment(paymentRequest)));
+    }
+
+    private ResponseEntity<PaymentResponse> doProcessPayment(PaymentRequest paymentRequest) {
+        PaymentGateway gateway = selectGateway(paymentRequest.getPreferredGateway(), paymentRequest.getCurrency());
         if (gateway == null) {
-            PaymentResponse errorResponse = new PaymentResponse();
-            errorResponse.setStatus("ERROR");
-            errorResponse.setMessage("Invalid or unsupported payment gateway specified.");
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+            return badRequest("Invalid or unsupported payment gateway specified.");
         }
+        return toPaymentEntity(paymentRequest, gateway.processPayment(paymentRequest));
+    }
 
+    private static ResponseEntity<PaymentResponse> toPaymentEntity(PaymentRequest paymentRequest, PaymentResponse response) {
         // Populate response DTO fields that are known at this stage
-        PaymentResponse response = gateway.processPayment(paymentRequest);
         response.setAmount(paymentRequest.getAmount());
         response.setCurrency(paymentRequest.getCurrency());
         response.setTimestamp(java.time.LocalDateTime.now());
 
-        if ("SUCCESS".equals(response.getStatus()) || "PENDING".equals(response.getStatus())) {
+        if (response.getStatus() != null && ACCEPTED_PAYMENT_STATUSES.contains(response.getStatus())) {
             return ResponseEntity.ok(response);
         } else {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         }
     }
 
+    /**
+     * Processes many payments in one call. Items are validated and fail independently;
+     * the response carries one result per item, in request order.
+     */
+    @PostMapping("/batch")
+    public CompletableFuture<ResponseEntity<?>> processBatch(@RequestBody List<PaymentRequest> paymentRequests) {
+        if (paymentRequests == null || paymentRequests.isEmpty() || paymentRequests.size() > batchPaymentService.getMaxItems()) {
+            return CompletableFuture.completedFuture(
+                    badRequest("A batch must contain between 1 and " + batchPaymentService.getMaxItems() + " payment requests."));
+        }
+        return asyncPaymentService.<ResponseEntity<?>>supplyAsync(() -> ResponseEntity.ok(batchPaymentService.processBatch(paymentRequests,
+                paymentRequest -> selectGateway(paymentRequest.getPreferredGateway(), paymentRequest.getCurrency()))));
+    }
+
     @GetMapping("/{transactionId}/status")
-    public ResponseEntity<PaymentResponse> getPaymentStatus(@PathVariable String transactionId, @RequestParam String gatewayName) {
-        PaymentGateway gateway = selectGateway(gatewayName);
+    public CompletableFuture<ResponseEntity<PaymentResponse>> getPaymentStatus(@PathVariable String transactionId, @RequestParam String gatewayName) {
+        PaymentGateway gateway = selectGateway(gatewayName, null);
         if (gateway == null) {
-            PaymentResponse errorResponse = new PaymentResponse();
-            errorResponse.setStatus("ERROR");
-            errorResponse.setMessage("Invalid or unsupported payment gateway specified for status check.");
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+            return CompletableFuture.completedFuture(badRequest("Invalid or unsupported payment gateway specified for status check."));
         }
-        PaymentResponse response = gateway.getPaymentStatus(transactionId);
-        response.setTimestamp(java.time.LocalDateTime.now());
-        return ResponseEntity.ok(response);
+        // Terminal and recently fetched statuses are answered without a gateway round trip
+        return asyncPaymentService.getPaymentStatusAsync(gateway, transactionId).thenApply(response -> {
+            response.setTimestamp(java.time.LocalDateTime.now());
+            return ResponseEntity.ok(response);
+        });
     }
 
     @PostMapping("/{transactionId}/refund")
-    public ResponseEntity<PaymentResponse> refundPayment(@PathVariable String transactionId,
-                                                       @RequestParam String gatewayName,
-                                                       @RequestParam(required = false) BigDecimal amount) {
-        PaymentGateway gateway = selectGateway(gatewayName);
+    public CompletableFuture<ResponseEntity<PaymentResponse>> refundPayment(@PathVariable String transactionId,
+                                                                            @RequestParam String gatewayName,
+                                                                            @RequestParam(required = false) BigDecimal amount) {
+        PaymentGateway gateway = selectGateway(gatewayName, null);
         if (gateway == null) {
-            PaymentResponse errorResponse = new PaymentResponse();
-            errorResponse.setStatus("ERROR");
-            errorResponse.setMessage("Invalid or unsupported payment gateway specified for refund.");
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+            return CompletableFuture.completedFuture(badRequest("Invalid or unsupported payment gateway specified for refund."));
         }
-        PaymentResponse response = gateway.refundPayment(transactionId, amount);
-        response.setTimestamp(java.time.LocalDateTime.now());
+        return asyncPaymentService.refundPaymentAsync(gateway, transactionId, amount).thenApply(response -> {
+            response.setTimestamp(java.time.LocalDateTime.now());
+            if (response.getStatus() != null && ACCEPTED_REFUND_STATUSES.contains(response.getStatus())) {
+                return ResponseEntity.ok(response);
+            } else {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+            }
+        });
+    }
 
-        if (response.getStatus() != null && response.getStatus().contains("SUCCESS")) {
-            return ResponseEntity.ok(response);
-        } else {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
-        }
+    private static ResponseEntity<PaymentResponse> badRequest(String message) {
+        PaymentResponse errorResponse = new PaymentResponse();
+        errorResponse.setStatus("ERROR");
+        errorResponse.setMessage(message);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
     }
 
-    private PaymentGateway selectGateway(String preferredGateway) {
+    private PaymentGateway selectGateway(String preferredGateway, String currency) {
         if (preferredGateway != null && !preferredGateway.trim().isEmpty()) {
             return paymentGateways.get(preferredGateway.toLowerCase() + "Service");
         }
-        // TODO: Implement a default gateway selection strategy (e.g., from config, round-robin)
-        // For now, if no preference, try to pick the first one available or a configured default.
-        // This is a naive default, should be improved.
-        if (!paymentGateways.isEmpty()) {
-            return paymentGateways.values().iterator().next();
-        }
-        return null;
+        // No preference: the fastest healthy gateway that supports the currency
+        return gatewayRouter.select(currency);
     }
 }
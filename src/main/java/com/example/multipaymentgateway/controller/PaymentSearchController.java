@@ -0,0 +1,93 @@
+package com.example.multipaymentgateway.controller;
+
+import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.example.multipaymentgateway.service.PaymentExportService;
+import com.example.multipaymentgateway.service.PaymentSearchCriteria;
+import com.example.multipaymentgateway.service.PaymentSearchService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Lists stored payments for support and operations, newest first. Answered from the database only; no gateway is
+ * called. Follow {@code nextCursor} to page through the results, or use {@code /export} to download every match.
+ */
+@RestController
+@RequestMapping("/api/payments")
+public class PaymentSearchController {
+
+    private final PaymentSearchService paymentSearchService;
+    private final PaymentExportService paymentExportService;
+
+    public PaymentSearchController(PaymentSearchService paymentSearchService, PaymentExportService paymentExportService) {
+        this.paymentSearchService = paymentSearchService;
+        this.paymentExportService = paymentExportService;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> searchPayments(@RequestParam(required = false) String status,
+                                            @RequestParam(required = false) String gateway,
+                                            @RequestParam(required = false) String currency,
+                                            @RequestParam(required = false) String orderId,
+                                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+                                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = "50") int limit) {
+        try {
+            PaymentSearchCriteria criteria = new PaymentSearchCriteria(parseStatus(status), gateway, currency, orderId, createdFrom, createdTo);
+            return ResponseEntity.ok(paymentSearchService.search(criteria, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            PaymentResponse errorResponse = new PaymentResponse();
+            errorResponse.setStatus("ERROR");
+            errorResponse.setMessage(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+        }
+    }
+
+    /**
+     * Streams every payment matching the search filters, oldest first, as CSV or NDJSON (optionally gzipped).
+     * Written straight to the response on the request thread rather than as an async result, so a long export isn't
+     * cut off by {@code spring.mvc.async.request-timeout}.
+     */
+    @GetMapping("/export")
+    public void exportPayments(@RequestParam(required = false) String status,
+                               @RequestParam(required = false) String gateway,
+                               @RequestParam(required = false) String currency,
+                               @RequestParam(required = false) String orderId,
+                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo,
+                               @RequestParam(defaultValue = "csv") String format,
+                               @RequestParam(defaultValue = "false") boolean gzip,
+                               HttpServletResponse response) throws IOException {
+        PaymentExportService.Format exportFormat;
+        try {
+            exportFormat = PaymentExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Unsupported export format: " + format);
+            return;
+        }
+        PaymentStatus statusFilter;
+        try {
+            statusFilter = parseStatus(status);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+        String fileName = "payments." + exportFormat.getFileExtension() + (gzip ? ".gz" : "");
+        response.setContentType(gzip ? "application/gzip" : exportFormat.getContentType() + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+        PaymentSearchCriteria criteria = new PaymentSearchCriteria(statusFilter, gateway, currency, orderId, createdFrom, createdTo);
+        paymentExportService.export(criteria, exportFormat, gzip, response.getOutputStream());
+    }
+
+    private static PaymentStatus parseStatus(String status) {
+        return status == null ? null : PaymentStatus.parse(status);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.multipaymentgateway.controller;
+
+import com.example.multipaymentgateway.service.WebhookService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Receives asynchronous payment updates from the gateways, so clients don't have to poll the status endpoint.
+ * Both endpoints answer 200 only once the event is recorded (or known to be a duplicate or of a type we ignore), so the
+ * gateway stops redelivering it; any failure before that is answered with an error and the gateway redelivers.
+ */
+@RestController
+@RequestMapping("/api/webhooks")
+public class WebhookController {
+
+    private final WebhookService webhookService;
+
+    public WebhookController(WebhookService webhookService) {
+        this.webhookService = webhookService;
+    }
+
+    @PostMapping("/stripe")
+    public ResponseEntity<Void> handleStripeWebhook(@RequestBody String payload,
+                                                    @RequestHeader(value = "Stripe-Signature", required = false) String signature) {
+        webhookService.handleStripeEvent(payload, signature);
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping("/razorpay")
+    public ResponseEntity<Void> handleRazorpayWebhook(@RequestBody String payload,
+                                                      @RequestHeader(value = "X-Razorpay-Signature", required = false) String signature,
+                                                      @RequestHeader(value = "X-Razorpay-Event-Id", required = false) String eventId) {
+        webhookService.handleRazorpayEvent(payload, signature, eventId);
+        return ResponseEntity.ok().build();
+    }
+}
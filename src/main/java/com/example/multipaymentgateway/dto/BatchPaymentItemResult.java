@@ -0,0 +1,20 @@
+package com.example.multipaymentgateway.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+/**
+ * Outcome of a single item in a batch payment request.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchPaymentItemResult {
+
+    private int index; // Position of the item in the submitted list
+    private boolean success; // False if the item failed validation, persistence or the gateway call, or is pending
+    private boolean pending; // Still at the gateway when the batch answered; poll the payment's status by transactionId
+    private String error; // Why the item failed, if it did
+    private PaymentResponse payment; // Gateway response for the item, if one was produced
+}
@@ -0,0 +1,23 @@
+package com.example.multipaymentgateway.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object for the result of a batch payment request. Items succeed or fail independently,
+ * and those the gateway hasn't answered within the batch timeout are reported as pending.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchPaymentResponse {
+
+    private int total;
+    private int succeeded;
+    private int pending; // Still being processed; see BatchPaymentItemResult.pending
+    private int failed;
+    private List<BatchPaymentItemResult> results; // In the same order as the submitted items
+}
@@ -1,12 +1,16 @@
 package com.example.multipaymentgateway.dto;
 
+import com.example.multipaymentgateway.model.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 
+import jakarta.validation.constraints.AssertTrue;
 import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
 import java.math.BigDecimal;
 import java.util.Map;
 
@@ -39,9 +43,27 @@ public class PaymentRequest {
     // For UPI: upiId
     private Map<String, Object> paymentDetails;
 
+    // Optional: Merchant whose gateway credentials are used (payments.merchants.<merchantId>.*); the default merchant if absent
+    @Pattern(regexp = "[a-z0-9-]{1,64}", message = "Merchant ID must be 1-64 lowercase letters, digits or hyphens")
+    private String merchantId;
+
     // Optional: Order ID from the client's system
     private String orderId;
 
     // Optional: Description of the payment
     private String description;
+
+    // Rejects 10.005 USD or 10.5 JPY instead of letting the conversion to minor units truncate it
+    @JsonIgnore
+    @AssertTrue(message = "Amount has more decimal places than the currency allows")
+    public boolean isAmountExact() {
+        return amount == null || currency == null || Money.isExact(amount, currency);
+    }
+
+    /**
+     * The amount in the currency's minor unit, as sent to the gateways. Only valid after validation.
+     */
+    public Money toMoney() {
+        return Money.of(amount, currency);
+    }
 }
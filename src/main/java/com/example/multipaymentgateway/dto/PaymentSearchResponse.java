@@ -0,0 +1,19 @@
+package com.example.multipaymentgateway.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object for one page of payment search results, newest first.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentSearchResponse {
+
+    private List<PaymentSummary> payments;
+    private String nextCursor; // Pass as "cursor" to get the next page; null on the last page
+}
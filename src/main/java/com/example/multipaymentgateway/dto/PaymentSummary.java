@@ -0,0 +1,28 @@
+package com.example.multipaymentgateway.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Data Transfer Object for a stored payment as listed by the search API; no gateway call is made to build it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentSummary {
+
+    private String transactionId;
+    private String gatewayTransactionId;
+    private String gatewayOrderId; // e.g. the Razorpay order, for gateways that create one
+    private String orderId; // Client's order identifier
+    private String gatewayName;
+    private String status;
+    private BigDecimal amount;
+    private String currency;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -1,6 +1,8 @@
 package com.example.multipaymentgateway.exception;
 
 import com.example.multipaymentgateway.dto.PaymentResponse;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -14,6 +16,7 @@ import org.springframework.web.context.request.WebRequest;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @ControllerAdvice
 public class GlobalExceptionHandler {
@@ -77,6 +80,87 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
     }
 
+    /**
+     * Handles reuse of an Idempotency-Key with a different payload, or while the original request is still running.
+     */
+    @ExceptionHandler(IdempotencyKeyConflictException.class)
+    public ResponseEntity<PaymentResponse> handleIdempotencyKeyConflictException(
+            IdempotencyKeyConflictException ex, WebRequest request) {
+        logger.warn("Idempotency conflict for request {} (key {}): {}", request.getDescription(false), ex.getIdempotencyKey(), ex.getMessage());
+
+        PaymentResponse errorResponse = new PaymentResponse();
+        errorResponse.setStatus("IDEMPOTENCY_CONFLICT");
+        errorResponse.setMessage(ex.getMessage());
+        errorResponse.setTimestamp(LocalDateTime.now());
+
+        return new ResponseEntity<>(errorResponse, HttpStatus.CONFLICT);
+    }
+
+    /**
+     * Handles webhooks whose signature or payload could not be verified.
+     */
+    @ExceptionHandler(WebhookVerificationException.class)
+    public ResponseEntity<PaymentResponse> handleWebhookVerificationException(
+            WebhookVerificationException ex, WebRequest request) {
+        logger.warn("Rejected {} webhook for request {}: {}", ex.getGatewayName(), request.getDescription(false), ex.getMessage());
+
+        PaymentResponse errorResponse = new PaymentResponse();
+        errorResponse.setStatus("INVALID_WEBHOOK");
+        errorResponse.setMessage(ex.getMessage());
+        errorResponse.setGatewayName(ex.getGatewayName());
+        errorResponse.setTimestamp(LocalDateTime.now());
+
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Handles calls rejected because the gateway's circuit breaker is open.
+     */
+    @ExceptionHandler(CallNotPermittedException.class)
+    public ResponseEntity<PaymentResponse> handleCallNotPermittedException(
+            CallNotPermittedException ex, WebRequest request) {
+        logger.warn("Circuit open for gateway {}, rejecting request {}", ex.getCausingCircuitBreakerName(), request.getDescription(false));
+
+        PaymentResponse errorResponse = new PaymentResponse();
+        errorResponse.setStatus("GATEWAY_UNAVAILABLE");
+        errorResponse.setMessage("Payment gateway '" + ex.getCausingCircuitBreakerName() + "' is temporarily unavailable. Please try again later.");
+        errorResponse.setGatewayName(ex.getCausingCircuitBreakerName());
+        errorResponse.setTimestamp(LocalDateTime.now());
+
+        return new ResponseEntity<>(errorResponse, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Handles calls rejected because the gateway already has its maximum number of calls in flight.
+     */
+    @ExceptionHandler(BulkheadFullException.class)
+    public ResponseEntity<PaymentResponse> handleBulkheadFullException(
+            BulkheadFullException ex, WebRequest request) {
+        logger.warn("Bulkhead full, rejecting request {}: {}", request.getDescription(false), ex.getMessage());
+
+        PaymentResponse errorResponse = new PaymentResponse();
+        errorResponse.setStatus("GATEWAY_BUSY");
+        errorResponse.setMessage("Payment gateway is handling too many requests. Please try again later.");
+        errorResponse.setTimestamp(LocalDateTime.now());
+
+        return new ResponseEntity<>(errorResponse, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Handles work rejected because the gateway call executor's queue is full.
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<PaymentResponse> handleRejectedExecutionException(
+            RejectedExecutionException ex, WebRequest request) {
+        logger.warn("Gateway call executor saturated, rejecting request {}", request.getDescription(false));
+
+        PaymentResponse errorResponse = new PaymentResponse();
+        errorResponse.setStatus("SERVER_BUSY");
+        errorResponse.setMessage("The service is handling too many requests. Please try again later.");
+        errorResponse.setTimestamp(LocalDateTime.now());
+
+        return new ResponseEntity<>(errorResponse, HttpStatus.SERVICE_UNAVAILABLE);
+    }
 
     /**
      * Handles any other generic exceptions.
@@ -0,0 +1,14 @@
+package com.example.multipaymentgateway.exception;
+
+public class IdempotencyKeyConflictException extends RuntimeException {
+    private final String idempotencyKey;
+
+    public IdempotencyKeyConflictException(String message, String idempotencyKey) {
+        super(message);
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+}
@@ -4,6 +4,14 @@ public class PaymentProcessingException extends RuntimeException {
     private final String transactionId;
     private final String gatewayName;
 
+    public PaymentProcessingException(String message) {
+        this(message, null, null);
+    }
+
+    public PaymentProcessingException(String message, Throwable cause) {
+        this(message, null, null, cause);
+    }
+
     public PaymentProcessingException(String message, String transactionId, String gatewayName) {
         super(message);
         this.transactionId = transactionId;
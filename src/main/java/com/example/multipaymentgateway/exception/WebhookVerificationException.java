@@ -0,0 +1,19 @@
+package com.example.multipaymentgateway.exception;
+
+public class WebhookVerificationException extends RuntimeException {
+    private final String gatewayName;
+
+    public WebhookVerificationException(String message, String gatewayName) {
+        super(message);
+        this.gatewayName = gatewayName;
+    }
+
+    public WebhookVerificationException(String message, String gatewayName, Throwable cause) {
+        super(message, cause);
+        this.gatewayName = gatewayName;
+    }
+
+    public String getGatewayName() {
+        return gatewayName;
+    }
+}
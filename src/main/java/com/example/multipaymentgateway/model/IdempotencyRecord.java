@@ -0,0 +1,61 @@
+package com.example.multipaymentgateway.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Durable record of a request made with an {@code Idempotency-Key} header, and of the response
+ * returned for it once processing completed (successfully or not). An IN_PROGRESS record is leased
+ * to the request processing it, so a key whose instance died is not blocked until it is purged.
+ */
+@Entity
+@Table(name = "idempotency_keys")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+
+    public static final String STATUS_IN_PROGRESS = "IN_PROGRESS";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(unique = true, nullable = false, updatable = false)
+    private String idempotencyKey; // Client-supplied key
+
+    @Column(nullable = false, updatable = false, length = 64)
+    private String requestHash; // SHA-256 of the request body, to reject key reuse with a different payload
+
+    @Column(nullable = false, length = 20)
+    private String status; // IN_PROGRESS or COMPLETED
+
+    private LocalDateTime leaseExpiresAt; // While IN_PROGRESS: after this, another request with the key may take over
+
+    private Integer responseStatusCode;
+
+    @Lob
+    private String responseBody; // Serialized PaymentResponse
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
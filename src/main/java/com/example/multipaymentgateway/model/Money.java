@@ -0,0 +1,119 @@
+package com.example.multipaymentgateway.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An amount in the currency's minor unit (cents, paise, yen, fils), which is what the gateways expect. The number of
+ * decimal places comes from ISO 4217: 0 for JPY or KRW, 3 for KWD or BHD, 2 for everything not listed.
+ * <p>
+ * Conversions are exact: an amount with more decimal places than its currency has, or one that doesn't fit in a
+ * {@code long}, is rejected rather than truncated.
+ */
+public record Money(long minorUnits, String currency) {
+
+    private static final int DEFAULT_EXPONENT = 2;
+    // Currencies whose minor unit is not 1/100, keyed by both upper- and lower-case code: Stripe payments store the
+    // currency in lower case and Razorpay payments in upper case, so lookups need no case conversion.
+    private static final Map<String, Integer> EXPONENTS = new HashMap<>();
+
+    static {
+        for (String code : new String[]{"BIF", "CLP", "DJF", "GNF", "ISK", "JPY", "KMF", "KRW", "PYG", "RWF", "UGX",
+                "UYI", "VND", "VUV", "XAF", "XOF", "XPF"}) {
+            putExponent(code, 0);
+        }
+        for (String code : new String[]{"BHD", "IQD", "JOD", "KWD", "LYD", "OMR", "TND"}) {
+            putExponent(code, 3);
+        }
+        putExponent("CLF", 4);
+        putExponent("UYW", 4);
+    }
+
+    public Money {
+        Objects.requireNonNull(currency, "currency");
+    }
+
+    /**
+     * @throws IllegalArgumentException If the amount has more decimal places than the currency or is out of range.
+     */
+    public static Money of(BigDecimal amount, String currency) {
+        return new Money(toMinorUnits(amount, currency), currency);
+    }
+
+    /**
+     * The amount in minor units, e.g. 10.50 USD is 1050 and 500 JPY is 500.
+     *
+     * @throws IllegalArgumentException If the amount has more decimal places than the currency or is out of range.
+     */
+    public static long toMinorUnits(BigDecimal amount, String currency) {
+        try {
+            return amount.movePointRight(exponent(currency)).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount " + amount.toPlainString() + " is not a whole number of "
+                    + currency + " minor units or is out of range", e);
+        }
+    }
+
+    public static boolean isExact(BigDecimal amount, String currency) {
+        try {
+            toMinorUnits(amount, currency);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The amount with exactly the currency's decimal places (10 USD becomes 10.00), or unchanged if that would lose
+     * digits.
+     */
+    public static BigDecimal normalize(BigDecimal amount, String currency) {
+        if (amount == null || currency == null) {
+            return amount;
+        }
+        int exponent = exponent(currency);
+        if (amount.scale() == exponent || amount.stripTrailingZeros().scale() > exponent) {
+            return amount;
+        }
+        return amount.setScale(exponent, RoundingMode.UNNECESSARY);
+    }
+
+    /**
+     * Number of decimal places of the currency's minor unit.
+     */
+    public static int exponent(String currency) {
+        Integer exponent = EXPONENTS.get(currency);
+        if (exponent == null && !isSingleCase(currency)) {
+            exponent = EXPONENTS.get(currency.toUpperCase(Locale.ROOT));
+        }
+        return exponent != null ? exponent : DEFAULT_EXPONENT;
+    }
+
+    public int exponent() {
+        return exponent(currency);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, exponent());
+    }
+
+    private static void putExponent(String code, int exponent) {
+        EXPONENTS.put(code, exponent);
+        EXPONENTS.put(code.toLowerCase(Locale.ROOT), exponent);
+    }
+
+    private static boolean isSingleCase(String currency) {
+        boolean upper = false;
+        boolean lower = false;
+        for (int i = 0; i < currency.length(); i++) {
+            char c = currency.charAt(i);
+            upper |= Character.isUpperCase(c);
+            lower |= Character.isLowerCase(c);
+        }
+        return !(upper && lower);
+    }
+}
@@ -9,14 +9,25 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "payments")
+@Table(name = "payments", indexes = {
+        @Index(name = "idx_payments_gateway_order_id", columnList = "gatewayOrderId"),
+        @Index(name = "idx_payments_status_id", columnList = "status, id"), // Reconciliation keyset scan
+        // Search (GET /api/payments) seeks on (createdAt, id), optionally behind an equality filter
+        @Index(name = "idx_payments_created_at_id", columnList = "createdAt, id"),
+        @Index(name = "idx_payments_status_created_at_id", columnList = "status, createdAt, id"),
+        @Index(name = "idx_payments_gateway_created_at_id", columnList = "paymentGateway, createdAt, id"),
+        @Index(name = "idx_payments_order_id_created_at_id", columnList = "orderId, createdAt, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Payment {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence rather than IDENTITY: Hibernate can't batch inserts whose ids only the database knows.
+    // One sequence call reserves allocationSize ids.
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "payments_seq")
+    @SequenceGenerator(name = "payments_seq", sequenceName = "payments_seq", allocationSize = 50)
     private Long id;
 
     @Column(unique = true, nullable = false, updatable = false)
@@ -24,17 +35,25 @@ public class Payment {
 
     private String gatewayTransactionId; // Transaction ID from the payment gateway
 
+    private String gatewayOrderId; // Order ID, for gateways that create an order before the payment (e.g. Razorpay)
+
     @Column(nullable = false)
     private String paymentGateway; // e.g., "stripe", "razorpay"
 
-    @Column(nullable = false)
-    private BigDecimal amount;
+    private String orderId; // Client's order identifier; retries can create several payments for one order
+
+    @Column(length = 64, updatable = false)
+    private String merchantId; // Whose gateway credentials the payment uses; null for the default merchant
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    private BigDecimal amount; // Scale 4 fits every ISO 4217 currency, see onLoad
 
     @Column(nullable = false)
     private String currency;
 
+    @Convert(converter = PaymentStatusConverter.class)
     @Column(nullable = false)
-    private String status; // e.g., "PENDING", "SUCCESS", "FAILED", "REFUNDED"
+    private PaymentStatus status; // Stored as a SMALLINT code
 
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -42,6 +61,10 @@ public class Payment {
     @Column(nullable = false)
     private LocalDateTime updatedAt;
 
+    @Version
+    @Column(nullable = false)
+    private Long version; // Checked by every status write, see PaymentRepository#updateStatusIfUnchanged
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -52,4 +75,14 @@ public class Payment {
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
     }
+
+    // The column keeps four decimal places; callers see the currency's own (10.00 USD, 500 JPY)
+    @PostLoad
+    protected void onLoad() {
+        amount = Money.normalize(amount, currency);
+    }
+
+    public Money toMoney() {
+        return Money.of(amount, currency);
+    }
 }
@@ -0,0 +1,63 @@
+package com.example.multipaymentgateway.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A payment status change waiting to be relayed to downstream systems. Written in the same transaction as the change
+ * itself and deleted once every sink has accepted it.
+ */
+@Entity
+@Table(name = "payment_outbox")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentOutboxEvent {
+
+    @Id
+    // Pooled sequence, like payments, so outbox rows are batched with the payment writes; also the relay order
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "payment_outbox_seq")
+    @SequenceGenerator(name = "payment_outbox_seq", sequenceName = "payment_outbox_seq", allocationSize = 50)
+    private Long id; // Also the event ID downstream consumers deduplicate on
+
+    @Column(nullable = false, updatable = false)
+    private String transactionId;
+
+    @Column(nullable = false, updatable = false, length = 50)
+    private String paymentGateway;
+
+    @Convert(converter = PaymentStatusConverter.class)
+    @Column(updatable = false)
+    private PaymentStatus previousStatus; // Null for a newly created payment
+
+    @Convert(converter = PaymentStatusConverter.class)
+    @Column(nullable = false, updatable = false)
+    private PaymentStatus status;
+
+    @Column(updatable = false)
+    private String gatewayTransactionId;
+
+    @Column(nullable = false, updatable = false, precision = 19, scale = 4)
+    private BigDecimal amount; // Same scale as Payment#amount
+
+    @Column(nullable = false, updatable = false, length = 3)
+    private String currency;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime occurredAt;
+
+    @PrePersist
+    protected void onCreate() {
+        occurredAt = LocalDateTime.now();
+    }
+
+    @PostLoad
+    protected void onLoad() {
+        amount = Money.normalize(amount, currency);
+    }
+}
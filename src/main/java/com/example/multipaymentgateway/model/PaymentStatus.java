@@ -0,0 +1,90 @@
+package com.example.multipaymentgateway.model;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Internal payment status, shared by every gateway. Stored as a small integer {@link #getCode() code} (see
+ * {@link PaymentStatusConverter}); codes are fixed and must never be reused or renumbered.
+ * <p>
+ * Moves between statuses follow the transition table below. A payment can leave any in-flight status
+ * (PENDING, PENDING_USER_ACTION, AUTHORIZED, ERROR, UNKNOWN), but not for a refund outcome: only money that was taken
+ * can be refunded, so refund outcomes are reached from SUCCESS or PARTIALLY_REFUNDED alone. SUCCESS can only move on to
+ * a refund outcome. REFUNDED and CANCELED are final.
+ */
+public enum PaymentStatus {
+
+    UNKNOWN(0),             // Gateway reported something we don't recognise
+    PENDING(1),
+    PENDING_USER_ACTION(2), // Waiting for the customer (3DS, Razorpay checkout, ...)
+    AUTHORIZED(3),
+    SUCCESS(4),
+    FAILED(5),
+    ERROR(6),               // Unexpected error on our side during the gateway call
+    CANCELED(7),
+    REFUND_FAILED(8),
+    PARTIALLY_REFUNDED(9),
+    REFUNDED(10);
+
+    private static final PaymentStatus[] BY_CODE = new PaymentStatus[11];
+
+    static {
+        for (PaymentStatus status : values()) {
+            BY_CODE[status.code] = status;
+        }
+        for (PaymentStatus status : EnumSet.of(UNKNOWN, PENDING, PENDING_USER_ACTION, AUTHORIZED, ERROR)) {
+            status.next = EnumSet.complementOf(EnumSet.of(REFUND_FAILED, PARTIALLY_REFUNDED, REFUNDED));
+        }
+        FAILED.next = EnumSet.of(FAILED, AUTHORIZED, SUCCESS); // A later attempt can still succeed
+        SUCCESS.next = EnumSet.of(SUCCESS, PARTIALLY_REFUNDED, REFUNDED, REFUND_FAILED);
+        REFUND_FAILED.next = EnumSet.of(REFUND_FAILED, SUCCESS, PARTIALLY_REFUNDED, REFUNDED);
+        PARTIALLY_REFUNDED.next = EnumSet.of(PARTIALLY_REFUNDED, REFUNDED, REFUND_FAILED);
+        REFUNDED.next = EnumSet.of(REFUNDED);
+        CANCELED.next = EnumSet.of(CANCELED);
+    }
+
+    private final short code;
+    private Set<PaymentStatus> next;
+
+    PaymentStatus(int code) {
+        this.code = (short) code;
+    }
+
+    public short getCode() {
+        return code;
+    }
+
+    /**
+     * Whether a payment in this status may be moved to {@code target}. Staying in the same status is always allowed.
+     */
+    public boolean canTransitionTo(PaymentStatus target) {
+        return next.contains(target);
+    }
+
+    /**
+     * Whether money is left to refund: the payment was captured and has not been refunded in full.
+     */
+    public boolean isRefundable() {
+        return this == SUCCESS || this == PARTIALLY_REFUNDED;
+    }
+
+    public static PaymentStatus fromCode(int code) {
+        if (code < 0 || code >= BY_CODE.length || BY_CODE[code] == null) {
+            throw new IllegalArgumentException("Unknown payment status code: " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    /**
+     * Case-insensitive lookup by name, for request parameters and configuration.
+     *
+     * @throws IllegalArgumentException if there is no such status.
+     */
+    public static PaymentStatus parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown payment status: " + name);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.multipaymentgateway.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Stores a {@link PaymentStatus} as its two-byte code rather than its name.
+ */
+@Converter
+public class PaymentStatusConverter implements AttributeConverter<PaymentStatus, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(PaymentStatus status) {
+        return status != null ? status.getCode() : null;
+    }
+
+    @Override
+    public PaymentStatus convertToEntityAttribute(Short code) {
+        return code != null ? PaymentStatus.fromCode(code) : null;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.multipaymentgateway.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A gateway webhook event we have acknowledged, with the status change it reported. Written before the webhook is
+ * answered and kept after the change is applied, so redeliveries can be dropped.
+ */
+@Entity
+@Table(name = "processed_webhook_events",
+        indexes = @Index(name = "idx_processed_webhook_events_applied_at_id", columnList = "appliedAt, id")) // Pending scan
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessedWebhookEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(unique = true, nullable = false, updatable = false)
+    private String eventId; // Gateway's event ID (e.g., "evt_..." for Stripe)
+
+    @Column(nullable = false, updatable = false)
+    private String gateway; // e.g., "stripe", "razorpay"
+
+    // The reported status change; any of the IDs may be missing, see PaymentStatusUpdate
+    @Column(updatable = false)
+    private String transactionId;
+
+    @Column(updatable = false)
+    private String gatewayTransactionId;
+
+    @Column(updatable = false)
+    private String gatewayOrderId;
+
+    @Convert(converter = PaymentStatusConverter.class)
+    @Column(nullable = false, updatable = false)
+    private PaymentStatus status;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime receivedAt;
+
+    private LocalDateTime appliedAt; // Null while the status change is pending
+
+    @PrePersist
+    protected void onCreate() {
+        receivedAt = LocalDateTime.now();
+    }
+}
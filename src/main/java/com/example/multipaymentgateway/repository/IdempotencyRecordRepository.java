@@ -0,0 +1,34 @@
+package com.example.multipaymentgateway.repository;
+
+import com.example.multipaymentgateway.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+
+    Optional<IdempotencyRecord> findByIdempotencyKey(String idempotencyKey);
+
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.idempotencyKey = :idempotencyKey and r.status = 'IN_PROGRESS'")
+    int deleteInProgress(String idempotencyKey);
+
+    // Claims an IN_PROGRESS record whose lease ran out; returns 0 if it completed or someone else claimed it first
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update IdempotencyRecord r set r.leaseExpiresAt = :leaseExpiresAt, r.updatedAt = :now " +
+            "where r.idempotencyKey = :idempotencyKey and r.status = 'IN_PROGRESS' and r.leaseExpiresAt < :now")
+    int takeOverExpiredLease(String idempotencyKey, LocalDateTime now, LocalDateTime leaseExpiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.createdAt < :cutoff")
+    int deleteCreatedBefore(LocalDateTime cutoff);
+}
@@ -0,0 +1,15 @@
+package com.example.multipaymentgateway.repository;
+
+import com.example.multipaymentgateway.model.PaymentOutboxEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface PaymentOutboxRepository extends JpaRepository<PaymentOutboxEvent, Long> {
+
+    // Oldest first; the relay's delivery order
+    List<PaymentOutboxEvent> findAllByOrderByIdAsc(Pageable pageable);
+}
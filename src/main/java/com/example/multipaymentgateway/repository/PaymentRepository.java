@@ -1,14 +1,58 @@
 package com.example.multipaymentgateway.repository;
 
 import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface PaymentRepository extends JpaRepository<Payment, Long> {
+public interface PaymentRepository extends JpaRepository<Payment, Long>, JpaSpecificationExecutor<Payment> {
 
     Optional<Payment> findByTransactionId(String transactionId);
     Optional<Payment> findByGatewayTransactionId(String gatewayTransactionId); // Added for flexibility
+    List<Payment> findByOrderId(String orderId); // Retries create several payments for one order
+
+    // Batch lookups for applying gateway-reported status updates
+    List<Payment> findByTransactionIdIn(Collection<String> transactionIds);
+    List<Payment> findByGatewayTransactionIdIn(Collection<String> gatewayTransactionIds);
+    List<Payment> findByGatewayOrderIdIn(Collection<String> gatewayOrderIds);
+
+    // Keyset page of rows left between the "commit PENDING" and "finalize" stages of a gateway call
+    List<Payment> findByStatusAndGatewayTransactionIdIsNullAndGatewayOrderIdIsNullAndCreatedAtBeforeAndIdGreaterThanOrderByIdAsc(
+            PaymentStatus status, LocalDateTime cutoff, Long afterId, Pageable pageable);
+
+    // Keyset page of non-final payments for reconciliation: pass the last id of the previous page and an unpaged limit
+    List<Payment> findByStatusInAndIdGreaterThanAndCreatedAtBetweenOrderByIdAsc(Collection<PaymentStatus> statuses, Long afterId,
+                                                                               LocalDateTime createdFrom, LocalDateTime createdTo,
+                                                                               Pageable pageable);
+
+    /**
+     * Writes a status change (and the gateway IDs) only if the row still has the status and version it was read with,
+     * bumping the version. Touches just these columns rather than merging the whole entity.
+     * <p>
+     * Clears the persistence context afterwards: payments loaded earlier in the transaction are detached and stale.
+     *
+     * @return 1 if the row was updated, 0 if another writer changed it first.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Payment p SET p.status = :status, p.gatewayTransactionId = :gatewayTransactionId, " +
+            "p.gatewayOrderId = :gatewayOrderId, p.updatedAt = :updatedAt, p.version = p.version + 1 " +
+            "WHERE p.transactionId = :transactionId AND p.status = :expectedStatus AND p.version = :expectedVersion")
+    int updateStatusIfUnchanged(@Param("transactionId") String transactionId,
+                                @Param("expectedStatus") PaymentStatus expectedStatus,
+                                @Param("expectedVersion") Long expectedVersion,
+                                @Param("status") PaymentStatus status,
+                                @Param("gatewayTransactionId") String gatewayTransactionId,
+                                @Param("gatewayOrderId") String gatewayOrderId,
+                                @Param("updatedAt") LocalDateTime updatedAt);
 }
@@ -0,0 +1,25 @@
+package com.example.multipaymentgateway.repository;
+
+import com.example.multipaymentgateway.model.ProcessedWebhookEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ProcessedWebhookEventRepository extends JpaRepository<ProcessedWebhookEvent, Long> {
+
+    boolean existsByEventId(String eventId);
+
+    // Events whose status change hasn't been applied yet, oldest first
+    List<ProcessedWebhookEvent> findByAppliedAtIsNullOrderByIdAsc(Pageable pageable);
+
+    @Modifying
+    @Query("update ProcessedWebhookEvent e set e.appliedAt = :appliedAt where e.id in :ids")
+    int markApplied(Collection<Long> ids, LocalDateTime appliedAt);
+}
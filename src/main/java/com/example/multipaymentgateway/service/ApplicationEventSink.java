@@ -0,0 +1,30 @@
+package com.example.multipaymentgateway.service;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Hands each relayed event to in-process {@code @EventListener}s of {@link PaymentStatusChangedEvent}. Listeners run
+ * synchronously on the relay thread, so one that throws makes the relay retry the batch.
+ */
+@Component
+public class ApplicationEventSink implements PaymentEventSink {
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    public ApplicationEventSink(ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    @Override
+    public void publish(List<PaymentStatusChangedEvent> events) {
+        events.forEach(applicationEventPublisher::publishEvent);
+    }
+
+    @Override
+    public String getSinkName() {
+        return "in-process";
+    }
+}
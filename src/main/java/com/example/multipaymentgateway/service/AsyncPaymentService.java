@@ -0,0 +1,57 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.dto.PaymentRequest;
+import com.example.multipaymentgateway.dto.PaymentResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous counterpart of the {@link PaymentGateway} operations.
+ * <p>
+ * The gateway SDKs are blocking, so each operation runs on the {@code gatewayCallExecutor} (virtual threads where
+ * available) instead of the calling servlet thread. Calls go through the gateway beans, so circuit breakers,
+ * bulkheads and metrics apply as for synchronous calls.
+ */
+@Service
+public class AsyncPaymentService {
+
+    private final Executor gatewayCallExecutor;
+    private final PaymentStatusService paymentStatusService;
+
+    public AsyncPaymentService(@Qualifier("gatewayCallExecutor") Executor gatewayCallExecutor,
+                               PaymentStatusService paymentStatusService) {
+        this.gatewayCallExecutor = gatewayCallExecutor;
+        this.paymentStatusService = paymentStatusService;
+    }
+
+    public CompletableFuture<PaymentResponse> processPaymentAsync(PaymentGateway gateway, PaymentRequest paymentRequest) {
+        return supplyAsync(() -> gateway.processPayment(paymentRequest));
+    }
+
+    /**
+     * Status lookup through {@link PaymentStatusService}, so cached and terminal statuses skip the gateway.
+     */
+    public CompletableFuture<PaymentResponse> getPaymentStatusAsync(PaymentGateway gateway, String transactionId) {
+        return supplyAsync(() -> paymentStatusService.getPaymentStatus(gateway, transactionId));
+    }
+
+    /**
+     * Refund through {@link PaymentStatusService}, so it is serialized with status lookups for the same transaction.
+     */
+    public CompletableFuture<PaymentResponse> refundPaymentAsync(PaymentGateway gateway, String transactionId, BigDecimal amount) {
+        return supplyAsync(() -> paymentStatusService.refundPayment(gateway, transactionId, amount));
+    }
+
+    /**
+     * Runs any other blocking payment work (e.g. an idempotent request that may wait for its original) off the
+     * caller's thread.
+     */
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> work) {
+        return CompletableFuture.supplyAsync(work, gatewayCallExecutor);
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.dto.BatchPaymentItemResult;
+import com.example.multipaymentgateway.dto.BatchPaymentResponse;
+import com.example.multipaymentgateway.dto.PaymentRequest;
+import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Processes many payment requests in one call.
+ * <p>
+ * Valid items are recorded as PENDING in a single batched insert, then fanned out to their gateways on
+ * one fixed-size pool per gateway, whose size ({@code payments.batch.max-concurrency.<gateway>}) caps how
+ * many calls a batch can have in flight against that gateway. Every item succeeds or fails on its own.
+ * <p>
+ * The batch answers within {@code payments.batch.timeout}. An item whose gateway call is still running by then
+ * is reported as pending with its transaction ID, so the client can poll its status; the call finishes and
+ * finalizes the row. An item still queued behind the concurrency cap is not sent at all: its row is marked
+ * FAILED and the item reported as failed, so a batch never leaves work behind that nobody is waiting for.
+ */
+@Service
+public class BatchPaymentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchPaymentService.class);
+
+    private final PaymentRecordService paymentRecordService;
+    private final Validator validator;
+    private final Environment environment;
+    private final int maxItems;
+    private final int defaultConcurrency;
+    private final Duration timeout;
+    private final ConcurrentHashMap<String, ExecutorService> gatewayExecutors = new ConcurrentHashMap<>();
+
+    public BatchPaymentService(PaymentRecordService paymentRecordService,
+                               Validator validator,
+                               Environment environment,
+                               @Value("${payments.batch.max-items:500}") int maxItems,
+                               @Value("${payments.batch.default-concurrency:8}") int defaultConcurrency,
+                               @Value("${payments.batch.timeout:45s}") Duration timeout) {
+        this.paymentRecordService = paymentRecordService;
+        this.validator = validator;
+        this.environment = environment;
+        this.maxItems = maxItems;
+        this.defaultConcurrency = defaultConcurrency;
+        this.timeout = timeout;
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    /**
+     * @param paymentRequests The batch items, in order.
+     * @param gatewaySelector Resolves the gateway for an item, or returns null if it names an unknown gateway.
+     * @return One result per item, in the same order.
+     */
+    public BatchPaymentResponse processBatch(List<PaymentRequest> paymentRequests, Function<PaymentRequest, PaymentGateway> gatewaySelector) {
+        BatchPaymentItemResult[] results = new BatchPaymentItemResult[paymentRequests.size()];
+        List<BatchItem> items = new ArrayList<>(paymentRequests.size());
+
+        for (int i = 0; i < paymentRequests.size(); i++) {
+            PaymentRequest paymentRequest = paymentRequests.get(i);
+            if (paymentRequest == null) {
+                results[i] = failure(i, "Payment request is missing.", null);
+                continue;
+            }
+            Set<ConstraintViolation<PaymentRequest>> violations = validator.validate(paymentRequest);
+            if (!violations.isEmpty()) {
+                results[i] = failure(i, "Input validation failed: " + violations.stream()
+                        .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining("; ")), null);
+                continue;
+            }
+            PaymentGateway gateway = gatewaySelector.apply(paymentRequest);
+            if (gateway == null) {
+                results[i] = failure(i, "Invalid or unsupported payment gateway specified.", null);
+                continue;
+            }
+            try {
+                items.add(new BatchItem(i, paymentRequest, gateway, gateway.preparePayment(paymentRequest), new AtomicBoolean()));
+            } catch (RuntimeException e) {
+                results[i] = failure(i, e.getMessage(), null);
+            }
+        }
+
+        if (!items.isEmpty()) {
+            // Stage 1 for every item at once: a single transaction with batched inserts.
+            try {
+                paymentRecordService.createPendingBatch(items.stream().map(BatchItem::payment).collect(Collectors.toList()));
+            } catch (RuntimeException e) {
+                logger.error("Failed to record {} batch payment(s): {}", items.size(), e.getMessage(), e);
+                items.forEach(item -> results[item.index()] = failure(item.index(), "Could not record payment: " + e.getMessage(), null));
+                return toResponse(results);
+            }
+            dispatch(items, results);
+        }
+        return toResponse(results);
+    }
+
+    private void dispatch(List<BatchItem> items, BatchPaymentItemResult[] results) {
+        List<CompletableFuture<PaymentResponse>> futures = new ArrayList<>(items.size());
+        for (BatchItem item : items) {
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> item.started().compareAndSet(false, true)
+                            ? item.gateway().processPendingPayment(item.payment().getTransactionId(), item.request())
+                            : null, // Given up on at the deadline before it started
+                    executorFor(item.gateway().getGatewayName())));
+        }
+
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (int i = 0; i < items.size(); i++) {
+            BatchItem item = items.get(i);
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                PaymentResponse response = futures.get(i).get(remaining, TimeUnit.NANOSECONDS);
+                response.setAmount(item.request().getAmount());
+                response.setCurrency(item.request().getCurrency());
+                results[item.index()] = new BatchPaymentItemResult(item.index(), true, false, null, response);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof CallNotPermittedException || cause instanceof BulkheadFullException) {
+                    // Rejected before the gateway was called, so there is nothing for recovery to find
+                    markFailed(item.payment().getTransactionId());
+                }
+                results[item.index()] = failure(item.index(), cause.getMessage(), pendingResponse(item, PaymentStatus.FAILED));
+            } catch (TimeoutException e) {
+                results[item.index()] = unfinished(item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results[item.index()] = unfinished(item);
+            }
+        }
+    }
+
+    private BatchPaymentItemResult unfinished(BatchItem item) {
+        if (item.started().compareAndSet(false, true)) {
+            // Still queued behind the concurrency cap: never sent, so fail it now rather than charge after we answered.
+            markFailed(item.payment().getTransactionId());
+            return failure(item.index(), "Not sent to the gateway within the batch timeout.", pendingResponse(item, PaymentStatus.FAILED));
+        }
+        // The call keeps running and will still finalize the row; the client polls its status.
+        return new BatchPaymentItemResult(item.index(), false, true, null, pendingResponse(item, PaymentStatus.PENDING));
+    }
+
+    private void markFailed(String transactionId) {
+        try {
+            paymentRecordService.updateStatus(transactionId, PaymentStatus.FAILED);
+        } catch (RuntimeException e) {
+            logger.warn("Could not mark rejected batch payment {} as FAILED; recovery will resolve it: {}", transactionId, e.getMessage());
+        }
+    }
+
+    private ExecutorService executorFor(String gatewayName) {
+        return gatewayExecutors.computeIfAbsent(gatewayName, name -> {
+            int concurrency = environment.getProperty("payments.batch.max-concurrency." + name, Integer.class, defaultConcurrency);
+            AtomicInteger threadCount = new AtomicInteger();
+            return Executors.newFixedThreadPool(concurrency, runnable -> {
+                Thread thread = new Thread(runnable, "batch-" + name + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        gatewayExecutors.values().forEach(ExecutorService::shutdown);
+    }
+
+    private static PaymentResponse pendingResponse(BatchItem item, PaymentStatus status) {
+        PaymentResponse response = new PaymentResponse();
+        response.setTransactionId(item.payment().getTransactionId());
+        response.setStatus(status.name());
+        response.setGatewayName(item.gateway().getGatewayName());
+        response.setAmount(item.request().getAmount());
+        response.setCurrency(item.request().getCurrency());
+        return response;
+    }
+
+    private static BatchPaymentItemResult failure(int index, String error, PaymentResponse payment) {
+        return new BatchPaymentItemResult(index, false, false, error, payment);
+    }
+
+    private static BatchPaymentResponse toResponse(BatchPaymentItemResult[] results) {
+        int succeeded = 0;
+        int pending = 0;
+        for (BatchPaymentItemResult result : results) {
+            if (result.isSuccess()) succeeded++;
+            if (result.isPending()) pending++;
+        }
+        return new BatchPaymentResponse(results.length, succeeded, pending, results.length - succeeded - pending, List.of(results));
+    }
+
+    // started is claimed once, by the worker about to call the gateway or by the caller giving up at the deadline
+    private record BatchItem(int index, PaymentRequest request, PaymentGateway gateway, Payment payment, AtomicBoolean started) {
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.multipaymentgateway.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends relayed events to a local file, one JSON object per line, for consumers that tail or ship files. Each batch
+ * is flushed to disk before the relay deletes it from the outbox.
+ */
+@Component
+@ConditionalOnProperty(name = "payments.outbox.file-sink.enabled", havingValue = "true")
+public class FileEventSink implements PaymentEventSink {
+
+    private final ObjectMapper objectMapper;
+    private final Path path;
+
+    public FileEventSink(ObjectMapper objectMapper,
+                         @Value("${payments.outbox.file-sink.path:./data/outbox/payment-events.ndjson}") Path path) {
+        this.objectMapper = objectMapper;
+        this.path = path;
+    }
+
+    @Override
+    public synchronized void publish(List<PaymentStatusChangedEvent> events) {
+        try {
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+            for (PaymentStatusChangedEvent event : events) {
+                objectMapper.writeValue(lines, event);
+                lines.write('\n');
+            }
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append " + events.size() + " payment event(s) to " + path, e);
+        }
+    }
+
+    @Override
+    public String getSinkName() {
+        return "file";
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.multipaymentgateway.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times individual gateway SDK calls ({@code payment.gateway.remote}), so remote latency can be told apart from the
+ * database work done around it in the same gateway operation.
+ */
+@Component
+public class GatewayCallTimer {
+
+    @FunctionalInterface
+    public interface RemoteCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    public GatewayCallTimer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param gateway    Gateway name, e.g. "stripe".
+     * @param call       SDK call, e.g. "payment_intent.create".
+     * @param remoteCall The call itself; its exception is rethrown unchanged.
+     */
+    public <T, E extends Exception> T time(String gateway, String call, RemoteCall<T, E> remoteCall) throws E {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result = remoteCall.call();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(Timer.builder("payment.gateway.remote")
+                    .description("Time spent in gateway SDK calls")
+                    .tag("gateway", gateway)
+                    .tag("call", call)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+}
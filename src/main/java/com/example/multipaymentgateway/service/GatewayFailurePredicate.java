@@ -0,0 +1,47 @@
+package com.example.multipaymentgateway.service;
+
+import com.razorpay.RazorpayException;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.ApiException;
+import com.stripe.exception.RateLimitException;
+import com.stripe.exception.StripeException;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+
+import java.io.IOException;
+import java.util.function.Predicate;
+
+/**
+ * Decides which exceptions count against a gateway's circuit breaker.
+ * <p>
+ * Only failures that say something about the gateway's health are recorded: network errors, 5xx responses and
+ * rate limiting. Declined cards, invalid requests and our own state checks (e.g. "not in a refundable state") mean
+ * the gateway answered normally, so they must not open the circuit.
+ */
+public class GatewayFailurePredicate implements Predicate<Throwable> {
+
+    @Override
+    public boolean test(Throwable throwable) {
+        if (throwable instanceof BulkheadFullException) {
+            return false; // Rejected locally; the gateway was never called
+        }
+        for (Throwable t = throwable; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof IOException
+                    || t instanceof ApiConnectionException
+                    || t instanceof ApiException
+                    || t instanceof RateLimitException) {
+                return true;
+            }
+            if (t instanceof SimulatedGatewayException simulated) {
+                return simulated.getStatusCode() == 429 || simulated.getStatusCode() >= 500;
+            }
+            if (t instanceof StripeException) {
+                return false; // Card, invalid request, idempotency and auth errors
+            }
+            if (t instanceof RazorpayException) {
+                // The SDK prefixes messages with the error code; BAD_REQUEST_ERROR is the client-side one
+                return t.getMessage() == null || !t.getMessage().contains("BAD_REQUEST_ERROR");
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.multipaymentgateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.okhttp3.OkHttpConnectionPoolMetrics;
+import jakarta.annotation.PreDestroy;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outbound HTTP layer used by the gateway SDKs: one OkHttp client per gateway, each with its own keep-alive
+ * connection pool and timeouts, so a call normally reuses a warm connection instead of paying for TCP and TLS setup.
+ * New connections resume TLS sessions from the JVM's default session cache where the server allows it.
+ * <p>
+ * Settings are read from {@code payments.http.<gateway>.*}, falling back to {@code payments.http.*}:
+ * {@code connect-timeout}, {@code read-timeout} (also used for writes), {@code call-timeout} (the whole call),
+ * {@code max-idle-connections} and {@code keep-alive} (how long an idle connection is kept).
+ * <p>
+ * Per gateway, pool usage is published as {@code payment.gateway.http.pool.connection.count} (tagged
+ * {@code state=active|idle}), calls in progress as {@code payment.gateway.http.calls.active}, and connection setup as
+ * {@code payment.gateway.http.connections.opened} and {@code payment.gateway.http.tls.handshakes}. Active connections at
+ * the idle limit, or a steady rate of new connections, mean the pool is too small for the traffic.
+ */
+@Component
+public class GatewayHttpClients {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayHttpClients.class);
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+    public GatewayHttpClients(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * The client for a gateway, created with its settings on first use.
+     *
+     * @param gateway Gateway name, e.g. "stripe".
+     */
+    public OkHttpClient forGateway(String gateway) {
+        return clients.computeIfAbsent(gateway, this::build);
+    }
+
+    private OkHttpClient build(String gateway) {
+        Duration connectTimeout = setting(gateway, "connect-timeout", Duration.class, Duration.ofSeconds(2));
+        Duration readTimeout = setting(gateway, "read-timeout", Duration.class, Duration.ofSeconds(30));
+        Duration callTimeout = setting(gateway, "call-timeout", Duration.class, Duration.ofSeconds(40));
+        int maxIdleConnections = setting(gateway, "max-idle-connections", Integer.class, 50);
+        Duration keepAlive = setting(gateway, "keep-alive", Duration.class, Duration.ofMinutes(5));
+
+        ConnectionPool connectionPool = new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS);
+        OkHttpClient client = new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .connectTimeout(connectTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .writeTimeout(readTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .callTimeout(callTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true) // A pooled connection the server has just closed is retried on a new one
+                .eventListener(new ConnectionSetupListener(gateway))
+                .build();
+
+        new OkHttpConnectionPoolMetrics(connectionPool, "payment.gateway.http.pool", Tags.of("gateway", gateway), maxIdleConnections)
+                .bindTo(meterRegistry);
+        Gauge.builder("payment.gateway.http.calls.active", client.dispatcher(), dispatcher -> dispatcher.runningCallsCount())
+                .description("Gateway HTTP calls in progress")
+                .tag("gateway", gateway)
+                .register(meterRegistry);
+        logger.info("HTTP client for {}: connect timeout {}, read timeout {}, call timeout {}, up to {} idle connections kept for {}",
+                gateway, connectTimeout, readTimeout, callTimeout, maxIdleConnections, keepAlive);
+        return client;
+    }
+
+    private <T> T setting(String gateway, String name, Class<T> type, T defaultValue) {
+        T value = environment.getProperty("payments.http." + gateway + "." + name, type);
+        return value != null ? value : environment.getProperty("payments.http." + name, type, defaultValue);
+    }
+
+    @PreDestroy
+    public void close() {
+        clients.values().forEach(client -> {
+            client.dispatcher().executorService().shutdown();
+            client.connectionPool().evictAll();
+        });
+    }
+
+    /**
+     * Counts new connections and TLS handshakes; with keep-alive working, both stay far below the request rate.
+     */
+    private final class ConnectionSetupListener extends EventListener {
+
+        private final Counter connectionsOpened;
+        private final Counter tlsHandshakes;
+
+        private ConnectionSetupListener(String gateway) {
+            this.connectionsOpened = Counter.builder("payment.gateway.http.connections.opened")
+                    .description("New TCP connections opened to a gateway")
+                    .tag("gateway", gateway)
+                    .register(meterRegistry);
+            this.tlsHandshakes = Counter.builder("payment.gateway.http.tls.handshakes")
+                    .description("TLS handshakes with a gateway, including resumed sessions")
+                    .tag("gateway", gateway)
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectionsOpened.increment();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            tlsHandshakes.increment();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.dto.PaymentResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records every {@link PaymentGateway} operation:
+ * <ul>
+ *     <li>{@code payment.gateway.requests}: timer with a percentile histogram, by gateway, operation and outcome</li>
+ *     <li>{@code payment.gateway.results}: counter by gateway, operation, resulting status and, for failures,
+ *     the exception type and its root cause (e.g. {@code PaymentProcessingException} / {@code CardException})</li>
+ * </ul>
+ * Runs outside the circuit breaker and bulkhead, so calls they reject are counted too. SDK time on its own is
+ * recorded by {@link GatewayCallTimer}, and repository time by Spring Data's {@code spring.data.repository.invocations}.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class GatewayMetricsAspect {
+
+    private final MeterRegistry meterRegistry;
+
+    public GatewayMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("target(gateway) && ("
+            + "execution(* com.example.multipaymentgateway.service.PaymentGateway.processPayment(..)) || "
+            + "execution(* com.example.multipaymentgateway.service.PaymentGateway.processPendingPayment(..)) || "
+            + "execution(* com.example.multipaymentgateway.service.PaymentGateway.getPaymentStatus(..)) || "
+            + "execution(* com.example.multipaymentgateway.service.PaymentGateway.refundPayment(..)) || "
+            + "execution(* com.example.multipaymentgateway.service.PaymentGateway.recoverPayment(..)) || "
+            + "execution(* com.example.multipaymentgateway.service.PaymentGateway.reconcile(..)))")
+    public Object record(ProceedingJoinPoint joinPoint, PaymentGateway gateway) throws Throwable {
+        String gatewayName = gateway.getGatewayName();
+        String operation = operation(joinPoint.getSignature().getName());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            Object result = joinPoint.proceed();
+            String status = result instanceof PaymentResponse response && response.getStatus() != null ? response.getStatus() : "UNKNOWN";
+            stop(sample, gatewayName, operation, "success");
+            count(gatewayName, operation, status, "none", "none");
+            return result;
+        } catch (Throwable t) {
+            stop(sample, gatewayName, operation, "error");
+            count(gatewayName, operation, "EXCEPTION", t.getClass().getSimpleName(), rootCause(t).getSimpleName());
+            throw t;
+        }
+    }
+
+    private void stop(Timer.Sample sample, String gateway, String operation, String outcome) {
+        sample.stop(Timer.builder("payment.gateway.requests")
+                .description("Gateway operations, including database work")
+                .tag("gateway", gateway)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private void count(String gateway, String operation, String status, String exception, String cause) {
+        meterRegistry.counter("payment.gateway.results",
+                "gateway", gateway, "operation", operation, "status", status, "exception", exception, "cause", cause).increment();
+    }
+
+    private static String operation(String methodName) {
+        switch (methodName) {
+            case "processPayment":
+            case "processPendingPayment":
+                return "process";
+            case "getPaymentStatus":
+                return "status";
+            case "refundPayment":
+                return "refund";
+            case "recoverPayment":
+                return "recover";
+            default:
+                return methodName;
+        }
+    }
+
+    private static Class<?> rootCause(Throwable t) {
+        Throwable root = t;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getClass();
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.multipaymentgateway.service;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks a gateway for requests that don't name one.
+ * <p>
+ * Every gateway call already goes through that gateway's circuit breaker, so the router listens to the breaker's
+ * events and keeps an exponentially weighted moving average of latency and success rate per gateway. A request is
+ * routed to the gateway with the best latency / success-rate score among those that support its currency, are not
+ * behind an open circuit and are above the minimum success rate. A gateway whose breaker is half-open gets a small
+ * share of traffic so it can prove itself healthy again; its averages are reset once the breaker closes.
+ * <p>
+ * Selection only reads atomics and the breakers' state, so it takes no locks.
+ */
+@Component
+public class GatewayRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayRouter.class);
+
+    private final List<Route> routes;
+    private final double minSuccessRate;
+    private final double halfOpenProbeRate;
+
+    public GatewayRouter(Map<String, PaymentGateway> paymentGateways,
+                         CircuitBreakerRegistry circuitBreakerRegistry,
+                         MeterRegistry meterRegistry,
+                         @Value("${default.payment.gateway:}") String defaultGateway,
+                         @Value("${payments.routing.ewma-alpha:0.2}") double ewmaAlpha,
+                         @Value("${payments.routing.min-success-rate:0.5}") double minSuccessRate,
+                         @Value("${payments.routing.half-open-probe-rate:0.05}") double halfOpenProbeRate) {
+        this.minSuccessRate = minSuccessRate;
+        this.halfOpenProbeRate = halfOpenProbeRate;
+
+        // The default gateway goes first, so it wins ties (e.g. before any calls have been measured)
+        List<Route> routes = new ArrayList<>(paymentGateways.size());
+        paymentGateways.forEach((beanName, gateway) -> {
+            Route route = new Route(gateway, circuitBreakerRegistry.circuitBreaker(gateway.getGatewayName()));
+            if (beanName.equals(defaultGateway)) {
+                routes.add(0, route);
+            } else {
+                routes.add(route);
+            }
+        });
+        this.routes = List.copyOf(routes);
+
+        for (Route route : this.routes) {
+            String gatewayName = route.gateway.getGatewayName();
+            route.circuitBreaker.getEventPublisher()
+                    .onSuccess(event -> route.record(event.getElapsedDuration(), true, ewmaAlpha))
+                    .onError(event -> route.record(event.getElapsedDuration(), false, ewmaAlpha))
+                    .onStateTransition(event -> {
+                        logger.info("Gateway {} circuit {}", gatewayName, event.getStateTransition());
+                        if (event.getStateTransition().getToState() == CircuitBreaker.State.CLOSED) {
+                            route.reset();
+                        }
+                    });
+            Gauge.builder("payment.routing.latency.ewma", route, Route::latencyMillis)
+                    .tag("gateway", gatewayName)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            Gauge.builder("payment.routing.success-rate.ewma", route, Route::successRate)
+                    .tag("gateway", gatewayName)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * @param currency The request's currency, or null if unknown.
+     * @return The gateway to use, or null if no gateway supports the currency.
+     */
+    public PaymentGateway select(String currency) {
+        Route best = null;
+        double bestScore = Double.MAX_VALUE;
+        Route fallback = null;
+        for (Route route : routes) {
+            if (!route.gateway.supportsCurrency(currency)) {
+                continue;
+            }
+            if (fallback == null) {
+                fallback = route;
+            }
+            CircuitBreaker.State state = route.circuitBreaker.getState();
+            if (state == CircuitBreaker.State.HALF_OPEN && ThreadLocalRandom.current().nextDouble() < halfOpenProbeRate) {
+                return route.gateway;
+            }
+            if (state != CircuitBreaker.State.CLOSED || route.successRate() < minSuccessRate) {
+                continue;
+            }
+            double score = route.score();
+            if (score < bestScore) {
+                best = route;
+                bestScore = score;
+            }
+        }
+        // Nothing healthy: use the first gateway that supports the currency and let its breaker answer
+        // (fast 503) rather than rejecting a well-formed request as unroutable.
+        Route selected = best != null ? best : fallback;
+        return selected != null ? selected.gateway : null;
+    }
+
+    private static final class Route {
+
+        private final PaymentGateway gateway;
+        private final CircuitBreaker circuitBreaker;
+        // Doubles stored as raw long bits so they can be updated with CAS; latency is NaN until first measured
+        private final AtomicLong latencyNanos = new AtomicLong(Double.doubleToRawLongBits(Double.NaN));
+        private final AtomicLong successRate = new AtomicLong(Double.doubleToRawLongBits(1.0));
+
+        private Route(PaymentGateway gateway, CircuitBreaker circuitBreaker) {
+            this.gateway = gateway;
+            this.circuitBreaker = circuitBreaker;
+        }
+
+        private void record(Duration elapsed, boolean success, double alpha) {
+            update(latencyNanos, elapsed.toNanos(), alpha);
+            update(successRate, success ? 1.0 : 0.0, alpha);
+        }
+
+        private void reset() {
+            latencyNanos.set(Double.doubleToRawLongBits(Double.NaN));
+            successRate.set(Double.doubleToRawLongBits(1.0));
+        }
+
+        private double successRate() {
+            return Double.longBitsToDouble(successRate.get());
+        }
+
+        private double latencyMillis() {
+            return Double.longBitsToDouble(latencyNanos.get()) / 1_000_000.0;
+        }
+
+        // Lower is better: latency, inflated as the success rate drops. Unmeasured gateways score 0 so they get measured.
+        private double score() {
+            double latency = Double.longBitsToDouble(latencyNanos.get());
+            if (Double.isNaN(latency)) {
+                return 0.0;
+            }
+            double rate = Math.max(successRate(), 0.01);
+            return latency / (rate * rate);
+        }
+
+        private static void update(AtomicLong average, double sample, double alpha) {
+            average.accumulateAndGet(Double.doubleToRawLongBits(sample), (currentBits, sampleBits) -> {
+                double current = Double.longBitsToDouble(currentBits);
+                if (Double.isNaN(current)) {
+                    return sampleBits;
+                }
+                return Double.doubleToRawLongBits(current + alpha * (Double.longBitsToDouble(sampleBits) - current));
+            });
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.exception.IdempotencyKeyConflictException;
+import com.example.multipaymentgateway.exception.PaymentProcessingException;
+import com.example.multipaymentgateway.model.IdempotencyRecord;
+import com.example.multipaymentgateway.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Makes {@code POST /api/payments} safe to retry with an {@code Idempotency-Key} header.
+ * <p>
+ * Completed responses are kept in a bounded in-memory cache in front of the {@code idempotency_keys}
+ * table, whose unique key column arbitrates between application instances. A replay is answered from
+ * the cache (or, after eviction or on another instance, from the table) without touching the payments
+ * table or the gateway. Concurrent requests with the same key wait for the first one to finish and
+ * then receive its response, rather than starting a second charge.
+ * <p>
+ * A request that fails after it may have reached the gateway stores its error response as the key's
+ * final result, so a retry can't charge twice. Only requests rejected before any gateway call (open
+ * circuit, full bulkhead or executor) release the key. The processing request holds a lease on the
+ * key; if its instance dies, the next request with the key takes over once the lease has expired.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper hashingMapper;
+    private final Cache<String, StoredResponse> completedResponses;
+    private final ConcurrentHashMap<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Duration waitTimeout;
+    private final Duration lease;
+    private final Duration retention;
+
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository,
+                              ObjectMapper objectMapper,
+                              @Value("${payments.idempotency.cache-size:10000}") long cacheSize,
+                              @Value("${payments.idempotency.cache-ttl:1h}") Duration cacheTtl,
+                              @Value("${payments.idempotency.wait-timeout:30s}") Duration waitTimeout,
+                              @Value("${payments.idempotency.lease:2m}") Duration lease,
+                              @Value("${payments.idempotency.retention:24h}") Duration retention) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.objectMapper = objectMapper;
+        // Sorted map keys so that equal payloads always hash the same, whatever the map implementation.
+        this.hashingMapper = objectMapper.copy().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+        this.completedResponses = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl)
+                .build();
+        this.waitTimeout = waitTimeout;
+        this.lease = lease;
+        this.retention = retention;
+    }
+
+    /**
+     * Runs {@code action} at most once per idempotency key and returns its response, or replays the
+     * response stored for an earlier request with the same key and payload.
+     *
+     * @param idempotencyKey The client-supplied key.
+     * @param request        The request body; a key reused with a different body is rejected.
+     * @param action         Performs the actual work when the key has not been seen before.
+     * @return The original or replayed response.
+     * @throws IdempotencyKeyConflictException if the key was used with a different payload, or the
+     *                                         original request is still running after the wait timeout.
+     */
+    public ResponseEntity<PaymentResponse> execute(String idempotencyKey, Object request,
+                                                   Supplier<ResponseEntity<PaymentResponse>> action) {
+        String requestHash = hash(request);
+
+        StoredResponse cached = completedResponses.getIfPresent(idempotencyKey);
+        if (cached != null) {
+            return replay(idempotencyKey, requestHash, cached);
+        }
+
+        CompletableFuture<StoredResponse> ours = new CompletableFuture<>();
+        CompletableFuture<StoredResponse> existing = inFlight.putIfAbsent(idempotencyKey, ours);
+        if (existing != null) {
+            // Same key already running in this instance: wait for it instead of racing it.
+            return replay(idempotencyKey, requestHash, awaitInFlight(idempotencyKey, existing));
+        }
+
+        try {
+            return lead(idempotencyKey, requestHash, action, ours);
+        } catch (RuntimeException e) {
+            ours.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(idempotencyKey, ours);
+        }
+    }
+
+    private ResponseEntity<PaymentResponse> lead(String idempotencyKey, String requestHash,
+                                                 Supplier<ResponseEntity<PaymentResponse>> action,
+                                                 CompletableFuture<StoredResponse> ours) {
+        // Re-check: a previous leader may have finished between our cache miss and claiming the key.
+        StoredResponse stored = completedResponses.getIfPresent(idempotencyKey);
+        if (stored != null) {
+            ours.complete(stored);
+            return replay(idempotencyKey, requestHash, stored);
+        }
+
+        IdempotencyRecord record;
+        if (idempotencyRecordRepository.findByIdempotencyKey(idempotencyKey).isPresent()) {
+            record = awaitPersisted(idempotencyKey, requestHash, ours);
+        } else {
+            record = new IdempotencyRecord();
+            record.setIdempotencyKey(idempotencyKey);
+            record.setRequestHash(requestHash);
+            record.setStatus(IdempotencyRecord.STATUS_IN_PROGRESS);
+            record.setLeaseExpiresAt(LocalDateTime.now().plus(lease));
+            try {
+                record = idempotencyRecordRepository.saveAndFlush(record);
+            } catch (DataIntegrityViolationException e) {
+                // Another instance claimed the key between our lookup and insert.
+                record = awaitPersisted(idempotencyKey, requestHash, ours);
+            }
+        }
+        if (record == null) {
+            return replay(idempotencyKey, requestHash, ours.join());
+        }
+
+        ResponseEntity<PaymentResponse> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            if (isRejectedBeforeGatewayCall(e)) {
+                // Nothing reached the gateway, so the client may retry with the same key.
+                idempotencyRecordRepository.deleteInProgress(idempotencyKey);
+                throw e;
+            }
+            // The gateway may have acted before the failure: a retry gets this error instead of running again.
+            stored = new StoredResponse(requestHash, HttpStatus.INTERNAL_SERVER_ERROR.value(), failureBody(e));
+            try {
+                complete(record, stored);
+            } catch (RuntimeException storeFailure) {
+                e.addSuppressed(storeFailure); // The key stays IN_PROGRESS until its lease expires
+            }
+            completedResponses.put(idempotencyKey, stored);
+            throw e;
+        }
+
+        stored = new StoredResponse(requestHash, response.getStatusCode().value(), response.getBody());
+        complete(record, stored);
+        completedResponses.put(idempotencyKey, stored);
+        ours.complete(stored);
+        return response;
+    }
+
+    private void complete(IdempotencyRecord record, StoredResponse stored) {
+        record.setStatus(IdempotencyRecord.STATUS_COMPLETED);
+        record.setLeaseExpiresAt(null);
+        record.setResponseStatusCode(stored.statusCode());
+        record.setResponseBody(serialize(stored.body()));
+        idempotencyRecordRepository.save(record);
+    }
+
+    private StoredResponse awaitInFlight(String idempotencyKey, CompletableFuture<StoredResponse> future) {
+        try {
+            return future.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // The original request failed; surface the same error to everyone who waited on it.
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IdempotencyKeyConflictException("A request with this Idempotency-Key is still being processed.", idempotencyKey);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyKeyConflictException("Interrupted while waiting for a request with the same Idempotency-Key.", idempotencyKey);
+        }
+    }
+
+    /**
+     * Waits for a key claimed by another instance (or by an earlier leader here) to be completed in the table,
+     * taking it over if the claim's lease expires first.
+     *
+     * @return null once {@code ours} is completed with the stored response, or the record now leased to us.
+     */
+    private IdempotencyRecord awaitPersisted(String idempotencyKey, String requestHash, CompletableFuture<StoredResponse> ours) {
+        long deadline = System.nanoTime() + waitTimeout.toNanos();
+        while (true) {
+            Optional<IdempotencyRecord> record = idempotencyRecordRepository.findByIdempotencyKey(idempotencyKey);
+            if (record.isEmpty()) {
+                throw new IdempotencyKeyConflictException("The original request with this Idempotency-Key did not complete. Please retry.", idempotencyKey);
+            }
+            if (IdempotencyRecord.STATUS_COMPLETED.equals(record.get().getStatus())) {
+                StoredResponse stored = new StoredResponse(record.get().getRequestHash(),
+                        record.get().getResponseStatusCode(), deserialize(record.get().getResponseBody()));
+                completedResponses.put(idempotencyKey, stored);
+                ours.complete(stored);
+                return null;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            if (record.get().getLeaseExpiresAt() != null && record.get().getLeaseExpiresAt().isBefore(now)
+                    && record.get().getRequestHash().equals(requestHash)
+                    && idempotencyRecordRepository.takeOverExpiredLease(idempotencyKey, now, now.plus(lease)) == 1) {
+                // The instance processing it went away without a result; run the request here instead.
+                logger.warn("Took over expired Idempotency-Key {} left in progress since {}", idempotencyKey, record.get().getUpdatedAt());
+                return idempotencyRecordRepository.findByIdempotencyKey(idempotencyKey).orElseThrow();
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IdempotencyKeyConflictException("A request with this Idempotency-Key is still being processed.", idempotencyKey);
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IdempotencyKeyConflictException("Interrupted while waiting for a request with the same Idempotency-Key.", idempotencyKey);
+            }
+        }
+    }
+
+    private ResponseEntity<PaymentResponse> replay(String idempotencyKey, String requestHash, StoredResponse stored) {
+        if (!stored.requestHash().equals(requestHash)) {
+            throw new IdempotencyKeyConflictException("Idempotency-Key was already used with a different request payload.", idempotencyKey);
+        }
+        logger.info("Replaying stored response for Idempotency-Key {}", idempotencyKey);
+        return ResponseEntity.status(stored.statusCode())
+                .header(REPLAYED_HEADER, "true")
+                .body(stored.body());
+    }
+
+    private static boolean isRejectedBeforeGatewayCall(RuntimeException e) {
+        return e instanceof CallNotPermittedException || e instanceof BulkheadFullException || e instanceof RejectedExecutionException;
+    }
+
+    // The body GlobalExceptionHandler answers the failed request with, so a retry sees the same error
+    private static PaymentResponse failureBody(RuntimeException e) {
+        PaymentResponse body = new PaymentResponse();
+        if (e instanceof PaymentProcessingException paymentProcessingException) {
+            body.setStatus("PAYMENT_ERROR");
+            body.setMessage(paymentProcessingException.getMessage());
+            body.setTransactionId(paymentProcessingException.getTransactionId());
+            body.setGatewayName(paymentProcessingException.getGatewayName());
+        } else {
+            body.setStatus("INTERNAL_SERVER_ERROR");
+            body.setMessage("An unexpected error occurred. Please try again later.");
+        }
+        body.setTimestamp(LocalDateTime.now());
+        return body;
+    }
+
+    @Scheduled(fixedDelayString = "${payments.idempotency.purge-interval-ms:3600000}")
+    public void purgeExpiredKeys() {
+        int purged = idempotencyRecordRepository.deleteCreatedBefore(LocalDateTime.now().minus(retention));
+        if (purged > 0) {
+            logger.info("Purged {} idempotency key(s) older than {}", purged, retention);
+        }
+    }
+
+    private String hash(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(hashingMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unable to fingerprint request for idempotency check", e);
+        }
+    }
+
+    private String serialize(PaymentResponse response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to store response for idempotency replay", e);
+        }
+    }
+
+    private PaymentResponse deserialize(String json) {
+        try {
+            return json == null ? null : objectMapper.readValue(json, PaymentResponse.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to read stored response for idempotency replay", e);
+        }
+    }
+
+    private record StoredResponse(String requestHash, int statusCode, PaymentResponse body) {
+    }
+}
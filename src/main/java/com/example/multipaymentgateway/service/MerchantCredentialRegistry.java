@@ -0,0 +1,155 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.exception.PaymentProcessingException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.razorpay.RazorpayClient;
+import com.razorpay.RazorpayException;
+import com.stripe.net.RequestOptions;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves a merchant to the gateway clients that act on its behalf: Stripe {@link RequestOptions} carrying its API key
+ * and a {@link RazorpayClient} authenticated with its key pair. Nothing is JVM-wide, so payments for different merchants
+ * can run side by side.
+ * <p>
+ * Credentials are read once from {@code payments.merchants.<merchant-id>.stripe-secret-key}, {@code .razorpay-key-id}
+ * and {@code .razorpay-key-secret}. A payment without a merchant belongs to the {@value #DEFAULT_MERCHANT} merchant,
+ * which uses the global {@code stripe.secret.key} and {@code razorpay.api.*} keys.
+ * <p>
+ * Clients are built on a merchant's first payment and kept in a size-bounded cache
+ * ({@code payments.merchant-clients.max-size}); merchants that are least recently used, or idle for longer than
+ * {@code payments.merchant-clients.idle-expiry}, are evicted and rebuilt on their next payment. Evicting a client only
+ * drops the object: connections belong to the gateway's shared pool (see {@link GatewayHttpClients}). Cache statistics
+ * are published as {@code cache.*} meters tagged {@code cache=merchant.clients.stripe} and
+ * {@code cache=merchant.clients.razorpay}.
+ */
+@Component
+public class MerchantCredentialRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(MerchantCredentialRegistry.class);
+    public static final String DEFAULT_MERCHANT = "default";
+
+    private final Map<String, MerchantCredentials> credentials;
+    private final Cache<String, RequestOptions> stripeOptions;
+    private final Cache<String, RazorpayClient> razorpayClients;
+
+    public MerchantCredentialRegistry(Environment environment,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${payments.merchant-clients.max-size:1000}") long maxSize,
+                                      @Value("${payments.merchant-clients.idle-expiry:1h}") Duration idleExpiry) {
+        Map<String, MerchantCredentials> merchants = new HashMap<>(Binder.get(environment)
+                .bind("payments.merchants", Bindable.mapOf(String.class, MerchantCredentials.class))
+                .orElse(Map.of()));
+        merchants.put(DEFAULT_MERCHANT, new MerchantCredentials(environment.getProperty("stripe.secret.key"),
+                environment.getProperty("razorpay.api.key"), environment.getProperty("razorpay.api.secret")));
+        this.credentials = Map.copyOf(merchants);
+
+        this.stripeOptions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(idleExpiry)
+                .recordStats()
+                .build();
+        this.razorpayClients = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(idleExpiry)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, stripeOptions, "merchant.clients.stripe");
+        CaffeineCacheMetrics.monitor(meterRegistry, razorpayClients, "merchant.clients.razorpay");
+        logger.info("Loaded credentials for {} merchant(s); clients for up to {} per gateway are kept", credentials.size(), maxSize);
+    }
+
+    /**
+     * The options to pass to every Stripe call made for the merchant.
+     *
+     * @param merchantId Merchant ID, or null for the default merchant.
+     * @throws PaymentProcessingException If the merchant is unknown or has no Stripe key.
+     */
+    public RequestOptions stripeOptions(String merchantId) {
+        return stripeOptions.get(merchantKey(merchantId), merchant -> {
+            MerchantCredentials merchantCredentials = credentialsOf(merchant);
+            if (!merchantCredentials.hasStripe()) {
+                throw new PaymentProcessingException("Stripe service is not available for merchant " + merchant + ". Please check configuration.");
+            }
+            return RequestOptions.builder().setApiKey(merchantCredentials.stripeSecretKey()).build();
+        });
+    }
+
+    /**
+     * Options for a single Stripe call that must not be applied twice, e.g. a PaymentIntent create.
+     *
+     * @param merchantId     Merchant ID, or null for the default merchant.
+     * @param idempotencyKey Sent as Stripe's {@code Idempotency-Key}.
+     * @throws PaymentProcessingException If the merchant is unknown or has no Stripe key.
+     */
+    public RequestOptions stripeOptions(String merchantId, String idempotencyKey) {
+        return RequestOptions.builder()
+                .setApiKey(stripeOptions(merchantId).getApiKey())
+                .setIdempotencyKey(idempotencyKey)
+                .build();
+    }
+
+    /**
+     * The Razorpay client for the merchant.
+     *
+     * @param merchantId Merchant ID, or null for the default merchant.
+     * @throws PaymentProcessingException If the merchant is unknown or has no Razorpay keys.
+     */
+    public RazorpayClient razorpayClient(String merchantId) {
+        return razorpayClients.get(merchantKey(merchantId), merchant -> {
+            MerchantCredentials merchantCredentials = credentialsOf(merchant);
+            if (!merchantCredentials.hasRazorpay()) {
+                throw new PaymentProcessingException("Razorpay service is not available for merchant " + merchant + ". Please check configuration.");
+            }
+            try {
+                return new RazorpayClient(merchantCredentials.razorpayKeyId(), merchantCredentials.razorpayKeySecret());
+            } catch (RazorpayException e) {
+                throw new PaymentProcessingException("Could not create Razorpay client for merchant " + merchant + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    public boolean isStripeConfigured(String merchantId) {
+        MerchantCredentials merchantCredentials = credentials.get(merchantKey(merchantId));
+        return merchantCredentials != null && merchantCredentials.hasStripe();
+    }
+
+    public boolean isRazorpayConfigured(String merchantId) {
+        MerchantCredentials merchantCredentials = credentials.get(merchantKey(merchantId));
+        return merchantCredentials != null && merchantCredentials.hasRazorpay();
+    }
+
+    // Whether any merchant can use the gateway, i.e. whether routing to it makes sense at all
+    public boolean isStripeConfigured() {
+        return credentials.values().stream().anyMatch(MerchantCredentials::hasStripe);
+    }
+
+    public boolean isRazorpayConfigured() {
+        return credentials.values().stream().anyMatch(MerchantCredentials::hasRazorpay);
+    }
+
+    public static String merchantKey(String merchantId) {
+        return merchantId == null || merchantId.isBlank() ? DEFAULT_MERCHANT : merchantId;
+    }
+
+    private MerchantCredentials credentialsOf(String merchant) {
+        MerchantCredentials merchantCredentials = credentials.get(merchant);
+        if (merchantCredentials == null) {
+            throw new PaymentProcessingException("Unknown merchant: " + merchant);
+        }
+        return merchantCredentials;
+    }
+}
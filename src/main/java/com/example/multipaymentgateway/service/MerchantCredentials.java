@@ -0,0 +1,21 @@
+package com.example.multipaymentgateway.service;
+
+/**
+ * One merchant's gateway API keys, bound from {@code payments.merchants.<merchant-id>.*}. A gateway whose keys are
+ * missing is not available to that merchant.
+ */
+public record MerchantCredentials(String stripeSecretKey, String razorpayKeyId, String razorpayKeySecret) {
+
+    public boolean hasStripe() {
+        return isSet(stripeSecretKey);
+    }
+
+    public boolean hasRazorpay() {
+        return isSet(razorpayKeyId) && isSet(razorpayKeySecret);
+    }
+
+    // The shipped application.properties holds YOUR_... placeholders
+    private static boolean isSet(String value) {
+        return value != null && !value.isBlank() && !value.contains("YOUR_");
+    }
+}
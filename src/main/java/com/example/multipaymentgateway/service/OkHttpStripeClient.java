@@ -0,0 +1,95 @@
+package com.example.multipaymentgateway.service;
+
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+import com.stripe.net.HttpClient;
+import com.stripe.net.HttpContent;
+import com.stripe.net.HttpHeaders;
+import com.stripe.net.StripeRequest;
+import com.stripe.net.StripeResponse;
+import com.stripe.net.StripeResponseStream;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the Stripe SDK's requests through one of our {@link GatewayHttpClients} instead of the SDK's default
+ * {@code HttpURLConnection} client. Stripe's network retries still apply on top.
+ */
+class OkHttpStripeClient extends HttpClient {
+
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private final OkHttpClient client;
+
+    OkHttpStripeClient(OkHttpClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public StripeResponse request(StripeRequest request) throws StripeException {
+        try (Response response = execute(request)) {
+            ResponseBody body = response.body();
+            return new StripeResponse(response.code(), HttpHeaders.of(response.headers().toMultimap()),
+                    body != null ? body.string() : "");
+        } catch (IOException e) {
+            throw connectionError(e);
+        }
+    }
+
+    @Override
+    public StripeResponseStream requestStream(StripeRequest request) throws StripeException {
+        try {
+            Response response = execute(request); // Closed by whoever reads the stream
+            ResponseBody body = response.body();
+            InputStream stream = body != null ? body.byteStream() : InputStream.nullInputStream();
+            return new StripeResponseStream(response.code(), HttpHeaders.of(response.headers().toMultimap()), stream);
+        } catch (IOException e) {
+            throw connectionError(e);
+        }
+    }
+
+    private Response execute(StripeRequest request) throws IOException {
+        Request.Builder builder = new Request.Builder().url(request.url());
+        request.headers().map().forEach((name, values) -> values.forEach(value -> builder.addHeader(name, value)));
+        HttpContent content = request.content();
+        RequestBody body = null;
+        if (content != null) {
+            body = RequestBody.create(content.byteArrayContent(), MediaType.parse(content.contentType()));
+        } else if ("POST".equals(request.method().name())) {
+            body = RequestBody.create(EMPTY_BODY, null);
+        }
+        builder.method(request.method().name(), body);
+        return clientFor(request).newCall(builder.build()).execute();
+    }
+
+    // Honours timeouts set on the request's RequestOptions; the derived client shares the pool
+    private OkHttpClient clientFor(StripeRequest request) {
+        Integer connectTimeout = request.options() != null ? request.options().getConnectTimeout() : null;
+        Integer readTimeout = request.options() != null ? request.options().getReadTimeout() : null;
+        boolean sameConnect = connectTimeout == null || connectTimeout == client.connectTimeoutMillis();
+        boolean sameRead = readTimeout == null || readTimeout == client.readTimeoutMillis();
+        if (sameConnect && sameRead) {
+            return client;
+        }
+        OkHttpClient.Builder builder = client.newBuilder();
+        if (!sameConnect) {
+            builder.connectTimeout(connectTimeout, TimeUnit.MILLISECONDS);
+        }
+        if (!sameRead) {
+            builder.readTimeout(readTimeout, TimeUnit.MILLISECONDS);
+        }
+        return builder.build();
+    }
+
+    private static ApiConnectionException connectionError(IOException e) {
+        return new ApiConnectionException("IOException during API request to Stripe: " + e.getMessage(), e);
+    }
+}
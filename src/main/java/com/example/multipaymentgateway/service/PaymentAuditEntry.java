@@ -0,0 +1,12 @@
+package com.example.multipaymentgateway.service;
+
+import java.time.Instant;
+
+/**
+ * One raw gateway payload from the {@link PaymentAuditLog}.
+ *
+ * @param type    What the payload is, e.g. "payment_intent.create.request" or "webhook".
+ * @param payload The payload as sent or received (usually JSON), with client secrets redacted.
+ */
+public record PaymentAuditEntry(String transactionId, String gateway, String type, Instant recordedAt, String payload) {
+}
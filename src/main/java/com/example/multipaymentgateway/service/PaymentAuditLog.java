@@ -0,0 +1,373 @@
+package com.example.multipaymentgateway.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Append-only log of the raw payloads exchanged with the gateways (requests, responses and webhooks), kept out of the
+ * {@code payments} table so the hot row stays small.
+ * <p>
+ * {@link #record} only queues the payload; a scheduled flush compresses each record and appends it to the active
+ * segment file in {@code payments.audit.directory}. A new segment is started once the active one reaches
+ * {@code segment-max-size} or {@code segment-max-age}. Segments older than {@code retention} are deleted. Reads
+ * memory-map the segment and go straight to the records listed for the transaction in an in-memory index, which is
+ * rebuilt from the segment files on startup. Records still queued when the process dies are lost, and a full queue
+ * drops new records ({@code payment.audit.dropped}). This is a debugging aid, not a ledger.
+ * <p>
+ * Record layout: {@code int length | int crc32 | short keyLength | key (transaction ID) | long recordedAt (epoch ms) |
+ * deflated(gateway, type, payload)}. The length and CRC cover everything after the CRC field.
+ */
+@Component
+public class PaymentAuditLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentAuditLog.class);
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int FRAME_HEADER_BYTES = 8; // length + crc
+    private static final Pattern CLIENT_SECRET = Pattern.compile("(\"client_secret\"\\s*:\\s*)\"[^\"]*\"");
+
+    private final Path directory;
+    private final long segmentMaxBytes;
+    private final Duration segmentMaxAge;
+    private final Duration retention;
+    private final BlockingQueue<PaymentAuditEntry> pending;
+    private final Counter writtenRecords;
+    private final Counter droppedRecords;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Map<String, List<Location>> index = new ConcurrentHashMap<>();
+    // Only touched while holding this object's lock
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private Segment active;
+    private FileChannel activeChannel;
+
+    public PaymentAuditLog(@Value("${payments.audit.directory:./data/audit}") Path directory,
+                           @Value("${payments.audit.segment-max-size:64MB}") DataSize segmentMaxSize,
+                           @Value("${payments.audit.segment-max-age:1h}") Duration segmentMaxAge,
+                           @Value("${payments.audit.retention:30d}") Duration retention,
+                           @Value("${payments.audit.queue-capacity:10000}") int queueCapacity,
+                           MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.segmentMaxBytes = Math.min(segmentMaxSize.toBytes(), Integer.MAX_VALUE); // Mapped buffers are int-indexed
+        this.segmentMaxAge = segmentMaxAge;
+        this.retention = retention;
+        this.pending = new LinkedBlockingQueue<>(queueCapacity);
+        this.writtenRecords = Counter.builder("payment.audit.records")
+                .description("Gateway payloads written to the audit log")
+                .register(meterRegistry);
+        this.droppedRecords = Counter.builder("payment.audit.dropped")
+                .description("Gateway payloads dropped because the audit log queue was full or a write failed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues a payload for the next flush. Never blocks and never throws; payloads without a transaction ID are ignored.
+     */
+    public void record(String transactionId, String gateway, String type, String payload) {
+        if (transactionId == null || payload == null) {
+            return;
+        }
+        if (!pending.offer(new PaymentAuditEntry(transactionId, gateway, type, Instant.now(), payload))) {
+            droppedRecords.increment();
+        }
+    }
+
+    /**
+     * @return Every payload still retained for the transaction, oldest first; empty if there are none.
+     */
+    public List<PaymentAuditEntry> history(String transactionId) {
+        List<Location> locations = index.get(transactionId);
+        if (locations == null) {
+            return List.of();
+        }
+        List<PaymentAuditEntry> entries = new ArrayList<>(locations.size());
+        for (Location location : locations) {
+            Segment segment = segments.get(location.segment());
+            if (segment == null) {
+                continue; // Deleted by retention since the lookup
+            }
+            try {
+                entries.add(read(segment, location.position()));
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Skipping unreadable audit record at {}:{} for transaction {}: {}",
+                        segment.path.getFileName(), location.position(), transactionId, e.getMessage());
+            }
+        }
+        return entries;
+    }
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long id;
+            try {
+                id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring unexpected file {} in the audit log directory", file);
+                continue;
+            }
+            Segment segment = new Segment(id, file, Files.getLastModifiedTime(file).toInstant());
+            load(segment);
+            segments.put(id, segment);
+        }
+        deleteExpiredSegments();
+        roll();
+        logger.info("Audit log opened in {} with {} segment(s) and {} indexed transaction(s)", directory, segments.size(), index.size());
+    }
+
+    @Scheduled(fixedDelayString = "${payments.audit.flush-interval-ms:200}")
+    public synchronized void flush() {
+        if (activeChannel == null) {
+            return; // Not opened yet, or already closed
+        }
+        List<PaymentAuditEntry> batch = new ArrayList<>();
+        pending.drainTo(batch);
+        int written = 0;
+        try {
+            if (active.size > 0 && Duration.between(active.createdAt, Instant.now()).compareTo(segmentMaxAge) >= 0) {
+                roll();
+            }
+            for (PaymentAuditEntry entry : batch) {
+                append(entry);
+                written++;
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to write {} audit record(s): {}", batch.size() - written, e.getMessage(), e);
+            droppedRecords.increment(batch.size() - written);
+        }
+        writtenRecords.increment(written);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        flush();
+        if (activeChannel != null) {
+            sealActive();
+            activeChannel = null;
+        }
+        deflater.end();
+    }
+
+    private void append(PaymentAuditEntry entry) throws IOException {
+        byte[] frame = encode(entry);
+        if (active.size > 0 && active.size + frame.length > segmentMaxBytes) {
+            roll();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        while (buffer.hasRemaining()) {
+            activeChannel.write(buffer);
+        }
+        int position = (int) active.size;
+        active.size += frame.length;
+        active.lastWrittenAt = entry.recordedAt();
+        // Indexed only once the whole record is in the file, so readers never see a partial one
+        index.computeIfAbsent(entry.transactionId(), transactionId -> new CopyOnWriteArrayList<>())
+                .add(new Location(active.id, position));
+    }
+
+    private byte[] encode(PaymentAuditEntry entry) throws IOException {
+        byte[] key = entry.transactionId().getBytes(StandardCharsets.UTF_8);
+        if (key.length > 0xFFFF) {
+            throw new IOException("Transaction ID too long for the audit log: " + key.length + " bytes");
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        deflater.reset();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(body, deflater))) {
+            out.writeUTF(entry.gateway() != null ? entry.gateway() : "");
+            out.writeUTF(entry.type() != null ? entry.type() : "");
+            out.write(CLIENT_SECRET.matcher(entry.payload()).replaceAll("$1\"[redacted]\"").getBytes(StandardCharsets.UTF_8));
+        }
+
+        int length = 2 + key.length + 8 + body.size();
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + length);
+        frame.putInt(length);
+        frame.putInt(0); // CRC, filled in below
+        frame.putShort((short) key.length);
+        frame.put(key);
+        frame.putLong(entry.recordedAt().toEpochMilli());
+        frame.put(body.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), FRAME_HEADER_BYTES, length);
+        frame.putInt(4, (int) crc.getValue());
+        return frame.array();
+    }
+
+    private PaymentAuditEntry read(Segment segment, int position) throws IOException {
+        int length = segment.view(position + FRAME_HEADER_BYTES).getInt(position);
+        ByteBuffer buffer = segment.view(position + FRAME_HEADER_BYTES + (long) length);
+        int expectedCrc = buffer.getInt(position + 4);
+        byte[] frame = new byte[length];
+        buffer.get(position + FRAME_HEADER_BYTES, frame);
+        CRC32 crc = new CRC32();
+        crc.update(frame);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("checksum mismatch");
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(frame);
+        int keyLength = header.getShort() & 0xFFFF;
+        String transactionId = new String(frame, 2, keyLength, StandardCharsets.UTF_8);
+        header.position(2 + keyLength);
+        Instant recordedAt = Instant.ofEpochMilli(header.getLong());
+        int bodyOffset = header.position();
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(frame, bodyOffset, frame.length - bodyOffset)))) {
+            String gateway = in.readUTF();
+            String type = in.readUTF();
+            String payload = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return new PaymentAuditEntry(transactionId, gateway.isEmpty() ? null : gateway, type, recordedAt, payload);
+        }
+    }
+
+    // Indexes the complete records of an existing segment and cuts off a record torn by a crash
+    private void load(Segment segment) throws IOException {
+        long fileSize = Files.size(segment.path);
+        int position = 0;
+        if (fileSize > 0) {
+            ByteBuffer buffer = segment.view(fileSize);
+            while (position + FRAME_HEADER_BYTES <= fileSize) {
+                int length = buffer.getInt(position);
+                if (length < 10 || position + FRAME_HEADER_BYTES + (long) length > fileSize) {
+                    break;
+                }
+                int keyLength = buffer.getShort(position + FRAME_HEADER_BYTES) & 0xFFFF;
+                byte[] key = new byte[keyLength];
+                buffer.get(position + FRAME_HEADER_BYTES + 2, key);
+                index.computeIfAbsent(new String(key, StandardCharsets.UTF_8), transactionId -> new CopyOnWriteArrayList<>())
+                        .add(new Location(segment.id, position));
+                position += FRAME_HEADER_BYTES + length;
+            }
+        }
+        if (position < fileSize) {
+            logger.warn("Truncating audit segment {} from {} to {} bytes after an incomplete record", segment.path, fileSize, position);
+            segment.mapped = null; // Must not be read past the new end
+            try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.WRITE)) {
+                channel.truncate(position);
+            }
+        }
+        segment.size = position;
+    }
+
+    private void roll() throws IOException {
+        if (activeChannel != null) {
+            sealActive();
+            deleteExpiredSegments();
+        }
+        long id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Path path = directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+        activeChannel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        active = new Segment(id, path, Instant.now());
+        segments.put(id, active);
+    }
+
+    private void sealActive() throws IOException {
+        activeChannel.force(false);
+        activeChannel.close();
+        if (active.size == 0) {
+            segments.remove(active.id);
+            Files.deleteIfExists(active.path);
+        }
+    }
+
+    private void deleteExpiredSegments() {
+        Instant cutoff = Instant.now().minus(retention);
+        Set<Long> deleted = new HashSet<>();
+        for (Segment segment : segments.values()) {
+            if (segment != active && segment.lastWrittenAt.isBefore(cutoff)) {
+                try {
+                    Files.deleteIfExists(segment.path);
+                } catch (IOException e) {
+                    logger.warn("Failed to delete expired audit segment {}: {}", segment.path, e.getMessage());
+                    continue; // Retried on the next roll
+                }
+                segments.remove(segment.id);
+                deleted.add(segment.id);
+            }
+        }
+        if (!deleted.isEmpty()) {
+            index.values().forEach(locations -> locations.removeIf(location -> deleted.contains(location.segment())));
+            index.values().removeIf(List::isEmpty);
+            logger.info("Deleted {} audit segment(s) older than {}", deleted.size(), retention);
+        }
+    }
+
+    private record Location(long segment, int position) {
+    }
+
+    private static final class Segment {
+
+        private final long id;
+        private final Path path;
+        private final Instant createdAt;
+        private volatile Instant lastWrittenAt;
+        private volatile long size; // Bytes of complete records
+        private volatile MappedByteBuffer mapped;
+
+        private Segment(long id, Path path, Instant createdAt) {
+            this.id = id;
+            this.path = path;
+            this.createdAt = createdAt;
+            this.lastWrittenAt = createdAt;
+        }
+
+        // A read-only mapping covering at least [0, end); remapped as the active segment grows
+        private ByteBuffer view(long end) throws IOException {
+            MappedByteBuffer current = mapped;
+            if (current == null || current.capacity() < end) {
+                synchronized (this) {
+                    current = mapped;
+                    if (current == null || current.capacity() < end) {
+                        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                            current = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.max(end, size));
+                        }
+                        mapped = current;
+                    }
+                }
+            }
+            return current;
+        }
+    }
+}
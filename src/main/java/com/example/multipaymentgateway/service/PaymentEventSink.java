@@ -0,0 +1,18 @@
+package com.example.multipaymentgateway.service;
+
+import java.util.List;
+
+/**
+ * A destination for payment status change events (message broker, file, in-process listeners, ...). Every sink bean
+ * receives every event from {@link PaymentOutboxRelay}.
+ */
+public interface PaymentEventSink {
+
+    /**
+     * Delivers a batch of events, in order. Must only return once the batch is durably accepted; throwing makes the
+     * relay retry the whole batch later, so a sink may see the same events more than once.
+     */
+    void publish(List<PaymentStatusChangedEvent> events);
+
+    String getSinkName(); // Used in metrics and logs, e.g. "file"
+}
@@ -0,0 +1,270 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.Money;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams payments matching a {@link PaymentSearchCriteria} as CSV or NDJSON, in constant memory however many rows
+ * match.
+ * <p>
+ * Rows are read with plain JDBC rather than through JPA. The statement is forward-only and read-only, with a fetch
+ * size of {@code payments.export.fetch-size}. Each row is written out and dropped as soon as it is read, and nothing
+ * is attached to a persistence context. Only the columns that are exported are selected. The statement runs in a
+ * read-only transaction because some drivers (PostgreSQL) only honour the fetch size with auto-commit off.
+ */
+@Service
+public class PaymentExportService {
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String fileExtension;
+
+        Format(String contentType, String fileExtension) {
+            this.contentType = contentType;
+            this.fileExtension = fileExtension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getFileExtension() {
+            return fileExtension;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentExportService.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String[] COLUMNS = {"transaction_id", "gateway_transaction_id", "gateway_order_id", "order_id",
+            "payment_gateway", "status", "amount", "currency", "created_at", "updated_at"};
+    private static final int STATUS_COLUMN = 5;
+    private static final int AMOUNT_COLUMN = 6;
+    private static final int CURRENCY_COLUMN = 7;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+
+    public PaymentExportService(JdbcTemplate jdbcTemplate,
+                                @Value("${payments.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Writes every matching payment, oldest first, to {@code out}. The stream is finished but not closed.
+     *
+     * @param gzip Whether to gzip the output as it is written.
+     * @return The number of payments written.
+     */
+    @Transactional(readOnly = true)
+    public long export(PaymentSearchCriteria criteria, Format format, boolean gzip, OutputStream out) throws IOException {
+        List<Object> parameters = new ArrayList<>();
+        String sql = "SELECT " + String.join(", ", COLUMNS) + " FROM payments" + where(criteria, parameters) + " ORDER BY created_at, id";
+
+        GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(gzipStream != null ? gzipStream : out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        RowWriter rowWriter = format == Format.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer);
+        long[] rows = {0};
+        try {
+            rowWriter.start();
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(fetchSize);
+                for (int i = 0; i < parameters.size(); i++) {
+                    statement.setObject(i + 1, parameters.get(i));
+                }
+                return statement;
+            }, resultSet -> {
+                try {
+                    rowWriter.write(resultSet);
+                    rows[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e); // e.g. the client went away; stops the query
+                }
+            });
+            rowWriter.finish();
+            writer.flush();
+            if (gzipStream != null) {
+                gzipStream.finish();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        logger.info("Exported {} payment(s) as {}{}", rows[0], format, gzip ? " (gzip)" : "");
+        return rows[0];
+    }
+
+    // Same filters as PaymentSearchService
+    private static String where(PaymentSearchCriteria criteria, List<Object> parameters) {
+        List<String> conditions = new ArrayList<>();
+        if (criteria.status() != null) {
+            conditions.add("status = ?");
+            parameters.add(criteria.status().getCode());
+        }
+        if (criteria.gateway() != null) {
+            conditions.add("payment_gateway = ?");
+            parameters.add(criteria.gateway().toLowerCase());
+        }
+        if (criteria.currency() != null) {
+            conditions.add("UPPER(currency) = ?");
+            parameters.add(criteria.currency().toUpperCase());
+        }
+        if (criteria.orderId() != null) {
+            conditions.add("order_id = ?");
+            parameters.add(criteria.orderId());
+        }
+        if (criteria.createdFrom() != null) {
+            conditions.add("created_at >= ?");
+            parameters.add(criteria.createdFrom());
+        }
+        if (criteria.createdTo() != null) {
+            conditions.add("created_at < ?");
+            parameters.add(criteria.createdTo());
+        }
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    private interface RowWriter {
+        void start() throws IOException;
+
+        void write(ResultSet row) throws IOException, SQLException;
+
+        void finish() throws IOException;
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+
+        private final Writer writer;
+
+        private CsvRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void start() throws IOException {
+            writer.write(String.join(",", COLUMNS));
+            writer.write("\r\n"); // RFC 4180
+        }
+
+        @Override
+        public void write(ResultSet row) throws IOException, SQLException {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeField(format(column(row, i)));
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    private static final class NdjsonRowWriter implements RowWriter {
+
+        private final Writer writer;
+        private JsonGenerator generator;
+
+        private NdjsonRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void start() throws IOException {
+            generator = JSON_FACTORY.createGenerator(writer);
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(ResultSet row) throws IOException, SQLException {
+            generator.writeStartObject();
+            for (int i = 0; i < COLUMNS.length; i++) {
+                Object value = column(row, i);
+                if (value instanceof BigDecimal amount) {
+                    generator.writeNumberField(COLUMNS[i], amount); // Keeps the exact scale
+                } else {
+                    generator.writeStringField(COLUMNS[i], format(value));
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.flush(); // Not closed: that would close the response stream
+        }
+    }
+
+    // Statuses are stored as codes but exported by name, and amounts at their currency's scale, like the search API returns them
+    private static Object column(ResultSet row, int index) throws SQLException {
+        Object value = row.getObject(index + 1);
+        if (index == STATUS_COLUMN && value instanceof Number code) {
+            return PaymentStatus.fromCode(code.intValue());
+        }
+        if (index == AMOUNT_COLUMN && value instanceof BigDecimal amount) {
+            return Money.normalize(amount, row.getString(CURRENCY_COLUMN + 1));
+        }
+        return value;
+    }
+
+    private static String format(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof BigDecimal decimal) {
+            return decimal.toPlainString();
+        }
+        if (value instanceof java.sql.Timestamp timestamp) {
+            return timestamp.toLocalDateTime().toString();
+        }
+        if (value instanceof LocalDateTime dateTime) {
+            return dateTime.toString();
+        }
+        return value.toString();
+    }
+}
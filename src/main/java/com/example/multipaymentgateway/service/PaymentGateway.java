@@ -2,8 +2,10 @@ package com.example.multipaymentgateway.service;
 
 import com.example.multipaymentgateway.dto.PaymentRequest;
 import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.model.Payment;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 /**
  * Interface for payment gateway operations.
@@ -19,6 +21,25 @@ public interface PaymentGateway {
      */
     PaymentResponse processPayment(PaymentRequest paymentRequest);
 
+    /**
+     * Builds, without saving, the PENDING payment this gateway would record for a request.
+     * Callers persist it through {@link PaymentRecordService} and then call {@link #processPendingPayment}.
+     *
+     * @param paymentRequest The payment request details.
+     * @return A new, unsaved payment with a fresh transaction ID.
+     */
+    Payment preparePayment(PaymentRequest paymentRequest);
+
+    /**
+     * Makes the remote call for a payment that has already been committed as PENDING, and finalizes it.
+     * {@link #processPayment} is {@link #preparePayment}, a commit, and this method.
+     *
+     * @param transactionId  The transaction ID of the committed PENDING payment.
+     * @param paymentRequest The payment request details.
+     * @return A response object containing the status and transaction ID.
+     */
+    PaymentResponse processPendingPayment(String transactionId, PaymentRequest paymentRequest);
+
     /**
      * Retrieves the status of a specific payment.
      *
@@ -37,6 +58,44 @@ public interface PaymentGateway {
      */
     PaymentResponse refundPayment(String transactionId, BigDecimal amount);
 
+    /**
+     * Resolves a payment that was committed as PENDING but never finalized with a gateway ID,
+     * for example because the process stopped between the remote call and the finalize step.
+     * Implementations look the payment up on the gateway side by our transaction ID and either
+     * finalize the row with the gateway's state or mark it FAILED if the gateway never saw it.
+     *
+     * @param transactionId The unique identifier of the stale transaction.
+     * @return A response object containing the recovered payment status.
+     */
+    PaymentResponse recoverPayment(String transactionId);
+
+    /**
+     * Looks up the gateway-side state of many payments at once for background reconciliation, using the gateway's
+     * list APIs (a page covers many payments) rather than one status call per payment. Nothing is written; the
+     * caller applies the returned updates in bulk.
+     *
+     * @param payments         Payments of this gateway that are not in a final state.
+     * @param beforeRemoteCall Run before each remote call; the reconciler uses it to cap its call rate and to stop
+     *                         while the gateway's circuit is open. Implementations must not run this method through
+     *                         the gateway's circuit breaker or bulkhead, which guard single live calls.
+     * @return Updates for the payments whose gateway-side state differs from the stored one. Payments the gateway
+     *         reported nothing new about are left out. Gateways without list APIs return an empty list.
+     */
+    default List<PaymentStatusUpdate> reconcile(List<Payment> payments, Runnable beforeRemoteCall) {
+        return List.of();
+    }
+
+    /**
+     * Whether this gateway can take payments in the given currency. Used when routing requests that
+     * don't name a gateway.
+     *
+     * @param currency ISO 4217 currency code, in any case.
+     * @return true if the gateway accepts the currency.
+     */
+    default boolean supportsCurrency(String currency) {
+        return true;
+    }
+
     /**
      * Returns the name of the payment gateway provider.
      * e.g., "stripe", "razorpay"
@@ -0,0 +1,116 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.PaymentOutboxEvent;
+import com.example.multipaymentgateway.repository.PaymentOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drains the {@code payment_outbox} table to every {@link PaymentEventSink}, oldest event first.
+ * <p>
+ * Each run reads batches of {@code payments.outbox.batch-size} events in id order. A batch is handed to every sink and
+ * only deleted once all of them have accepted it. If a sink fails, the run stops and the same batch is retried on the
+ * next run, so delivery is at least once and never skips ahead. A sink may therefore see a batch again, including a
+ * sink that had already accepted it. Delivery lag is published as {@code payment.outbox.lag} (age of the oldest
+ * undelivered event) and {@code payment.outbox.delivery.lag} (commit-to-delivery time per event).
+ */
+@Component
+public class PaymentOutboxRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentOutboxRelay.class);
+
+    private final PaymentOutboxRepository paymentOutboxRepository;
+    private final List<PaymentEventSink> sinks;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final Counter publishedEvents;
+    private final Timer deliveryLag;
+    // Creation time of the oldest event known to be undelivered; null when the outbox was last seen empty
+    private final AtomicReference<LocalDateTime> oldestPending = new AtomicReference<>();
+
+    public PaymentOutboxRelay(PaymentOutboxRepository paymentOutboxRepository,
+                              List<PaymentEventSink> sinks,
+                              MeterRegistry meterRegistry,
+                              @Value("${payments.outbox.batch-size:200}") int batchSize,
+                              @Value("${payments.outbox.max-batches-per-run:50}") int maxBatchesPerRun) {
+        this.paymentOutboxRepository = paymentOutboxRepository;
+        this.sinks = sinks;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.publishedEvents = Counter.builder("payment.outbox.published")
+                .description("Payment status change events delivered to all sinks")
+                .register(meterRegistry);
+        this.deliveryLag = Timer.builder("payment.outbox.delivery.lag")
+                .description("Time from a status change being committed to its delivery to all sinks")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("payment.outbox.lag", oldestPending, oldest -> {
+                    LocalDateTime value = oldest.get();
+                    return value == null ? 0 : Duration.between(value, LocalDateTime.now()).toMillis() / 1000.0;
+                })
+                .description("Age in seconds of the oldest payment event not yet delivered")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${payments.outbox.relay-interval-ms:500}")
+    public void relay() {
+        for (int run = 0; run < maxBatchesPerRun; run++) {
+            List<PaymentOutboxEvent> batch = paymentOutboxRepository.findAllByOrderByIdAsc(PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                oldestPending.set(null);
+                return;
+            }
+            oldestPending.set(batch.get(0).getOccurredAt());
+            if (!deliver(batch)) {
+                return; // Retried from the same event on the next run
+            }
+            if (batch.size() < batchSize) {
+                oldestPending.set(null);
+                return;
+            }
+        }
+    }
+
+    private boolean deliver(List<PaymentOutboxEvent> batch) {
+        List<PaymentStatusChangedEvent> events = batch.stream().map(PaymentOutboxRelay::toEvent).toList();
+        for (PaymentEventSink sink : sinks) {
+            try {
+                sink.publish(events);
+            } catch (Exception e) {
+                logger.warn("Sink {} failed to accept {} payment event(s) starting at {}, will retry: {}",
+                        sink.getSinkName(), events.size(), events.get(0).eventId(), e.getMessage());
+                meterRegistry.counter("payment.outbox.failures", "sink", sink.getSinkName()).increment();
+                return false;
+            }
+        }
+        paymentOutboxRepository.deleteAllByIdInBatch(batch.stream().map(PaymentOutboxEvent::getId).toList());
+
+        LocalDateTime now = LocalDateTime.now();
+        batch.forEach(event -> deliveryLag.record(Duration.between(event.getOccurredAt(), now)));
+        publishedEvents.increment(batch.size());
+        logger.debug("Relayed {} payment event(s) up to {}", batch.size(), batch.get(batch.size() - 1).getId());
+        return true;
+    }
+
+    private static PaymentStatusChangedEvent toEvent(PaymentOutboxEvent event) {
+        return new PaymentStatusChangedEvent(event.getId(), event.getTransactionId(), event.getPaymentGateway(),
+                event.getPreviousStatus(), event.getStatus(), event.getGatewayTransactionId(), event.getAmount(),
+                event.getCurrency(), event.getOccurredAt());
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Brings payments that are still in flight (PENDING, AUTHORIZED, ...) up to date with their gateways in the
+ * background, so their status doesn't depend on someone polling it.
+ * <p>
+ * Payments are read in keyset pages ordered by id. Each page is split by gateway and handed to
+ * {@link PaymentGateway#reconcile}, which looks many payments up with a few list calls. The resulting changes are
+ * written in one batched transaction per page, with the same out-of-order protection as webhooks. Each remote call
+ * first waits for a per-gateway rate limiter ({@code resilience4j.ratelimiter.configs.reconciliation}), so the sweep
+ * can't crowd out live traffic, and the page is given up while the gateway's circuit breaker is not closed.
+ * <p>
+ * The sweep runs outside the gateway's circuit breaker and bulkhead rather than as one call through them: a page can
+ * take many list calls and rate limiter waits, which would count as one very slow call against the breaker (and skew
+ * {@link GatewayRouter}'s latency average) while holding a bulkhead permit. It makes one remote call at a time, so it
+ * takes at most one slot's worth of the gateway's capacity. Each run processes at most {@code max-pages-per-run}
+ * pages and the next run continues from where it stopped.
+ */
+@Component
+public class PaymentReconciliationJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentReconciliationJob.class);
+    static final String RATE_LIMITER_CONFIG = "reconciliation";
+
+    private final PaymentRecordService paymentRecordService;
+    private final PaymentStatusService paymentStatusService;
+    private final Map<String, PaymentGateway> paymentGateways;
+    private final RateLimiterRegistry rateLimiterRegistry;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final Set<PaymentStatus> statuses;
+    private final int pageSize;
+    private final int maxPagesPerRun;
+    private final Duration minAge;
+    private final Duration maxAge;
+    private final Counter reconciledPayments;
+    private final Counter updatedPayments;
+    // Id of the last payment looked at; 0 starts a new sweep from the beginning of the table
+    private final AtomicLong cursor = new AtomicLong();
+
+    public PaymentReconciliationJob(PaymentRecordService paymentRecordService,
+                                    PaymentStatusService paymentStatusService,
+                                    Map<String, PaymentGateway> paymentGateways,
+                                    RateLimiterRegistry rateLimiterRegistry,
+                                    CircuitBreakerRegistry circuitBreakerRegistry,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${payments.reconciliation.statuses:PENDING,PENDING_USER_ACTION,AUTHORIZED}") Set<PaymentStatus> statuses,
+                                    @Value("${payments.reconciliation.page-size:100}") int pageSize,
+                                    @Value("${payments.reconciliation.max-pages-per-run:20}") int maxPagesPerRun,
+                                    @Value("${payments.reconciliation.min-age:2m}") Duration minAge,
+                                    @Value("${payments.reconciliation.max-age:7d}") Duration maxAge) {
+        this.paymentRecordService = paymentRecordService;
+        this.paymentStatusService = paymentStatusService;
+        this.paymentGateways = paymentGateways;
+        this.rateLimiterRegistry = rateLimiterRegistry;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.statuses = statuses;
+        this.pageSize = pageSize;
+        this.maxPagesPerRun = maxPagesPerRun;
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+        this.reconciledPayments = Counter.builder("payment.reconciliation.payments")
+                .description("Payments checked against their gateway by the reconciler")
+                .register(meterRegistry);
+        this.updatedPayments = Counter.builder("payment.reconciliation.updates")
+                .description("Payments whose status was changed by the reconciler")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${payments.reconciliation.interval-ms:300000}", initialDelayString = "${payments.reconciliation.initial-delay-ms:120000}")
+    public void reconcile() {
+        for (int page = 0; page < maxPagesPerRun; page++) {
+            List<Payment> payments = paymentRecordService.findReconcilable(statuses, cursor.get(), minAge, maxAge, pageSize);
+            if (payments.isEmpty()) {
+                cursor.set(0); // Reached the end; the next run starts a new sweep
+                return;
+            }
+            cursor.set(payments.get(payments.size() - 1).getId());
+            reconcilePage(payments);
+        }
+    }
+
+    private void reconcilePage(List<Payment> payments) {
+        Map<String, List<Payment>> byGateway = new LinkedHashMap<>();
+        for (Payment payment : payments) {
+            byGateway.computeIfAbsent(payment.getPaymentGateway(), gateway -> new ArrayList<>()).add(payment);
+        }
+
+        List<PaymentStatusUpdate> updates = new ArrayList<>();
+        byGateway.forEach((gatewayName, gatewayPayments) -> {
+            PaymentGateway gateway = paymentGateways.get(gatewayName + "Service");
+            if (gateway == null) {
+                logger.warn("No gateway bean found for '{}' while reconciling {} payment(s)", gatewayName, gatewayPayments.size());
+                return;
+            }
+            RateLimiter rateLimiter = rateLimiterRegistry.rateLimiter(RATE_LIMITER_CONFIG + "-" + gatewayName, RATE_LIMITER_CONFIG);
+            CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(gatewayName);
+            Runnable beforeRemoteCall = () -> {
+                RateLimiter.waitForPermission(rateLimiter);
+                // Only checked, never recorded; an open or half-open circuit's trial calls are left to live traffic
+                CircuitBreaker.State state = circuitBreaker.getState();
+                if (state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN || state == CircuitBreaker.State.HALF_OPEN) {
+                    throw CallNotPermittedException.createCallNotPermittedException(circuitBreaker);
+                }
+            };
+            try {
+                updates.addAll(gateway.reconcile(gatewayPayments, beforeRemoteCall));
+                reconciledPayments.increment(gatewayPayments.size());
+            } catch (Exception e) {
+                // Includes an open circuit or an exhausted rate limit; these payments are retried on the next sweep.
+                logger.warn("Failed to reconcile {} {} payment(s): {}", gatewayPayments.size(), gatewayName, e.getMessage());
+            }
+        });
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        List<Payment> changed = paymentRecordService.applyStatusUpdates(updates);
+        changed.forEach(payment -> paymentStatusService.evict(payment.getPaymentGateway(), payment.getTransactionId()));
+        updatedPayments.increment(changed.size());
+        logger.info("Reconciliation updated {} of {} payment(s)", changed.size(), payments.size());
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.exception.PaymentProcessingException;
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentOutboxEvent;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.example.multipaymentgateway.repository.PaymentOutboxRepository;
+import com.example.multipaymentgateway.repository.PaymentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Owns every write to the {@code payments} table made by the gateway services.
+ * <p>
+ * Each method runs in its own short transaction so that gateway implementations can follow a
+ * staged flow: commit the PENDING row, call the remote gateway with no transaction (and no pooled
+ * JDBC connection) held, then finalize the row in a second transaction. Rows that never reach the
+ * second stage are picked up by {@link StalePaymentRecoveryJob}.
+ * <p>
+ * Every status change is also written to the {@code payment_outbox} table in the same transaction, for
+ * {@link PaymentOutboxRelay} to deliver downstream.
+ * <p>
+ * Status writes are narrow conditional UPDATEs that only apply if the row still has the status and version it was
+ * read with (see {@link PaymentRepository#updateStatusIfUnchanged}), so a status refresh racing a refund or a webhook
+ * can't silently overwrite it. On a conflict the row is re-read and the transition re-evaluated, up to
+ * {@value #MAX_ATTEMPTS} times.
+ */
+@Service
+public class PaymentRecordService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentRecordService.class);
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final PaymentRepository paymentRepository;
+    private final PaymentOutboxRepository paymentOutboxRepository;
+
+    public PaymentRecordService(PaymentRepository paymentRepository, PaymentOutboxRepository paymentOutboxRepository) {
+        this.paymentRepository = paymentRepository;
+        this.paymentOutboxRepository = paymentOutboxRepository;
+    }
+
+    /**
+     * Stage one: persists and commits a new PENDING payment before any gateway call is made.
+     *
+     * @param payment A payment built by {@link PaymentGateway#preparePayment}.
+     */
+    @Transactional
+    public Payment createPending(Payment payment) {
+        payment.setStatus(PaymentStatus.PENDING);
+        // @PrePersist will set createdAt and updatedAt
+        Payment saved = paymentRepository.save(payment);
+        paymentOutboxRepository.save(outboxEvent(saved, null));
+        return saved;
+    }
+
+    /**
+     * Stage one for a whole batch: inserts all PENDING payments in a single transaction.
+     */
+    @Transactional
+    public List<Payment> createPendingBatch(List<Payment> payments) {
+        payments.forEach(payment -> payment.setStatus(PaymentStatus.PENDING));
+        List<Payment> saved = paymentRepository.saveAll(payments);
+        paymentOutboxRepository.saveAll(saved.stream().map(payment -> outboxEvent(payment, null)).toList());
+        return saved;
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<Payment> findByTransactionId(String transactionId) {
+        return paymentRepository.findByTransactionId(transactionId);
+    }
+
+    /**
+     * Stage three: records the outcome of a gateway call once the remote call has returned.
+     *
+     * @param transactionId        Our internal transaction ID.
+     * @param gatewayTransactionId The gateway's ID for the payment, or null to leave it unchanged.
+     * @param status               The new internal status; ignored (with a warning) if the payment can't move there
+     *                             from its current status.
+     * @return The payment as stored afterwards.
+     */
+    @Transactional
+    public Payment finalizePayment(String transactionId, String gatewayTransactionId, PaymentStatus status) {
+        return finalizePayment(transactionId, gatewayTransactionId, null, status);
+    }
+
+    /**
+     * Stage three for gateways that create an order before the payment (Razorpay): the order ID is known
+     * as soon as the order exists, the payment ID only once the customer has paid.
+     *
+     * @param gatewayOrderId The gateway's order ID, or null to leave it unchanged.
+     */
+    @Transactional
+    public Payment finalizePayment(String transactionId, String gatewayTransactionId, String gatewayOrderId, PaymentStatus status) {
+        StatusChangeResult result = changeStatus(transactionId, gatewayTransactionId, gatewayOrderId, status);
+        switch (result.outcome()) {
+            case REJECTED -> logger.warn("Refusing to move transaction {} from {} to {}", transactionId, result.previousStatus(), status);
+            case CONFLICT -> logger.warn("Gave up moving transaction {} to {} after {} conflicting concurrent updates (current status: {})",
+                    transactionId, status, MAX_ATTEMPTS, result.payment().getStatus());
+            default -> { }
+        }
+        return result.payment();
+    }
+
+    /**
+     * Moves a payment to a new status, and records gateway IDs, with a conditional update. Unlike
+     * {@link #finalizePayment}, the caller learns whether the change was applied, refused by the transition table, or
+     * lost to concurrent writers.
+     *
+     * @param gatewayTransactionId The gateway's payment ID, or null to leave it unchanged.
+     * @param gatewayOrderId       The gateway's order ID, or null to leave it unchanged.
+     */
+    @Transactional
+    public StatusChangeResult changeStatus(String transactionId, String gatewayTransactionId, String gatewayOrderId, PaymentStatus status) {
+        StatusChangeResult result = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            Payment payment = paymentRepository.findByTransactionId(transactionId)
+                    .orElseThrow(() -> new PaymentProcessingException("Payment not found with internal transaction ID: " + transactionId));
+            result = apply(payment, gatewayTransactionId, gatewayOrderId, status);
+            if (result.outcome() != StatusChangeResult.Outcome.CONFLICT) {
+                break;
+            }
+        }
+        if (result.statusChanged()) {
+            paymentOutboxRepository.save(outboxEvent(result.payment(), result.previousStatus()));
+        }
+        return result;
+    }
+
+    @Transactional
+    public Payment updateStatus(String transactionId, PaymentStatus status) {
+        return finalizePayment(transactionId, null, status);
+    }
+
+    /**
+     * Applies a batch of gateway-reported status changes in one transaction, using one lookup query per
+     * key type instead of one per update. Updates for unknown payments, for another gateway, or that
+     * the {@link PaymentStatus} transition table doesn't allow (events can arrive out of order) are skipped,
+     * as are updates that keep losing to concurrent writers.
+     *
+     * @return The payments that were changed.
+     */
+    @Transactional
+    public List<Payment> applyStatusUpdates(List<PaymentStatusUpdate> updates) {
+        Set<String> transactionIds = new HashSet<>();
+        Set<String> gatewayTransactionIds = new HashSet<>();
+        Set<String> gatewayOrderIds = new HashSet<>();
+        for (PaymentStatusUpdate update : updates) {
+            if (update.transactionId() != null) transactionIds.add(update.transactionId());
+            if (update.gatewayTransactionId() != null) gatewayTransactionIds.add(update.gatewayTransactionId());
+            if (update.gatewayOrderId() != null) gatewayOrderIds.add(update.gatewayOrderId());
+        }
+
+        Map<String, Payment> byTransactionId = new HashMap<>();
+        Map<String, Payment> byGatewayTransactionId = new HashMap<>();
+        Map<String, Payment> byGatewayOrderId = new HashMap<>();
+        if (!transactionIds.isEmpty()) {
+            paymentRepository.findByTransactionIdIn(transactionIds).forEach(p -> byTransactionId.put(p.getTransactionId(), p));
+        }
+        if (!gatewayTransactionIds.isEmpty()) {
+            paymentRepository.findByGatewayTransactionIdIn(gatewayTransactionIds).forEach(p -> byGatewayTransactionId.put(p.getGatewayTransactionId(), p));
+        }
+        if (!gatewayOrderIds.isEmpty()) {
+            paymentRepository.findByGatewayOrderIdIn(gatewayOrderIds).forEach(p -> byGatewayOrderId.put(p.getGatewayOrderId(), p));
+        }
+
+        // Identity-based: Payment's Lombok equals/hashCode covers mutable fields. Each payment is updated in place
+        // after its write, so a later update for the same payment in this batch is checked against the new version.
+        Set<Payment> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<PaymentOutboxEvent> outboxEvents = new ArrayList<>();
+        for (PaymentStatusUpdate update : updates) {
+            Payment payment = update.transactionId() != null ? byTransactionId.get(update.transactionId()) : null;
+            if (payment == null && update.gatewayTransactionId() != null) payment = byGatewayTransactionId.get(update.gatewayTransactionId());
+            if (payment == null && update.gatewayOrderId() != null) payment = byGatewayOrderId.get(update.gatewayOrderId());
+
+            if (payment == null || !payment.getPaymentGateway().equalsIgnoreCase(update.gatewayName())) {
+                logger.debug("No {} payment found for status update {}", update.gatewayName(), update);
+                continue;
+            }
+            StatusChangeResult result = applyUpdate(payment, update);
+            for (int attempt = 1; attempt < MAX_ATTEMPTS && result.outcome() == StatusChangeResult.Outcome.CONFLICT; attempt++) {
+                Optional<Payment> current = paymentRepository.findByTransactionId(payment.getTransactionId());
+                if (current.isEmpty()) {
+                    break;
+                }
+                payment = current.get();
+                result = applyUpdate(payment, update);
+            }
+            switch (result.outcome()) {
+                case APPLIED -> {
+                    byTransactionId.put(payment.getTransactionId(), payment);
+                    if (payment.getGatewayTransactionId() != null) byGatewayTransactionId.put(payment.getGatewayTransactionId(), payment);
+                    if (payment.getGatewayOrderId() != null) byGatewayOrderId.put(payment.getGatewayOrderId(), payment);
+                    changed.add(payment);
+                    if (result.statusChanged()) {
+                        outboxEvents.add(outboxEvent(payment, result.previousStatus()));
+                    }
+                }
+                case REJECTED -> logger.info("Ignoring out-of-order status {} for transaction {} (current status: {})",
+                        update.status(), payment.getTransactionId(), payment.getStatus());
+                case CONFLICT -> logger.warn("Dropping status update {} for transaction {} after {} conflicting concurrent updates",
+                        update, payment.getTransactionId(), MAX_ATTEMPTS);
+                default -> { }
+            }
+        }
+        paymentOutboxRepository.saveAll(outboxEvents);
+        return new ArrayList<>(changed);
+    }
+
+    private StatusChangeResult applyUpdate(Payment payment, PaymentStatusUpdate update) {
+        if (!payment.getStatus().canTransitionTo(update.status())) {
+            // Unlike finalizePayment, an out-of-order event doesn't get to record its gateway IDs either
+            return new StatusChangeResult(StatusChangeResult.Outcome.REJECTED, payment, payment.getStatus());
+        }
+        // A webhook never replaces an order ID we already have
+        String gatewayOrderId = payment.getGatewayOrderId() == null ? update.gatewayOrderId() : null;
+        return apply(payment, update.gatewayTransactionId(), gatewayOrderId, update.status());
+    }
+
+    /**
+     * One conditional write of {@code status} (or, if the transition table refuses it, of just the gateway IDs) against
+     * the status and version {@code payment} was read with. On success {@code payment} is updated to match the row.
+     */
+    private StatusChangeResult apply(Payment payment, String gatewayTransactionId, String gatewayOrderId, PaymentStatus status) {
+        PaymentStatus previousStatus = payment.getStatus();
+        boolean allowed = previousStatus.canTransitionTo(status);
+        PaymentStatus newStatus = allowed ? status : previousStatus;
+        String newGatewayTransactionId = gatewayTransactionId != null ? gatewayTransactionId : payment.getGatewayTransactionId();
+        String newGatewayOrderId = gatewayOrderId != null ? gatewayOrderId : payment.getGatewayOrderId();
+        if (newStatus == previousStatus && Objects.equals(newGatewayTransactionId, payment.getGatewayTransactionId())
+                && Objects.equals(newGatewayOrderId, payment.getGatewayOrderId())) {
+            return new StatusChangeResult(allowed ? StatusChangeResult.Outcome.UNCHANGED : StatusChangeResult.Outcome.REJECTED, payment, previousStatus);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        int updated = paymentRepository.updateStatusIfUnchanged(payment.getTransactionId(), previousStatus, payment.getVersion(),
+                newStatus, newGatewayTransactionId, newGatewayOrderId, now);
+        if (updated == 0) {
+            return new StatusChangeResult(StatusChangeResult.Outcome.CONFLICT, payment, previousStatus);
+        }
+        payment.setStatus(newStatus);
+        payment.setGatewayTransactionId(newGatewayTransactionId);
+        payment.setGatewayOrderId(newGatewayOrderId);
+        payment.setUpdatedAt(now);
+        payment.setVersion(payment.getVersion() + 1);
+        return new StatusChangeResult(allowed ? StatusChangeResult.Outcome.APPLIED : StatusChangeResult.Outcome.REJECTED, payment, previousStatus);
+    }
+
+    private static PaymentOutboxEvent outboxEvent(Payment payment, PaymentStatus previousStatus) {
+        PaymentOutboxEvent event = new PaymentOutboxEvent();
+        event.setTransactionId(payment.getTransactionId());
+        event.setPaymentGateway(payment.getPaymentGateway());
+        event.setPreviousStatus(previousStatus);
+        event.setStatus(payment.getStatus());
+        event.setGatewayTransactionId(payment.getGatewayTransactionId());
+        event.setAmount(payment.getAmount());
+        event.setCurrency(payment.getCurrency());
+        return event;
+    }
+
+    /**
+     * One keyset page, ordered by id, of PENDING payments that were committed in stage one but never received a gateway
+     * payment or order ID, i.e. the process died or the finalize transaction failed after (or during) the remote call.
+     *
+     * @param afterId The id of the last payment of the previous page, or 0 for the first page.
+     */
+    @Transactional(readOnly = true)
+    public List<Payment> findStalePending(Duration olderThan, long afterId, int limit) {
+        LocalDateTime cutoff = LocalDateTime.now().minus(olderThan);
+        return paymentRepository.findByStatusAndGatewayTransactionIdIsNullAndGatewayOrderIdIsNullAndCreatedAtBeforeAndIdGreaterThanOrderByIdAsc(
+                PaymentStatus.PENDING, cutoff, afterId, PageRequest.of(0, limit));
+    }
+
+    /**
+     * One keyset page of payments in the given (non-final) statuses, ordered by id. Only payments created between
+     * {@code maxAge} and {@code minAge} ago are included: younger ones are still being handled by the request that
+     * created them, older ones are given up on.
+     *
+     * @param afterId The id of the last payment of the previous page, or 0 for the first page.
+     */
+    @Transactional(readOnly = true)
+    public List<Payment> findReconcilable(Collection<PaymentStatus> statuses, long afterId, Duration minAge, Duration maxAge, int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        return paymentRepository.findByStatusInAndIdGreaterThanAndCreatedAtBetweenOrderByIdAsc(
+                statuses, afterId, now.minus(maxAge), now.minus(minAge), PageRequest.of(0, limit));
+    }
+}
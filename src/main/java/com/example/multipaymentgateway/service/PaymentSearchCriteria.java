@@ -0,0 +1,23 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.PaymentStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Filters for a payment search; null fields don't filter.
+ *
+ * @param status      Internal status.
+ * @param gateway     Gateway name, e.g. "stripe".
+ * @param currency    ISO 4217 code, in any case.
+ * @param orderId     The client's order ID.
+ * @param createdFrom Inclusive lower bound on creation time.
+ * @param createdTo   Exclusive upper bound on creation time.
+ */
+public record PaymentSearchCriteria(PaymentStatus status,
+                                    String gateway,
+                                    String currency,
+                                    String orderId,
+                                    LocalDateTime createdFrom,
+                                    LocalDateTime createdTo) {
+}
@@ -0,0 +1,121 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.dto.PaymentSearchResponse;
+import com.example.multipaymentgateway.dto.PaymentSummary;
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.repository.PaymentRepository;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Searches stored payments, newest first, with keyset (seek) pagination.
+ * <p>
+ * A page ends with an opaque cursor holding the last row's {@code (createdAt, id)}. The next page asks for rows that
+ * sort strictly after it, instead of skipping an OFFSET, so every page costs the same however deep it is. The
+ * {@code (..., createdAt, id)} indexes on {@link Payment} serve the seek directly, with or without an equality filter on
+ * status, gateway or order ID.
+ */
+@Service
+public class PaymentSearchService {
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id"));
+
+    private final PaymentRepository paymentRepository;
+    private final int maxLimit;
+
+    public PaymentSearchService(PaymentRepository paymentRepository,
+                                @Value("${payments.search.max-limit:500}") int maxLimit) {
+        this.paymentRepository = paymentRepository;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * @param cursor The previous page's {@code nextCursor}, or null for the first page.
+     * @param limit  Page size, between 1 and {@code payments.search.max-limit}.
+     * @throws IllegalArgumentException if the cursor or limit is invalid.
+     */
+    @Transactional(readOnly = true)
+    public PaymentSearchResponse search(PaymentSearchCriteria criteria, String cursor, int limit) {
+        if (limit < 1 || limit > maxLimit) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxLimit + ".");
+        }
+        Specification<Payment> specification = matching(criteria, cursor != null && !cursor.isBlank() ? Cursor.decode(cursor) : null);
+
+        // One row more than the page tells whether there is a next page, without a count query
+        List<Payment> rows = paymentRepository.findBy(specification, query -> query.sortBy(NEWEST_FIRST).limit(limit + 1).all());
+        boolean hasMore = rows.size() > limit;
+        List<Payment> page = hasMore ? rows.subList(0, limit) : rows;
+        String nextCursor = hasMore ? Cursor.of(page.get(page.size() - 1)).encode() : null;
+        return new PaymentSearchResponse(page.stream().map(PaymentSearchService::toSummary).toList(), nextCursor);
+    }
+
+    private static Specification<Payment> matching(PaymentSearchCriteria criteria, Cursor after) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (criteria.status() != null) {
+                predicates.add(cb.equal(root.get("status"), criteria.status()));
+            }
+            if (criteria.gateway() != null) {
+                predicates.add(cb.equal(root.get("paymentGateway"), criteria.gateway().toLowerCase()));
+            }
+            if (criteria.currency() != null) {
+                // Stored in the gateway's preferred case (Stripe lower, Razorpay upper)
+                predicates.add(cb.equal(cb.upper(root.<String>get("currency")), criteria.currency().toUpperCase()));
+            }
+            if (criteria.orderId() != null) {
+                predicates.add(cb.equal(root.get("orderId"), criteria.orderId()));
+            }
+            if (criteria.createdFrom() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.<LocalDateTime>get("createdAt"), criteria.createdFrom()));
+            }
+            if (criteria.createdTo() != null) {
+                predicates.add(cb.lessThan(root.<LocalDateTime>get("createdAt"), criteria.createdTo()));
+            }
+            if (after != null) {
+                // (createdAt, id) < (cursor.createdAt, cursor.id), spelled out for databases without row comparisons
+                predicates.add(cb.or(
+                        cb.lessThan(root.<LocalDateTime>get("createdAt"), after.createdAt()),
+                        cb.and(cb.equal(root.<LocalDateTime>get("createdAt"), after.createdAt()), cb.lessThan(root.<Long>get("id"), after.id()))));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    private static PaymentSummary toSummary(Payment payment) {
+        return new PaymentSummary(payment.getTransactionId(), payment.getGatewayTransactionId(), payment.getGatewayOrderId(),
+                payment.getOrderId(), payment.getPaymentGateway(), payment.getStatus().name(), payment.getAmount(),
+                payment.getCurrency(), payment.getCreatedAt(), payment.getUpdatedAt());
+    }
+
+    private record Cursor(LocalDateTime createdAt, Long id) {
+
+        private static Cursor of(Payment payment) {
+            return new Cursor(payment.getCreatedAt(), payment.getId());
+        }
+
+        private static Cursor decode(String cursor) {
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = decoded.lastIndexOf('_');
+                return new Cursor(LocalDateTime.parse(decoded.substring(0, separator)), Long.parseLong(decoded.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor.", e);
+            }
+        }
+
+        private String encode() {
+            String raw = createdAt + "_" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.PaymentStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A payment status transition, as delivered by {@link PaymentOutboxRelay} to each {@link PaymentEventSink}.
+ * Delivery is at least once: consumers should ignore an {@code eventId} they have already handled.
+ *
+ * @param previousStatus Null when the payment was just created.
+ */
+public record PaymentStatusChangedEvent(long eventId, String transactionId, String gatewayName, PaymentStatus previousStatus,
+                                        PaymentStatus status, String gatewayTransactionId, BigDecimal amount, String currency,
+                                        LocalDateTime occurredAt) {
+}
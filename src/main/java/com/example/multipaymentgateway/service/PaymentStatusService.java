@@ -0,0 +1,204 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Answers payment status lookups as cheaply as possible before falling back to the gateway.
+ * <ol>
+ *     <li>Recently fetched statuses are served from a size-bounded cache whose TTL is the freshness budget.</li>
+ *     <li>Payments already in a terminal state are answered from the stored row; the gateway has nothing newer to say.</li>
+ *     <li>Everything else is fetched from the gateway and cached. Concurrent lookups for the same transaction share a
+ *     single gateway call: the first caller makes it and the others wait for its result.</li>
+ * </ol>
+ * Gateway lookups and refunds for the same transaction are serialized by a per-transaction lock, so a status fetched
+ * before a refund can't be cached after it. Locks for different transactions are independent.
+ * <p>
+ * Cache statistics are published as {@code cache.*} meters tagged {@code cache=payment.status}, and
+ * each lookup is counted by {@code payment.status.lookups} tagged with the source that answered it.
+ */
+@Service
+public class PaymentStatusService {
+
+    // Statuses the stored row answers without asking the gateway. SUCCESS can still be refunded, but every refund
+    // reaches the row through our own API (refundPayment) or a gateway webhook, and both evict the cache entry.
+    private static final Set<PaymentStatus> TERMINAL_STATUSES = EnumSet.of(PaymentStatus.SUCCESS, PaymentStatus.REFUNDED, PaymentStatus.CANCELED);
+
+    private final PaymentRecordService paymentRecordService;
+    private final Cache<String, PaymentResponse> statusCache;
+    private final Counter cacheLookups;
+    private final Counter storedLookups;
+    private final Counter gatewayLookups;
+    private final Counter coalescedLookups;
+    // The gateway lookup in progress per cache key, shared by everyone asking for that transaction meanwhile
+    private final ConcurrentHashMap<String, CompletableFuture<PaymentResponse>> inFlightLookups = new ConcurrentHashMap<>();
+    // Only transactions with a lookup or refund in progress have an entry
+    private final ConcurrentHashMap<String, TransactionLock> transactionLocks = new ConcurrentHashMap<>();
+
+    public PaymentStatusService(PaymentRecordService paymentRecordService,
+                                MeterRegistry meterRegistry,
+                                @Value("${payments.status-cache.max-size:50000}") long maxSize,
+                                @Value("${payments.status-cache.freshness:5s}") Duration freshness) {
+        this.paymentRecordService = paymentRecordService;
+        this.statusCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(freshness)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, statusCache, "payment.status");
+        this.cacheLookups = lookupCounter(meterRegistry, "cache");
+        this.storedLookups = lookupCounter(meterRegistry, "stored");
+        this.gatewayLookups = lookupCounter(meterRegistry, "gateway");
+        this.coalescedLookups = lookupCounter(meterRegistry, "coalesced");
+    }
+
+    public PaymentResponse getPaymentStatus(PaymentGateway gateway, String transactionId) {
+        String cacheKey = cacheKey(gateway.getGatewayName(), transactionId);
+        PaymentResponse cached = statusCache.getIfPresent(cacheKey);
+        if (cached != null) {
+            cacheLookups.increment();
+            return copyOf(cached);
+        }
+
+        Optional<Payment> stored = paymentRecordService.findByTransactionId(transactionId);
+        if (stored.isPresent() && isTerminal(stored.get())) {
+            storedLookups.increment();
+            PaymentResponse response = fromStoredPayment(stored.get());
+            statusCache.put(cacheKey, response);
+            return copyOf(response);
+        }
+
+        // Deliberately not statusCache.get(key, loader): that would hold a cache bin lock for the
+        // whole remote call.
+        CompletableFuture<PaymentResponse> lookup = new CompletableFuture<>();
+        CompletableFuture<PaymentResponse> inFlight = inFlightLookups.putIfAbsent(cacheKey, lookup);
+        if (inFlight != null) {
+            coalescedLookups.increment();
+            return copyOf(await(inFlight));
+        }
+        try {
+            gatewayLookups.increment();
+            PaymentResponse response = withTransactionLock(cacheKey, () -> {
+                PaymentResponse fetched = gateway.getPaymentStatus(transactionId);
+                // Cached under the lock, so a refund's eviction can't be overwritten by a status fetched before it
+                statusCache.put(cacheKey, copyOf(fetched));
+                return fetched;
+            });
+            lookup.complete(copyOf(response));
+            return response;
+        } catch (RuntimeException e) {
+            lookup.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLookups.remove(cacheKey, lookup);
+        }
+    }
+
+    /**
+     * Refunds a payment while gateway status lookups for the same transaction are held off, then drops its cached
+     * status. A lookup already in progress finishes first; one started meanwhile waits and sees the refund.
+     */
+    public PaymentResponse refundPayment(PaymentGateway gateway, String transactionId, BigDecimal amount) {
+        String cacheKey = cacheKey(gateway.getGatewayName(), transactionId);
+        return withTransactionLock(cacheKey, () -> {
+            try {
+                return gateway.refundPayment(transactionId, amount);
+            } finally {
+                statusCache.invalidate(cacheKey);
+            }
+        });
+    }
+
+    /**
+     * Drops any cached status for a transaction, e.g. after a refund changed it.
+     */
+    public void evict(String gatewayName, String transactionId) {
+        statusCache.invalidate(cacheKey(gatewayName, transactionId));
+    }
+
+    private <T> T withTransactionLock(String cacheKey, Supplier<T> work) {
+        TransactionLock transactionLock = transactionLocks.compute(cacheKey, (key, existing) -> {
+            TransactionLock lock = existing != null ? existing : new TransactionLock();
+            lock.holders++;
+            return lock;
+        });
+        transactionLock.lock.lock();
+        try {
+            return work.get();
+        } finally {
+            transactionLock.lock.unlock();
+            transactionLocks.computeIfPresent(cacheKey, (key, lock) -> --lock.holders == 0 ? null : lock);
+        }
+    }
+
+    // Waiters see the leader's exception as-is, so the error handling is the same as if they had made the call
+    private static PaymentResponse await(CompletableFuture<PaymentResponse> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isTerminal(Payment payment) {
+        return TERMINAL_STATUSES.contains(payment.getStatus());
+    }
+
+    private static PaymentResponse fromStoredPayment(Payment payment) {
+        PaymentResponse response = new PaymentResponse();
+        response.setTransactionId(payment.getTransactionId());
+        response.setGatewayTransactionId(payment.getGatewayTransactionId());
+        response.setStatus(payment.getStatus().name());
+        response.setMessage("Payment is in a final state: " + payment.getStatus());
+        response.setGatewayName(payment.getPaymentGateway());
+        response.setAmount(payment.getAmount());
+        response.setCurrency(payment.getCurrency());
+        response.setTimestamp(payment.getUpdatedAt());
+        return response;
+    }
+
+    // Callers (the controller) mutate the response they get back, so never hand out the cached instance.
+    private static PaymentResponse copyOf(PaymentResponse response) {
+        return new PaymentResponse(response.getTransactionId(), response.getGatewayTransactionId(), response.getStatus(),
+                response.getMessage(), response.getGatewayName(), response.getAmount(), response.getCurrency(),
+                response.getTimestamp(), response.getRedirectUrl(), response.getGatewaySpecificResponse());
+    }
+
+    private static String cacheKey(String gatewayName, String transactionId) {
+        return gatewayName + ":" + transactionId;
+    }
+
+    private static final class TransactionLock {
+        private final ReentrantLock lock = new ReentrantLock();
+        private int holders; // Threads holding or waiting for the lock; only changed inside compute for this key
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("payment.status.lookups")
+                .description("Payment status lookups by the source that answered them")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.PaymentStatus;
+
+/**
+ * A status change reported by a gateway out of band (webhook), to be applied to the stored payment.
+ * The payment is matched by our transaction ID when the gateway echoes it back, otherwise by the
+ * gateway's own payment or order ID.
+ *
+ * @param eventId              The gateway's event ID, used for deduplication; null if not event-driven.
+ * @param gatewayName          e.g. "stripe", "razorpay".
+ * @param transactionId        Our internal transaction ID, if the gateway echoed it back (metadata/receipt).
+ * @param gatewayTransactionId The gateway's payment ID; also stored on the row once known.
+ * @param gatewayOrderId       The gateway's order ID, for gateways that create orders before payments.
+ * @param status               The new internal status.
+ */
+public record PaymentStatusUpdate(String eventId,
+                                  String gatewayName,
+                                  String transactionId,
+                                  String gatewayTransactionId,
+                                  String gatewayOrderId,
+                                  PaymentStatus status) {
+}
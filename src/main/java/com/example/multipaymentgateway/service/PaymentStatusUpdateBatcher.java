@@ -0,0 +1,128 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.ProcessedWebhookEvent;
+import com.example.multipaymentgateway.repository.ProcessedWebhookEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Records gateway-reported status changes durably and applies them to the {@code payments} table in small batches,
+ * so a burst of webhooks costs a handful of transactions instead of one per event.
+ * <p>
+ * {@link #submit} stores the event in {@code processed_webhook_events} as pending before the webhook is acknowledged,
+ * so an event the gateway was told we received survives a crash or redeploy. The unique event ID makes redeliveries
+ * (including ones that reach another instance) no-ops. {@link #flush} applies pending events oldest first and marks
+ * them applied in the same transaction. A batch that fails is left pending for the next flush, logged and counted in
+ * {@code payment.webhooks.apply.failures}; nothing is dropped. Applying an event twice (two instances flushing at
+ * once) is harmless: the second application finds the status already set.
+ */
+@Component
+public class PaymentStatusUpdateBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentStatusUpdateBatcher.class);
+
+    private final PaymentRecordService paymentRecordService;
+    private final PaymentStatusService paymentStatusService;
+    private final ProcessedWebhookEventRepository processedWebhookEventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter failedBatches;
+    private final int batchSize;
+
+    public PaymentStatusUpdateBatcher(PaymentRecordService paymentRecordService,
+                                      PaymentStatusService paymentStatusService,
+                                      ProcessedWebhookEventRepository processedWebhookEventRepository,
+                                      TransactionTemplate transactionTemplate,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${payments.status-updates.batch-size:50}") int batchSize) {
+        this.paymentRecordService = paymentRecordService;
+        this.paymentStatusService = paymentStatusService;
+        this.processedWebhookEventRepository = processedWebhookEventRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.failedBatches = Counter.builder("payment.webhooks.apply.failures")
+                .description("Batches of webhook status updates that failed to apply and were left pending for retry")
+                .register(meterRegistry);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Stores an update as pending, to be applied by the next flush. Returns once it is committed, so the webhook can be
+     * acknowledged.
+     *
+     * @param update An update carrying the gateway's event ID.
+     * @return false if an event with this ID was already recorded.
+     */
+    public boolean submit(PaymentStatusUpdate update) {
+        Objects.requireNonNull(update.eventId(), "eventId");
+        if (processedWebhookEventRepository.existsByEventId(update.eventId())) {
+            return false;
+        }
+        try {
+            processedWebhookEventRepository.saveAndFlush(pendingEvent(update));
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            return false; // Recorded meanwhile, e.g. by a redelivery that reached another instance
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${payments.status-updates.flush-interval-ms:200}")
+    public void flush() {
+        List<ProcessedWebhookEvent> batch;
+        do {
+            batch = processedWebhookEventRepository.findByAppliedAtIsNullOrderByIdAsc(PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                applyBatch(batch);
+            } catch (Exception e) {
+                // Nothing was committed; the events stay pending and the next flush retries them.
+                failedBatches.increment();
+                logger.error("Failed to apply batch of {} status update(s) (events {} to {}), will retry: {}", batch.size(),
+                        batch.get(0).getEventId(), batch.get(batch.size() - 1).getEventId(), e.getMessage(), e);
+                return;
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    private void applyBatch(List<ProcessedWebhookEvent> batch) {
+        List<Payment> updated = transactionTemplate.execute(status -> {
+            List<Payment> changed = paymentRecordService.applyStatusUpdates(batch.stream().map(PaymentStatusUpdateBatcher::toUpdate).toList());
+            processedWebhookEventRepository.markApplied(batch.stream().map(ProcessedWebhookEvent::getId).toList(), LocalDateTime.now());
+            return changed;
+        });
+
+        if (updated != null) {
+            updated.forEach(payment -> paymentStatusService.evict(payment.getPaymentGateway(), payment.getTransactionId()));
+            logger.debug("Applied {} of {} pending status update(s)", updated.size(), batch.size());
+        }
+    }
+
+    private static ProcessedWebhookEvent pendingEvent(PaymentStatusUpdate update) {
+        ProcessedWebhookEvent event = new ProcessedWebhookEvent();
+        event.setEventId(update.eventId());
+        event.setGateway(update.gatewayName());
+        event.setTransactionId(update.transactionId());
+        event.setGatewayTransactionId(update.gatewayTransactionId());
+        event.setGatewayOrderId(update.gatewayOrderId());
+        event.setStatus(update.status());
+        return event;
+    }
+
+    private static PaymentStatusUpdate toUpdate(ProcessedWebhookEvent event) {
+        return new PaymentStatusUpdate(event.getEventId(), event.getGateway(), event.getTransactionId(),
+                event.getGatewayTransactionId(), event.getGatewayOrderId(), event.getStatus());
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.multipaymentgateway.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Random (version 4) UUIDs from {@link UUID#randomUUID()}, as transaction IDs were generated originally.
+ */
+@Component
+@ConditionalOnProperty(name = "payments.transaction-id.strategy", havingValue = "random")
+public class RandomTransactionIdGenerator implements TransactionIdGenerator {
+
+    @Override
+    public String nextId() {
+        return UUID.randomUUID().toString();
+    }
+}
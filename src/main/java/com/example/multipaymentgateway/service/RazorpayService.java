@@ -3,258 +3,287 @@ package com.example.multipaymentgateway.service;
 import com.example.multipaymentgateway.dto.PaymentRequest;
 import com.example.multipaymentgateway.dto.PaymentResponse;
 import com.example.multipaymentgateway.exception.PaymentProcessingException;
+import com.example.multipaymentgateway.model.Money;
 import com.example.multipaymentgateway.model.Payment;
-import com.example.multipaymentgateway.repository.PaymentRepository;
+import com.example.multipaymentgateway.model.PaymentStatus;
 import com.razorpay.Order;
 import com.razorpay.RazorpayClient;
 import com.razorpay.RazorpayException;
 import com.razorpay.Refund;
+import io.github.resilience4j.bulkhead.annotation.Bulkhead;
+import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import jakarta.annotation.PostConstruct;
+import okhttp3.OkHttpClient;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.lang.reflect.Field;
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.UUID;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service("razorpayService")
 public class RazorpayService implements PaymentGateway {
 
     private static final Logger logger = LoggerFactory.getLogger(RazorpayService.class);
-
-    @Value("${razorpay.api.key}")
-    private String razorpayKeyId;
-
-    @Value("${razorpay.api.secret}")
-    private String razorpayKeySecret;
-
-    private RazorpayClient razorpayClient;
-    private final PaymentRepository paymentRepository;
-
-    public RazorpayService(PaymentRepository paymentRepository) {
-        this.paymentRepository = paymentRepository;
+    // Also the name of this gateway's circuit breaker and bulkhead (resilience4j.*.instances.razorpay)
+    static final String GATEWAY_NAME = "razorpay";
+    private static final int RECONCILE_LIST_PAGE_SIZE = 100; // Razorpay's maximum
+    private static final int RECONCILE_MAX_LIST_PAGES = 20;
+    private static final long RECONCILE_WINDOW_SLACK_SECONDS = 300; // Clock skew
+
+    // Empty means any currency
+    @Value("${razorpay.supported-currencies:INR}")
+    private Set<String> supportedCurrencies = Set.of();
+
+    private final PaymentRecordService paymentRecordService;
+    private final TransactionIdGenerator transactionIdGenerator;
+    private final GatewayCallTimer gatewayCallTimer;
+    private final PaymentAuditLog paymentAuditLog;
+    private final GatewayHttpClients gatewayHttpClients;
+    private final MerchantCredentialRegistry merchantCredentials;
+
+    public RazorpayService(PaymentRecordService paymentRecordService, TransactionIdGenerator transactionIdGenerator,
+                         GatewayCallTimer gatewayCallTimer, PaymentAuditLog paymentAuditLog,
+                         GatewayHttpClients gatewayHttpClients, MerchantCredentialRegistry merchantCredentials) {
+        this.paymentRecordService = paymentRecordService;
+        this.transactionIdGenerator = transactionIdGenerator;
+        this.gatewayCallTimer = gatewayCallTimer;
+        this.paymentAuditLog = paymentAuditLog;
+        this.gatewayHttpClients = gatewayHttpClients;
+        this.merchantCredentials = merchantCredentials;
     }
 
     @PostConstruct
     public void init() {
-        try {
-            // Ensure keys are not null or empty before initializing
-            if (razorpayKeyId == null || razorpayKeyId.isEmpty() || razorpayKeyId.equals("YOUR_RAZORPAY_KEY_ID") ||
-                razorpayKeySecret == null || razorpayKeySecret.isEmpty() || razorpayKeySecret.equals("YOUR_RAZORPAY_KEY_SECRET")) {
-                logger.warn("Razorpay API Key ID or Secret is not configured or using default placeholders. Razorpay client will not be initialized.");
-                return; // Do not initialize if keys are placeholders or missing
-            }
-            this.razorpayClient = new RazorpayClient(razorpayKeyId, razorpayKeySecret);
-            logger.info("Razorpay client initialized successfully.");
-        } catch (RazorpayException e) {
-            logger.error("Error initializing Razorpay client", e);
-            // Application can continue running, but Razorpay transactions will fail.
-            // Or, throw new RuntimeException("Failed to initialize Razorpay client", e); to halt startup.
+        if (!merchantCredentials.isRazorpayConfigured()) {
+            logger.warn("No merchant has a Razorpay API Key ID and Secret configured. Razorpay client will not be initialized.");
+            return;
         }
+        // Each merchant's RazorpayClient is created on its first payment (see MerchantCredentialRegistry); all of them
+        // share the SDK's static HTTP client, so it has to be in place first.
+        useHttpClient(gatewayHttpClients.forGateway(GATEWAY_NAME));
+        logger.info("Razorpay client initialized successfully.");
     }
 
     @Override
-    @Transactional
-    public PaymentResponse processPayment(PaymentRequest paymentRequest) {
-        if (razorpayClient == null) {
-            logger.error("Razorpay client not initialized. Check API key configuration.");
-            throw new PaymentProcessingException("Razorpay service is not available. Please check configuration.");
-        }
-
-        String internalTransactionId = UUID.randomUUID().toString();
+    public Payment preparePayment(PaymentRequest paymentRequest) {
         Payment payment = new Payment();
-        payment.setTransactionId(internalTransactionId);
+        payment.setTransactionId(transactionIdGenerator.nextId());
         payment.setAmount(paymentRequest.getAmount());
         payment.setCurrency(paymentRequest.getCurrency().toUpperCase());
         payment.setPaymentGateway(getGatewayName());
-        payment.setStatus("PENDING");
-        // @PrePersist will set createdAt and updatedAt
-        payment = paymentRepository.save(payment);
+        payment.setOrderId(paymentRequest.getOrderId());
+        payment.setMerchantId(paymentRequest.getMerchantId());
+        return payment;
+    }
 
+    @Override
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
+    public PaymentResponse processPayment(PaymentRequest paymentRequest) {
+        merchantCredentials.razorpayClient(paymentRequest.getMerchantId()); // Fails before a row is written if the merchant can't use Razorpay
+
+        // Stage 1: commit the PENDING row before talking to Razorpay, so no connection is held during the call.
+        Payment payment = paymentRecordService.createPending(preparePayment(paymentRequest));
+        return processPendingPayment(payment.getTransactionId(), paymentRequest);
+    }
+
+    @Override
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
+    public PaymentResponse processPendingPayment(String internalTransactionId, PaymentRequest paymentRequest) {
+        String razorpayOrderId;
         try {
+            RazorpayClient razorpayClient = merchantCredentials.razorpayClient(paymentRequest.getMerchantId());
             JSONObject orderRequest = new JSONObject();
-            orderRequest.put("amount", paymentRequest.getAmount().multiply(new BigDecimal(100)).intValue()); // Amount in paise
+            orderRequest.put("amount", paymentRequest.toMoney().minorUnits()); // Amount in the currency's minor unit (paise for INR)
             orderRequest.put("currency", paymentRequest.getCurrency().toUpperCase());
-            orderRequest.put("receipt", internalTransactionId);
+            orderRequest.put("receipt", internalTransactionId); // Lets recoverPayment find the order
 
-            Order order = razorpayClient.orders.create(orderRequest);
-            String razorpayOrderId = order.get("id");
+            // Stage 2: remote call with no transaction open.
+            paymentAuditLog.record(internalTransactionId, GATEWAY_NAME, "orders.create.request", orderRequest.toString());
+            Order order = gatewayCallTimer.time(GATEWAY_NAME, "orders.create", () -> razorpayClient.orders.create(orderRequest));
+            paymentAuditLog.record(internalTransactionId, GATEWAY_NAME, "orders.create.response", order.toJson().toString());
+            razorpayOrderId = order.get("id");
             logger.info("Razorpay Order created: {} for internal transaction ID: {}", razorpayOrderId, internalTransactionId);
-
-            // SIMULATION: In a real scenario, client-side handles payment using this order_id.
-            // Then Razorpay sends a webhook or client confirms, providing a `razorpay_payment_id`.
-            // For this backend-only example, we'll simulate capture and use a placeholder payment_id.
-            // This step is crucial: The `gatewayTransactionId` should be the `razorpay_payment_id`.
-            // The `order_id` is just for initiating payment.
-            // If we only have order_id, we can't directly fetch payment status or refund without payment_id.
-
-            // Let's assume for now the order_id is what we store as gatewayTransactionId if no payment_id is obtained server-side.
-            // This is a simplification. Ideally, a webhook updates with actual payment_id.
-            payment.setGatewayTransactionId(razorpayOrderId); // Storing Order ID for now.
-            payment.setStatus("AUTHORIZED"); // Status after order creation, actual payment not yet captured by this backend call.
-                                          // Real status would be PENDING or AWAITING_USER_ACTION.
-                                          // Or if it's a direct server-to-server, it might be different.
-                                          // For Razorpay, 'created' is order status, payment happens after.
-            paymentRepository.save(payment);
-
-            PaymentResponse response = createPaymentResponse(payment, "Razorpay order created. Client must complete payment.", null);
-            response.setRedirectUrl(null); // No redirect URL in this flow yet, but could be if using specific methods
-            // Add razorpay_order_id to gatewaySpecificResponse for client
-            JSONObject specificDetails = new JSONObject();
-            specificDetails.put("razorpay_order_id", razorpayOrderId);
-            response.setGatewaySpecificResponse(specificDetails.toMap());
-            response.setStatus("PENDING_USER_ACTION"); // Custom status indicating client needs to act
-            response.setMessage("Razorpay order created successfully. Please complete the payment using the order_id: " + razorpayOrderId);
-
-
-            return response;
-
         } catch (RazorpayException e) {
             logger.error("Razorpay API error during payment processing for transactionId {}: {}", internalTransactionId, e.getMessage(), e);
-            payment.setStatus("FAILED");
-            paymentRepository.save(payment);
+            paymentRecordService.updateStatus(internalTransactionId, PaymentStatus.FAILED);
             throw new PaymentProcessingException("Razorpay payment failed: " + e.getMessage(), e);
         } catch (Exception e) {
             logger.error("Unexpected error during Razorpay payment processing for transactionId {}: {}", internalTransactionId, e.getMessage(), e);
-            payment.setStatus("ERROR");
-            paymentRepository.save(payment);
+            paymentRecordService.updateStatus(internalTransactionId, PaymentStatus.ERROR);
             throw new PaymentProcessingException("Unexpected error during Razorpay payment: " + e.getMessage(), e);
         }
+
+        // The customer pays against this order on the client side; the resulting `razorpay_payment_id` arrives by
+        // webhook or is picked up by getPaymentStatus, and is stored as gatewayTransactionId. Until then only the
+        // order ID is known.
+        // Stage 3: short finalize transaction. If this fails the row stays PENDING without a
+        // gateway ID and is resolved later by StalePaymentRecoveryJob.
+        Payment payment = paymentRecordService.finalizePayment(internalTransactionId, null, razorpayOrderId,
+                PaymentStatus.AUTHORIZED); // Status after order creation, actual payment not yet captured by this backend call.
+                               // For Razorpay, 'created' is order status, payment happens after.
+
+        PaymentResponse response = createPaymentResponse(payment, "Razorpay order created. Client must complete payment.", null);
+        response.setRedirectUrl(null); // No redirect URL in this flow yet, but could be if using specific methods
+        // Add razorpay_order_id to gatewaySpecificResponse for client
+        JSONObject specificDetails = new JSONObject();
+        specificDetails.put("razorpay_order_id", razorpayOrderId);
+        response.setGatewaySpecificResponse(specificDetails.toMap());
+        response.setStatus(PaymentStatus.PENDING_USER_ACTION.name()); // Client needs to act
+        response.setMessage("Razorpay order created successfully. Please complete the payment using the order_id: " + razorpayOrderId);
+
+        return response;
     }
 
     @Override
-    @Transactional
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
     public PaymentResponse getPaymentStatus(String transactionId) {
         // This `transactionId` is OUR internal system's transaction ID.
-        if (razorpayClient == null) {
-            logger.error("Razorpay client not initialized. Check API key configuration.");
-            throw new PaymentProcessingException("Razorpay service is not available. Please check configuration.");
-        }
-        Payment payment = paymentRepository.findByTransactionId(transactionId)
+        Payment payment = paymentRecordService.findByTransactionId(transactionId)
                 .orElseThrow(() -> new PaymentProcessingException("Payment not found with internal transaction ID: " + transactionId));
+        RazorpayClient razorpayClient = merchantCredentials.razorpayClient(payment.getMerchantId());
 
-        // To get actual payment status from Razorpay, we need either:
-        // 1. The Razorpay Payment ID (`razorpay_payment_id`) - preferred.
-        // 2. The Razorpay Order ID (`razorpay_order_id`) - can fetch payments for an order.
-
-        // Current `payment.getGatewayTransactionId()` stores the Order ID from processPayment.
-        String razorpayOrderId = payment.getGatewayTransactionId();
-        if (razorpayOrderId == null || razorpayOrderId.isEmpty()) {
-            logger.warn("Razorpay Order ID is missing for internal transaction ID: {}. Cannot query Razorpay.", transactionId);
-            return createPaymentResponse(payment, "Cannot fetch status from Razorpay: Gateway Order ID is missing.", null);
-        }
-
+        // One remote call either way: the payment itself once its ID is known, otherwise the payments made against the order.
+        String razorpayPaymentId = paymentIdOf(payment);
+        String razorpayOrderId = orderIdOf(payment);
         try {
-            // Fetch all payments for the order. There could be multiple attempts.
-            // We'd typically look for a 'captured' one.
-            java.util.List<com.razorpay.Payment> paymentsForOrder = razorpayClient.orders.fetchPayments(razorpayOrderId);
-
-            if (paymentsForOrder.isEmpty()) {
-                // No payment attempts yet or none successful. Order status might be 'created' or 'attempted'.
-                // Fetch order status itself
-                Order order = razorpayClient.orders.fetch(razorpayOrderId);
-                String orderStatus = order.get("status"); // e.g., created, attempted, paid
-                payment.setStatus(mapRazorpayOrderStatusToInternalStatus(orderStatus, null));
-                paymentRepository.save(payment);
-                return createPaymentResponse(payment, "Razorpay order status: " + orderStatus + ". No successful payment captured yet.", razorpayOrderId);
+            if (razorpayPaymentId != null) {
+                com.razorpay.Payment rzpPayment = gatewayCallTimer.time(GATEWAY_NAME, "payments.fetch", () -> razorpayClient.payments.fetch(razorpayPaymentId));
+                paymentAuditLog.record(transactionId, GATEWAY_NAME, "payments.fetch.response", rzpPayment.toJson().toString());
+                String rzpPaymentStatus = rzpPayment.get("status");
+                payment = updateStatusIfChanged(payment, mapRazorpayOrderStatusToInternalStatus(null, rzpPaymentStatus));
+                return createPaymentResponse(payment, "Payment status retrieved successfully from Razorpay: " + rzpPaymentStatus, razorpayOrderId);
             }
 
-            // Find a successful payment (captured or authorized)
-            com.razorpay.Payment successfulPayment = null;
-            for (com.razorpay.Payment rzpPayment : paymentsForOrder) {
-                String paymentStatus = rzpPayment.get("status");
-                if ("captured".equalsIgnoreCase(paymentStatus)) {
-                    successfulPayment = rzpPayment;
-                    break;
-                }
-                if (successfulPayment == null && "authorized".equalsIgnoreCase(paymentStatus)) {
-                    successfulPayment = rzpPayment; // Prefer captured, but authorized is also a form of success
-                }
+            if (razorpayOrderId == null) {
+                logger.warn("Razorpay Order ID is missing for internal transaction ID: {}. Cannot query Razorpay.", transactionId);
+                return createPaymentResponse(payment, "Cannot fetch status from Razorpay: Gateway Order ID is missing.", null);
             }
 
-            if (successfulPayment != null) {
-                String rzpPaymentId = successfulPayment.get("id");
-                String rzpPaymentStatus = successfulPayment.get("status");
-                logger.info("Found Razorpay payment {} with status {} for order {}", rzpPaymentId, rzpPaymentStatus, razorpayOrderId);
-                payment.setGatewayTransactionId(rzpPaymentId); // Update to actual payment_id
-                payment.setStatus(mapRazorpayOrderStatusToInternalStatus(null, rzpPaymentStatus));
-                paymentRepository.save(payment);
-                return createPaymentResponse(payment, "Payment status retrieved successfully from Razorpay: " + rzpPaymentStatus, razorpayOrderId);
-            } else {
-                // No successful payment, update status based on the latest attempt or order status
-                Order order = razorpayClient.orders.fetch(razorpayOrderId); // Re-fetch order for latest overall status
-                String orderStatus = order.get("status");
+            // Fetch all payments for the order. There could be multiple attempts.
+            List<com.razorpay.Payment> paymentsForOrder = gatewayCallTimer.time(GATEWAY_NAME, "orders.fetch_payments", () -> razorpayClient.orders.fetchPayments(razorpayOrderId));
+            paymentAuditLog.record(transactionId, GATEWAY_NAME, "orders.fetch_payments.response", toJsonArray(paymentsForOrder));
+            com.razorpay.Payment successfulPayment = successfulPayment(paymentsForOrder);
+
+            if (successfulPayment == null) {
+                // The order's status follows from its payments, so there is no need to fetch the order as well:
+                // no payments means "created", only unsuccessful attempts means "attempted".
+                String orderStatus = paymentsForOrder.isEmpty() ? "created" : "attempted";
                 logger.info("No successful (captured/authorized) payment found for order {}. Order status: {}", razorpayOrderId, orderStatus);
-                payment.setStatus(mapRazorpayOrderStatusToInternalStatus(orderStatus, null));
-                paymentRepository.save(payment);
-                return createPaymentResponse(payment, "No successful payment captured for order. Order status: " + orderStatus, razorpayOrderId);
+                payment = updateStatusIfChanged(payment, mapRazorpayOrderStatusToInternalStatus(orderStatus, null));
+                return createPaymentResponse(payment, "Razorpay order status: " + orderStatus + ". No successful payment captured yet.", razorpayOrderId);
             }
 
+            String rzpPaymentId = successfulPayment.get("id");
+            String rzpPaymentStatus = successfulPayment.get("status");
+            logger.info("Found Razorpay payment {} with status {} for order {}", rzpPaymentId, rzpPaymentStatus, razorpayOrderId);
+            // Store the payment ID so later status checks and refunds go straight to it
+            payment = paymentRecordService.finalizePayment(transactionId, rzpPaymentId, razorpayOrderId,
+                    mapRazorpayOrderStatusToInternalStatus(null, rzpPaymentStatus));
+            return createPaymentResponse(payment, "Payment status retrieved successfully from Razorpay: " + rzpPaymentStatus, razorpayOrderId);
+
         } catch (RazorpayException e) {
-            logger.error("Razorpay API error fetching status for order {}: {}", razorpayOrderId, e.getMessage(), e);
+            String reference = razorpayPaymentId != null ? razorpayPaymentId : razorpayOrderId;
+            logger.error("Razorpay API error fetching status for {}: {}", reference, e.getMessage(), e);
             // Don't change local status based on a fetch failure, just report error
-            throw new PaymentProcessingException("Razorpay status fetch failed for order " + razorpayOrderId + ": " + e.getMessage(), e);
+            throw new PaymentProcessingException("Razorpay status fetch failed for " + reference + ": " + e.getMessage(), e);
         }
     }
 
 
     @Override
-    @Transactional
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
     public PaymentResponse refundPayment(String transactionId, BigDecimal amountToRefund) {
         // This `transactionId` is OUR internal system's transaction ID.
-         if (razorpayClient == null) {
-            logger.error("Razorpay client not initialized. Check API key configuration.");
-            throw new PaymentProcessingException("Razorpay service is not available. Please check configuration.");
-        }
-        Payment payment = paymentRepository.findByTransactionId(transactionId)
+         Payment payment = paymentRecordService.findByTransactionId(transactionId)
                 .orElseThrow(() -> new PaymentProcessingException("Payment not found for refund with internal transaction ID: " + transactionId));
+        RazorpayClient razorpayClient = merchantCredentials.razorpayClient(payment.getMerchantId());
 
         // We need the Razorpay Payment ID (not Order ID) to process a refund.
-        // The getPaymentStatus method should have updated gatewayTransactionId to be the payment_id if successful.
-        String razorpayPaymentId = payment.getGatewayTransactionId();
-
-        if (razorpayPaymentId == null || razorpayPaymentId.startsWith("order_")) {
-            // If it's still an order_id, or null, we can't refund.
-            // Attempt to fetch payment status first to get the payment_id.
-            logger.warn("Attempting to fetch payment status to get Razorpay Payment ID before refund for internal transaction ID: {}", transactionId);
-            getPaymentStatus(transactionId); // This will attempt to update payment.gatewayTransactionId
-            payment = paymentRepository.findByTransactionId(transactionId).get(); // Re-fetch
-            razorpayPaymentId = payment.getGatewayTransactionId();
-            if (razorpayPaymentId == null || razorpayPaymentId.startsWith("order_")) {
-                 throw new PaymentProcessingException("Cannot refund: Razorpay Payment ID not found for " + transactionId + ". Please check payment status first.");
+        String razorpayOrderId = orderIdOf(payment);
+        String razorpayPaymentId = paymentIdOf(payment);
+        PaymentStatus currentStatus = payment.getStatus();
+
+        if (razorpayPaymentId == null) {
+            // No webhook or status check has recorded the payment ID yet: look it up through the order.
+            if (razorpayOrderId == null) {
+                throw new PaymentProcessingException("Cannot refund: neither Razorpay Payment ID nor Order ID is known for " + transactionId + ".");
+            }
+            logger.info("Looking up Razorpay Payment ID for order {} before refunding internal transaction ID: {}", razorpayOrderId, transactionId);
+            com.razorpay.Payment successfulPayment;
+            try {
+                successfulPayment = successfulPayment(gatewayCallTimer.time(GATEWAY_NAME, "orders.fetch_payments", () -> razorpayClient.orders.fetchPayments(razorpayOrderId)));
+            } catch (RazorpayException e) {
+                logger.error("Razorpay API error looking up payment for order {}: {}", razorpayOrderId, e.getMessage(), e);
+                throw new PaymentProcessingException("Razorpay refund failed for order " + razorpayOrderId + ": " + e.getMessage(), e);
+            }
+            if (successfulPayment == null) {
+                throw new PaymentProcessingException("Cannot refund: Razorpay Payment ID not found for " + transactionId + ". Please check payment status first.");
             }
+            razorpayPaymentId = successfulPayment.get("id");
+            currentStatus = mapRazorpayOrderStatusToInternalStatus(null, successfulPayment.get("status"));
         }
 
-        if (!"SUCCESS".equalsIgnoreCase(payment.getStatus()) && !"CAPTURED".equalsIgnoreCase(payment.getStatus())) { // CAPTURED is Razorpay's term for successful
-             throw new PaymentProcessingException("Cannot refund: Payment " + transactionId + " (Razorpay ID: "+razorpayPaymentId+") is not in a refundable state (current status: " + payment.getStatus() + ")");
+        if (!currentStatus.isRefundable()) { // Razorpay's "captured", possibly refunded in part already
+             throw new PaymentProcessingException("Cannot refund: Payment " + transactionId + " (Razorpay ID: "+razorpayPaymentId+") is not in a refundable state (current status: " + currentStatus + ")");
+        }
+
+        Money refundAmount;
+        try {
+            refundAmount = amountToRefund != null ? Money.of(amountToRefund, payment.getCurrency()) : null;
+        } catch (IllegalArgumentException e) {
+            throw new PaymentProcessingException("Cannot refund " + transactionId + ": " + e.getMessage(), e);
         }
 
         try {
             JSONObject refundRequest = new JSONObject();
-            refundRequest.put("amount", amountToRefund.multiply(new BigDecimal(100)).intValue()); // Amount in paise
+            if (refundAmount != null) {
+                refundRequest.put("amount", refundAmount.minorUnits()); // Without an amount Razorpay refunds the whole payment
+            }
             // Optional: notes, speed, receipt for refund
             // refundRequest.put("speed", "normal"); // "normal" or "optimum"
 
-            Refund refund = razorpayClient.payments.refund(razorpayPaymentId, refundRequest);
+            String paymentIdToRefund = razorpayPaymentId;
+            paymentAuditLog.record(transactionId, GATEWAY_NAME, "payments.refund.request", refundRequest.toString());
+            Refund refund = gatewayCallTimer.time(GATEWAY_NAME, "payments.refund", () -> razorpayClient.payments.refund(paymentIdToRefund, refundRequest));
+            paymentAuditLog.record(transactionId, GATEWAY_NAME, "payments.refund.response", refund.toJson().toString());
             String refundId = refund.get("id");
             String refundStatus = refund.get("status"); // e.g., pending, processed
             logger.info("Razorpay refund initiated for payment {}. Refund ID: {}, Status: {}", razorpayPaymentId, refundId, refundStatus);
 
             // Update our payment status based on refund.
-            // If a refund is "processed" or "pending" (accepted by Razorpay), we mark as REFUNDED.
-            // A more granular system might track partial refunds or use a status like "PARTIALLY_REFUNDED".
+            // A refund that is "processed" or "pending" (accepted by Razorpay) refunds the payment in full unless it
+            // was for less than the payment amount. REFUNDED is final, so a partial refund must not be recorded as one.
+            PaymentStatus newStatus;
             if ("processed".equalsIgnoreCase(refundStatus) || "pending".equalsIgnoreCase(refundStatus)) {
-                payment.setStatus("REFUNDED"); // Or "PARTIALLY_REFUNDED" if you track amounts
+                boolean partial = refundAmount != null && refundAmount.minorUnits() < payment.toMoney().minorUnits();
+                newStatus = partial ? PaymentStatus.PARTIALLY_REFUNDED : PaymentStatus.REFUNDED;
             } else {
                 // if refund fails immediately, this path might be taken.
                 // However, usually it goes to pending then processed or failed via webhooks.
-                payment.setStatus("REFUND_FAILED");
+                newStatus = PaymentStatus.REFUND_FAILED;
             }
-            paymentRepository.save(payment);
+            // Also records the payment ID if it was only just looked up
+            payment = paymentRecordService.finalizePayment(transactionId, razorpayPaymentId, razorpayOrderId, newStatus);
 
             PaymentResponse response = createPaymentResponse(payment, "Refund request processed by Razorpay. Current refund status: " + refundStatus, null); // No order_id needed here typically
             response.setGatewaySpecificResponse(refund.toJson().toMap());
@@ -262,17 +291,186 @@ public class RazorpayService implements PaymentGateway {
 
         } catch (RazorpayException e) {
             logger.error("Razorpay API error during refund for payment {}: {}", razorpayPaymentId, e.getMessage(), e);
-            payment.setStatus("REFUND_FAILED"); // Keep our internal status reflective
-            paymentRepository.save(payment);
+            paymentRecordService.updateStatus(transactionId, PaymentStatus.REFUND_FAILED); // Keep our internal status reflective
             throw new PaymentProcessingException("Razorpay refund failed for payment " + razorpayPaymentId + ": " + e.getMessage(), e);
         }
     }
 
-    private PaymentResponse createPaymentResponse(Payment payment, String message, String razorpayOrderId) {
+    @Override
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
+    public PaymentResponse recoverPayment(String transactionId) {
+        Payment payment = paymentRecordService.findByTransactionId(transactionId)
+                .orElseThrow(() -> new PaymentProcessingException("Payment not found for recovery with internal transaction ID: " + transactionId));
+        if (payment.getGatewayTransactionId() != null || payment.getGatewayOrderId() != null) {
+            return getPaymentStatus(transactionId); // Already finalized, just refresh
+        }
+        RazorpayClient razorpayClient = merchantCredentials.razorpayClient(payment.getMerchantId());
+
+        try {
+            // processPayment uses our transaction ID as the order receipt, so an order that was created
+            // but never recorded locally can be looked up by it.
+            JSONObject query = new JSONObject();
+            query.put("receipt", transactionId);
+            List<Order> orders = gatewayCallTimer.time(GATEWAY_NAME, "orders.fetch_all", () -> razorpayClient.orders.fetchAll(query));
+
+            if (orders.isEmpty()) {
+                logger.warn("No Razorpay order found for stale transaction {}. Marking as FAILED.", transactionId);
+                payment = paymentRecordService.updateStatus(transactionId, PaymentStatus.FAILED);
+                return createPaymentResponse(payment, "Payment never reached Razorpay and was marked as failed.", null);
+            }
+
+            Order order = orders.get(0);
+            String razorpayOrderId = order.get("id");
+            String orderStatus = order.get("status");
+            logger.info("Recovered Razorpay order {} with status {} for transaction {}", razorpayOrderId, orderStatus, transactionId);
+            payment = paymentRecordService.finalizePayment(transactionId, null, razorpayOrderId,
+                    mapRazorpayOrderStatusToInternalStatus(orderStatus, null));
+            return createPaymentResponse(payment, "Payment recovered from Razorpay. Order status: " + orderStatus, razorpayOrderId);
+
+        } catch (RazorpayException e) {
+            logger.error("Razorpay API error recovering transaction {}: {}", transactionId, e.getMessage(), e);
+            throw new PaymentProcessingException("Razorpay recovery failed for " + transactionId + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<PaymentStatusUpdate> reconcile(List<Payment> payments, Runnable beforeRemoteCall) {
+        // Each merchant's payments can only be listed with its own keys
+        Map<String, List<Payment>> byMerchant = payments.stream().collect(Collectors.groupingBy(
+                payment -> MerchantCredentialRegistry.merchantKey(payment.getMerchantId()), LinkedHashMap::new, Collectors.toList()));
+        List<PaymentStatusUpdate> updates = new ArrayList<>();
+        byMerchant.forEach((merchant, merchantPayments) -> {
+            if (merchantCredentials.isRazorpayConfigured(merchant)) {
+                updates.addAll(reconcileMerchant(merchantPayments, merchantCredentials.razorpayClient(merchant), beforeRemoteCall));
+            } else {
+                logger.warn("Skipping reconciliation of {} payment(s): merchant {} has no Razorpay keys", merchantPayments.size(), merchant);
+            }
+        });
+        return updates;
+    }
+
+    private List<PaymentStatusUpdate> reconcileMerchant(List<Payment> payments, RazorpayClient razorpayClient, Runnable beforeRemoteCall) {
+        Map<String, Payment> byPaymentId = new HashMap<>();
+        Map<String, Payment> byOrderId = new HashMap<>();
+        LocalDateTime earliest = null;
+        for (Payment payment : payments) {
+            String razorpayPaymentId = paymentIdOf(payment);
+            String razorpayOrderId = orderIdOf(payment);
+            if (razorpayPaymentId != null) byPaymentId.put(razorpayPaymentId, payment);
+            if (razorpayOrderId != null) byOrderId.put(razorpayOrderId, payment);
+            earliest = earliest == null || payment.getCreatedAt().isBefore(earliest) ? payment.getCreatedAt() : earliest;
+        }
+        // The payment is created when the customer pays, which can be long after the order, so the window runs to now
+        long from = toEpochSecond(earliest) - RECONCILE_WINDOW_SLACK_SECONDS;
+        long to = Instant.now().getEpochSecond();
+
+        // One update per transaction: a payment matched by ID wins, then a captured or authorized attempt on the order
+        Map<String, PaymentStatusUpdate> updates = new HashMap<>();
+        Set<String> settled = new HashSet<>();
+        boolean listedAll = false;
+        long oldestListed = Long.MAX_VALUE; // Listings come newest first
+        try {
+            for (int page = 0; page < RECONCILE_MAX_LIST_PAGES && settled.size() < payments.size(); page++) {
+                JSONObject query = new JSONObject();
+                query.put("from", from);
+                query.put("to", to);
+                query.put("count", RECONCILE_LIST_PAGE_SIZE);
+                query.put("skip", page * RECONCILE_LIST_PAGE_SIZE);
+                beforeRemoteCall.run();
+                List<com.razorpay.Payment> rzpPayments = gatewayCallTimer.time(GATEWAY_NAME, "payments.fetch_all", () -> razorpayClient.payments.fetchAll(query));
+
+                for (com.razorpay.Payment rzpPayment : rzpPayments) {
+                    JSONObject entity = rzpPayment.toJson();
+                    String rzpPaymentId = entity.optString("id", null);
+                    String rzpOrderId = entity.optString("order_id", null);
+                    String rzpStatus = entity.optString("status", null);
+                    oldestListed = Math.min(oldestListed, entity.optLong("created_at", Long.MAX_VALUE));
+                    Payment payment = byPaymentId.get(rzpPaymentId);
+                    boolean matchedById = payment != null;
+                    if (payment == null && rzpOrderId != null) {
+                        payment = byOrderId.get(rzpOrderId);
+                        // A failed attempt doesn't settle the order; the customer may still pay
+                        if (!"captured".equalsIgnoreCase(rzpStatus) && !"authorized".equalsIgnoreCase(rzpStatus)) {
+                            payment = null;
+                        }
+                    }
+                    if (payment == null || settled.contains(payment.getTransactionId())) {
+                        continue;
+                    }
+                    if (matchedById || "captured".equalsIgnoreCase(rzpStatus)) {
+                        settled.add(payment.getTransactionId());
+                    }
+                    putUpdate(updates, payment, rzpPaymentId, rzpStatus);
+                }
+                if (rzpPayments.size() < RECONCILE_LIST_PAGE_SIZE) {
+                    listedAll = true;
+                    break;
+                }
+            }
+
+            // The page cap was hit before the listing reached back far enough: a busy merchant's newest payments filled
+            // it. Rows whose payment may be older than anything listed are looked up one by one, otherwise they would
+            // never be matched and the same window would be listed again on every run.
+            if (!listedAll) {
+                for (Payment payment : payments) {
+                    if (settled.contains(payment.getTransactionId())
+                            || toEpochSecond(payment.getCreatedAt()) - RECONCILE_WINDOW_SLACK_SECONDS >= oldestListed) {
+                        continue;
+                    }
+                    com.razorpay.Payment rzpPayment = fetchForReconciliation(razorpayClient, payment, beforeRemoteCall);
+                    if (rzpPayment != null) {
+                        settled.add(payment.getTransactionId());
+                        putUpdate(updates, payment, rzpPayment.get("id"), rzpPayment.get("status"));
+                    }
+                }
+            }
+        } catch (RazorpayException e) {
+            logger.error("Razorpay API error reconciling {} payment(s): {}", payments.size(), e.getMessage(), e);
+            throw new PaymentProcessingException("Razorpay reconciliation failed: " + e.getMessage(), e);
+        }
+        logger.debug("Razorpay reconciliation settled {} of {} payment(s), {} changed", settled.size(), payments.size(), updates.size());
+        return new ArrayList<>(updates.values());
+    }
+
+    // The payment itself if its ID is known, otherwise the best attempt on its order; null if there is none yet
+    private com.razorpay.Payment fetchForReconciliation(RazorpayClient razorpayClient, Payment payment, Runnable beforeRemoteCall) throws RazorpayException {
+        String razorpayPaymentId = paymentIdOf(payment);
+        if (razorpayPaymentId != null) {
+            beforeRemoteCall.run();
+            return gatewayCallTimer.time(GATEWAY_NAME, "payments.fetch", () -> razorpayClient.payments.fetch(razorpayPaymentId));
+        }
+        String razorpayOrderId = orderIdOf(payment);
+        if (razorpayOrderId == null) {
+            return null; // Never reached Razorpay as far as we know; StalePaymentRecoveryJob handles it
+        }
+        beforeRemoteCall.run();
+        return successfulPayment(gatewayCallTimer.time(GATEWAY_NAME, "orders.fetch_payments", () -> razorpayClient.orders.fetchPayments(razorpayOrderId)));
+    }
+
+    private static void putUpdate(Map<String, PaymentStatusUpdate> updates, Payment payment, String rzpPaymentId, String rzpStatus) {
+        PaymentStatus status = mapRazorpayOrderStatusToInternalStatus(null, rzpStatus);
+        if (status != payment.getStatus() || !Objects.equals(rzpPaymentId, payment.getGatewayTransactionId())) {
+            updates.put(payment.getTransactionId(), new PaymentStatusUpdate(null, GATEWAY_NAME,
+                    payment.getTransactionId(), rzpPaymentId, orderIdOf(payment), status));
+        } else {
+            updates.remove(payment.getTransactionId());
+        }
+    }
+
+    private static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toEpochSecond(); // Timestamps are stored in server local time
+    }
+
+    PaymentResponse createPaymentResponse(Payment payment, String message, String razorpayOrderId) {
         PaymentResponse response = new PaymentResponse();
         response.setTransactionId(payment.getTransactionId()); // Our internal ID
-        response.setGatewayTransactionId(payment.getGatewayTransactionId()); // Razorpay Payment ID or Order ID
-        response.setStatus(payment.getStatus());
+        String razorpayPaymentId = paymentIdOf(payment);
+        if (razorpayOrderId == null) {
+            razorpayOrderId = orderIdOf(payment);
+        }
+        response.setGatewayTransactionId(razorpayPaymentId != null ? razorpayPaymentId : razorpayOrderId); // Razorpay Payment ID, or Order ID until paid
+        response.setStatus(payment.getStatus().name());
         response.setMessage(message);
         response.setGatewayName(getGatewayName());
         response.setAmount(payment.getAmount());
@@ -283,9 +481,8 @@ public class RazorpayService implements PaymentGateway {
         if (razorpayOrderId != null) {
             specificDetails.put("razorpay_order_id", razorpayOrderId);
         }
-        // If gatewayTransactionId is the payment_id, include it clearly
-        if (payment.getGatewayTransactionId() != null && payment.getGatewayTransactionId().startsWith("pay_")) {
-            specificDetails.put("razorpay_payment_id", payment.getGatewayTransactionId());
+        if (razorpayPaymentId != null) {
+            specificDetails.put("razorpay_payment_id", razorpayPaymentId);
         }
         if (!specificDetails.isEmpty()) {
             response.setGatewaySpecificResponse(specificDetails.toMap());
@@ -293,32 +490,100 @@ public class RazorpayService implements PaymentGateway {
         return response;
     }
 
+    private static String toJsonArray(List<com.razorpay.Payment> rzpPayments) {
+        JSONArray array = new JSONArray();
+        rzpPayments.forEach(rzpPayment -> array.put(rzpPayment.toJson()));
+        return array.toString();
+    }
+
+    /**
+     * The Razorpay SDK sends everything through one static OkHttp client in {@code com.razorpay.ApiUtils}, which it only
+     * builds if none is set yet, and offers no way to pass one in. Setting it before the first {@link RazorpayClient}
+     * is created makes the SDK use our pooled client and timeouts. The SDK version is pinned in the pom for this; if its
+     * internals have changed anyway, startup fails rather than silently running without our timeouts.
+     */
+    private static void useHttpClient(OkHttpClient httpClient) {
+        try {
+            Field client = Class.forName("com.razorpay.ApiUtils").getDeclaredField("client");
+            client.setAccessible(true);
+            client.set(null, httpClient);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalStateException("Could not install the pooled HTTP client into the Razorpay SDK "
+                    + "(com.razorpay.ApiUtils.client); check the razorpay-java version against RazorpayService", e);
+        }
+    }
+
+    private Payment updateStatusIfChanged(Payment payment, PaymentStatus status) {
+        return status == payment.getStatus() ? payment : paymentRecordService.updateStatus(payment.getTransactionId(), status);
+    }
+
+    // Prefers a captured payment, then an authorized one; null if no attempt on the order succeeded
+    private static com.razorpay.Payment successfulPayment(List<com.razorpay.Payment> paymentsForOrder) {
+        com.razorpay.Payment successfulPayment = null;
+        for (com.razorpay.Payment rzpPayment : paymentsForOrder) {
+            String paymentStatus = rzpPayment.get("status");
+            if ("captured".equalsIgnoreCase(paymentStatus)) {
+                return rzpPayment;
+            }
+            if (successfulPayment == null && "authorized".equalsIgnoreCase(paymentStatus)) {
+                successfulPayment = rzpPayment;
+            }
+        }
+        return successfulPayment;
+    }
+
+    // Rows written before the order ID had its own column kept the order ID in gatewayTransactionId
+    private static String orderIdOf(Payment payment) {
+        if (payment.getGatewayOrderId() != null) {
+            return payment.getGatewayOrderId();
+        }
+        String gatewayTransactionId = payment.getGatewayTransactionId();
+        return gatewayTransactionId != null && gatewayTransactionId.startsWith("order_") ? gatewayTransactionId : null;
+    }
+
+    private static String paymentIdOf(Payment payment) {
+        String gatewayTransactionId = payment.getGatewayTransactionId();
+        return gatewayTransactionId != null && !gatewayTransactionId.startsWith("order_") ? gatewayTransactionId : null;
+    }
+
     // Maps Razorpay's order status or payment status to our internal system status
-    private String mapRazorpayOrderStatusToInternalStatus(String orderStatus, String paymentStatus) {
+    static PaymentStatus mapRazorpayOrderStatusToInternalStatus(String orderStatus, String paymentStatus) {
         if (paymentStatus != null) { // Payment status takes precedence
             switch (paymentStatus.toLowerCase()) {
-                case "created": return "PENDING"; // Payment link created, user hasn't acted
-                case "authorized": return "AUTHORIZED";
-                case "captured": return "SUCCESS";
-                case "failed": return "FAILED";
-                case "refunded": return "REFUNDED"; // This is for full refund on payment object
-                default: return paymentStatus.toUpperCase();
+                case "created": return PaymentStatus.PENDING; // Payment link created, user hasn't acted
+                case "authorized": return PaymentStatus.AUTHORIZED;
+                case "captured": return PaymentStatus.SUCCESS;
+                case "failed": return PaymentStatus.FAILED;
+                case "refunded": return PaymentStatus.REFUNDED; // This is for full refund on payment object
+                default:
+                    logger.warn("Unknown Razorpay payment status: {}", paymentStatus);
+                    return PaymentStatus.UNKNOWN;
             }
         }
         if (orderStatus != null) { // Fallback to order status
             switch (orderStatus.toLowerCase()) {
-                case "created": return "PENDING_USER_ACTION"; // Order created, waiting for user
-                case "attempted": return "PENDING"; // User attempted, might succeed or fail
-                case "paid": return "SUCCESS"; // Order is marked paid (all payments captured)
-                default: return orderStatus.toUpperCase();
+                case "created": return PaymentStatus.PENDING_USER_ACTION; // Order created, waiting for user
+                case "attempted": return PaymentStatus.PENDING; // User attempted, might succeed or fail
+                case "paid": return PaymentStatus.SUCCESS; // Order is marked paid (all payments captured)
+                default:
+                    logger.warn("Unknown Razorpay order status: {}", orderStatus);
+                    return PaymentStatus.UNKNOWN;
             }
         }
-        return "UNKNOWN";
+        return PaymentStatus.UNKNOWN;
     }
 
 
+    @Override
+    public boolean supportsCurrency(String currency) {
+        if (!merchantCredentials.isRazorpayConfigured()) {
+            return false; // Not configured, so nothing should be routed here
+        }
+        return supportedCurrencies.isEmpty() || (currency != null && supportedCurrencies.contains(currency.toUpperCase()));
+    }
+
     @Override
     public String getGatewayName() {
-        return "razorpay";
+        return GATEWAY_NAME;
     }
 }
@@ -0,0 +1,19 @@
+package com.example.multipaymentgateway.service;
+
+/**
+ * Failure returned by {@link SimulatorService}, carrying the HTTP status a real gateway would have answered with
+ * (e.g. 402 declined, 429 throttled, 503 unavailable).
+ */
+public class SimulatedGatewayException extends RuntimeException {
+
+    private final int statusCode;
+
+    public SimulatedGatewayException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.dto.PaymentRequest;
+import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.exception.PaymentProcessingException;
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.resilience4j.bulkhead.annotation.Bulkhead;
+import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline stand-in for a real gateway, for staging and capacity tests. Enabled with the {@code simulator} profile
+ * (see {@code application-simulator.properties}).
+ * <p>
+ * Every call sleeps for a log-normally distributed latency ({@code latency-median}, {@code latency-p99}) and may be
+ * throttled (429) or fail (503) at the configured rates, so the circuit breaker, bulkhead and error handling paths
+ * are exercised just as with a real gateway. Payments then settle asynchronously following the chosen
+ * {@code lifecycle}, with status changes fed through {@link PaymentStatusUpdateBatcher} like webhooks:
+ * <ul>
+ *     <li>{@code stripe}: PENDING (processing), then SUCCESS or FAILED</li>
+ *     <li>{@code razorpay}: PENDING_USER_ACTION (order created), then AUTHORIZED, then SUCCESS (captured) or FAILED</li>
+ * </ul>
+ */
+@Service("simulatorService")
+@Profile("simulator")
+public class SimulatorService implements PaymentGateway {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulatorService.class);
+    static final String GATEWAY_NAME = "simulator";
+    private static final double Z_99 = 2.326; // 99th percentile of the standard normal distribution
+
+    // Gateway-side view of a payment
+    private record SimulatedPayment(String gatewayTransactionId, PaymentStatus status) {
+    }
+
+    private final PaymentRecordService paymentRecordService;
+    private final TransactionIdGenerator transactionIdGenerator;
+    private final PaymentStatusUpdateBatcher paymentStatusUpdateBatcher;
+    private final Cache<String, SimulatedPayment> simulatedPayments;
+    private final ScheduledExecutorService settlementScheduler;
+
+    @Value("${payments.simulator.lifecycle:stripe}")
+    private String lifecycle;
+
+    @Value("${payments.simulator.latency-median:150ms}")
+    private Duration latencyMedian;
+
+    @Value("${payments.simulator.latency-p99:1200ms}")
+    private Duration latencyP99;
+
+    @Value("${payments.simulator.error-rate:0.01}")
+    private double errorRate;
+
+    @Value("${payments.simulator.throttle-rate:0.01}")
+    private double throttleRate;
+
+    @Value("${payments.simulator.decline-rate:0.05}")
+    private double declineRate;
+
+    @Value("${payments.simulator.settle-after:2s}")
+    private Duration settleAfter;
+
+    public SimulatorService(PaymentRecordService paymentRecordService,
+                            TransactionIdGenerator transactionIdGenerator,
+                            PaymentStatusUpdateBatcher paymentStatusUpdateBatcher,
+                            @Value("${payments.simulator.max-tracked-payments:1000000}") long maxTrackedPayments,
+                            @Value("${payments.simulator.settlement-threads:2}") int settlementThreads) {
+        this.paymentRecordService = paymentRecordService;
+        this.transactionIdGenerator = transactionIdGenerator;
+        this.paymentStatusUpdateBatcher = paymentStatusUpdateBatcher;
+        this.simulatedPayments = Caffeine.newBuilder()
+                .maximumSize(maxTrackedPayments)
+                .expireAfterWrite(Duration.ofHours(6))
+                .build();
+        this.settlementScheduler = Executors.newScheduledThreadPool(settlementThreads, runnable -> {
+            Thread thread = new Thread(runnable, "simulator-settlement");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        settlementScheduler.shutdownNow();
+    }
+
+    @Override
+    public Payment preparePayment(PaymentRequest paymentRequest) {
+        Payment payment = new Payment();
+        payment.setTransactionId(transactionIdGenerator.nextId());
+        payment.setAmount(paymentRequest.getAmount());
+        payment.setCurrency(paymentRequest.getCurrency().toUpperCase());
+        payment.setPaymentGateway(getGatewayName());
+        payment.setOrderId(paymentRequest.getOrderId());
+        payment.setMerchantId(paymentRequest.getMerchantId());
+        return payment;
+    }
+
+    @Override
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
+    public PaymentResponse processPayment(PaymentRequest paymentRequest) {
+        // Stage 1: commit the PENDING row before the (simulated) remote call, as the real gateways do.
+        Payment payment = paymentRecordService.createPending(preparePayment(paymentRequest));
+        return processPendingPayment(payment.getTransactionId(), paymentRequest);
+    }
+
+    @Override
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
+    public PaymentResponse processPendingPayment(String internalTransactionId, PaymentRequest paymentRequest) {
+        boolean razorpayLifecycle = isRazorpayLifecycle();
+        String gatewayTransactionId = (razorpayLifecycle ? "order_sim_" : "pi_sim_") + UUID.randomUUID().toString().replace("-", "");
+        try {
+            // Stage 2: the remote call
+            simulateRemoteCall("create");
+        } catch (SimulatedGatewayException e) {
+            paymentRecordService.updateStatus(internalTransactionId, PaymentStatus.FAILED);
+            throw new PaymentProcessingException("Simulated payment failed: " + e.getMessage(), internalTransactionId, GATEWAY_NAME, e);
+        }
+
+        PaymentStatus initialStatus = razorpayLifecycle ? PaymentStatus.PENDING_USER_ACTION : PaymentStatus.PENDING;
+        simulatedPayments.put(internalTransactionId, new SimulatedPayment(gatewayTransactionId, initialStatus));
+        scheduleSettlement(internalTransactionId, gatewayTransactionId);
+
+        // Stage 3: finalize
+        Payment payment = paymentRecordService.finalizePayment(internalTransactionId, gatewayTransactionId, initialStatus);
+        return createPaymentResponse(payment, "Simulated payment accepted; it will settle in about " + settleAfter.toMillis() + " ms.");
+    }
+
+    @Override
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
+    public PaymentResponse getPaymentStatus(String transactionId) {
+        Payment payment = paymentRecordService.findByTransactionId(transactionId)
+                .orElseThrow(() -> new PaymentProcessingException("Payment not found with internal transaction ID: " + transactionId));
+        simulateOrFail("status", transactionId);
+
+        SimulatedPayment simulated = simulatedPayments.getIfPresent(transactionId);
+        if (simulated == null) {
+            return createPaymentResponse(payment, "Simulator has no record of this payment; returning stored status.");
+        }
+        if (simulated.status() != payment.getStatus()) {
+            payment = paymentRecordService.updateStatus(transactionId, simulated.status());
+        }
+        return createPaymentResponse(payment, "Simulated payment status: " + simulated.status());
+    }
+
+    @Override
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
+    public PaymentResponse refundPayment(String transactionId, BigDecimal amount) {
+        Payment payment = paymentRecordService.findByTransactionId(transactionId)
+                .orElseThrow(() -> new PaymentProcessingException("Payment not found for refund with internal transaction ID: " + transactionId));
+        if (payment.getStatus() != PaymentStatus.SUCCESS) {
+            throw new PaymentProcessingException("Cannot refund: Payment " + transactionId + " is not in a refundable state (current status: " + payment.getStatus() + ")");
+        }
+        simulateOrFail("refund", transactionId);
+
+        boolean partial = amount != null && amount.compareTo(BigDecimal.ZERO) > 0 && amount.compareTo(payment.getAmount()) < 0;
+        PaymentStatus status = partial ? PaymentStatus.PARTIALLY_REFUNDED : PaymentStatus.REFUNDED;
+        simulatedPayments.put(transactionId, new SimulatedPayment(payment.getGatewayTransactionId(), status));
+        payment = paymentRecordService.updateStatus(transactionId, status);
+        return createPaymentResponse(payment, "Simulated refund processed.");
+    }
+
+    @Override
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
+    public PaymentResponse recoverPayment(String transactionId) {
+        simulateOrFail("recover", transactionId);
+        SimulatedPayment simulated = simulatedPayments.getIfPresent(transactionId);
+        if (simulated == null) {
+            // The (simulated) gateway never saw it
+            Payment payment = paymentRecordService.updateStatus(transactionId, PaymentStatus.FAILED);
+            return createPaymentResponse(payment, "No simulated payment found; marked as FAILED.");
+        }
+        Payment payment = paymentRecordService.finalizePayment(transactionId, simulated.gatewayTransactionId(), simulated.status());
+        return createPaymentResponse(payment, "Payment recovered from simulator.");
+    }
+
+    @Override
+    public String getGatewayName() {
+        return GATEWAY_NAME;
+    }
+
+    private void scheduleSettlement(String transactionId, String gatewayTransactionId) {
+        boolean declined = ThreadLocalRandom.current().nextDouble() < declineRate;
+        long delayMillis = jitter(settleAfter.toMillis());
+        if (isRazorpayLifecycle() && !declined) {
+            // Order created -> payment authorized -> captured
+            settlementScheduler.schedule(() -> transition(transactionId, gatewayTransactionId, PaymentStatus.AUTHORIZED), delayMillis / 2, TimeUnit.MILLISECONDS);
+        }
+        settlementScheduler.schedule(() -> transition(transactionId, gatewayTransactionId, declined ? PaymentStatus.FAILED : PaymentStatus.SUCCESS),
+                delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void transition(String transactionId, String gatewayTransactionId, PaymentStatus status) {
+        SimulatedPayment current = simulatedPayments.getIfPresent(transactionId);
+        if (current != null && (current.status() == PaymentStatus.REFUNDED || current.status() == PaymentStatus.PARTIALLY_REFUNDED)) {
+            return;
+        }
+        simulatedPayments.put(transactionId, new SimulatedPayment(gatewayTransactionId, status));
+        String eventId = "evt_sim_" + gatewayTransactionId + "_" + status.name().toLowerCase();
+        if (!paymentStatusUpdateBatcher.submit(new PaymentStatusUpdate(eventId, GATEWAY_NAME, transactionId, gatewayTransactionId, null, status))) {
+            logger.debug("Simulated {} of {} was already recorded", status, transactionId);
+        }
+    }
+
+    private void simulateOrFail(String operation, String transactionId) {
+        try {
+            simulateRemoteCall(operation);
+        } catch (SimulatedGatewayException e) {
+            throw new PaymentProcessingException("Simulated " + operation + " failed: " + e.getMessage(), transactionId, GATEWAY_NAME, e);
+        }
+    }
+
+    // Sleeps for a sampled latency, then fails with the configured throttle and error rates.
+    private void simulateRemoteCall(String operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            Thread.sleep(sampleLatencyMillis(random));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SimulatedGatewayException("Interrupted during simulated " + operation, 503);
+        }
+        double roll = random.nextDouble();
+        if (roll < throttleRate) {
+            throw new SimulatedGatewayException("429 Too Many Requests (simulated " + operation + ")", 429);
+        }
+        if (roll < throttleRate + errorRate) {
+            throw new SimulatedGatewayException("503 Service Unavailable (simulated " + operation + ")", 503);
+        }
+    }
+
+    // Log-normal with the configured median and 99th percentile
+    private long sampleLatencyMillis(ThreadLocalRandom random) {
+        double median = Math.max(1, latencyMedian.toMillis());
+        double p99 = Math.max(median, latencyP99.toMillis());
+        double mu = Math.log(median);
+        double sigma = (Math.log(p99) - mu) / Z_99;
+        return Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+    }
+
+    private static long jitter(long millis) {
+        return millis / 2 + ThreadLocalRandom.current().nextLong(Math.max(1, millis));
+    }
+
+    private boolean isRazorpayLifecycle() {
+        return "razorpay".equalsIgnoreCase(lifecycle);
+    }
+
+    private PaymentResponse createPaymentResponse(Payment payment, String message) {
+        PaymentResponse response = new PaymentResponse();
+        response.setTransactionId(payment.getTransactionId());
+        response.setGatewayTransactionId(payment.getGatewayTransactionId());
+        response.setStatus(payment.getStatus().name());
+        response.setMessage(message);
+        response.setGatewayName(getGatewayName());
+        response.setAmount(payment.getAmount());
+        response.setCurrency(payment.getCurrency());
+        response.setTimestamp(payment.getUpdatedAt());
+        response.setGatewaySpecificResponse(Map.of("simulator_lifecycle", lifecycle));
+        return response;
+    }
+}
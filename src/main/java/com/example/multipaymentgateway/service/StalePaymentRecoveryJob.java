@@ -0,0 +1,70 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.Payment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Periodically resolves payments left PENDING between the "commit" and "finalize" stages of a
+ * gateway call (see {@link PaymentRecordService}), by asking the owning gateway what happened.
+ * <p>
+ * Each run walks every stale payment in keyset pages of {@code payments.recovery.batch-size}, ordered by id, so rows
+ * that keep failing to recover can't hide the ones behind them.
+ */
+@Component
+public class StalePaymentRecoveryJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(StalePaymentRecoveryJob.class);
+
+    private final PaymentRecordService paymentRecordService;
+    private final Map<String, PaymentGateway> paymentGateways;
+
+    @Value("${payments.recovery.stale-after:10m}")
+    private Duration staleAfter;
+
+    @Value("${payments.recovery.batch-size:100}")
+    private int batchSize;
+
+    public StalePaymentRecoveryJob(PaymentRecordService paymentRecordService, Map<String, PaymentGateway> paymentGateways) {
+        this.paymentRecordService = paymentRecordService;
+        this.paymentGateways = paymentGateways;
+    }
+
+    @Scheduled(fixedDelayString = "${payments.recovery.interval-ms:60000}", initialDelayString = "${payments.recovery.initial-delay-ms:60000}")
+    public void recoverStalePayments() {
+        long afterId = 0;
+        List<Payment> stalePayments;
+        do {
+            stalePayments = paymentRecordService.findStalePending(staleAfter, afterId, batchSize);
+            if (stalePayments.isEmpty()) {
+                return;
+            }
+            logger.info("Recovering {} payment(s) stuck in PENDING for more than {}", stalePayments.size(), staleAfter);
+            recover(stalePayments);
+            afterId = stalePayments.get(stalePayments.size() - 1).getId();
+        } while (stalePayments.size() == batchSize);
+    }
+
+    private void recover(List<Payment> stalePayments) {
+        for (Payment payment : stalePayments) {
+            PaymentGateway gateway = paymentGateways.get(payment.getPaymentGateway() + "Service");
+            if (gateway == null) {
+                logger.warn("No gateway bean found for '{}' while recovering transaction {}", payment.getPaymentGateway(), payment.getTransactionId());
+                continue;
+            }
+            try {
+                gateway.recoverPayment(payment.getTransactionId());
+            } catch (Exception e) {
+                // Leave the row as is; it will be retried on the next run.
+                logger.error("Failed to recover transaction {} via {}: {}", payment.getTransactionId(), payment.getPaymentGateway(), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+
+/**
+ * The result of {@link PaymentRecordService#changeStatus}.
+ *
+ * @param outcome        What happened to the stored row.
+ * @param payment        The payment as stored after the attempt. On {@link Outcome#CONFLICT} it is the row as last
+ *                       read, which another writer has since changed.
+ * @param previousStatus The status the change was evaluated against.
+ */
+public record StatusChangeResult(Outcome outcome, Payment payment, PaymentStatus previousStatus) {
+
+    public enum Outcome {
+        /** The row was updated. */
+        APPLIED,
+        /** The row already had the requested status and gateway IDs; nothing was written. */
+        UNCHANGED,
+        /** The transition table doesn't allow the move; only new gateway IDs (if any) were written. */
+        REJECTED,
+        /** Another writer kept changing the row between our read and our conditional update; nothing was written. */
+        CONFLICT
+    }
+
+    /**
+     * Whether the stored status actually moved, i.e. an outbox event is due.
+     */
+    public boolean statusChanged() {
+        return outcome == Outcome.APPLIED && payment.getStatus() != previousStatus;
+    }
+}
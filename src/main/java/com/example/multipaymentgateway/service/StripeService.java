@@ -3,77 +3,128 @@ package com.example.multipaymentgateway.service;
 import com.example.multipaymentgateway.dto.PaymentRequest;
 import com.example.multipaymentgateway.dto.PaymentResponse;
 import com.example.multipaymentgateway.exception.PaymentProcessingException;
+import com.example.multipaymentgateway.model.Money;
 import com.example.multipaymentgateway.model.Payment;
-import com.example.multipaymentgateway.repository.PaymentRepository;
+import com.example.multipaymentgateway.model.PaymentStatus;
 import com.stripe.Stripe;
 import com.stripe.exception.StripeException;
 import com.stripe.model.PaymentIntent;
+import com.stripe.model.PaymentIntentCollection;
+import com.stripe.model.PaymentIntentSearchResult;
 import com.stripe.model.Refund;
+import com.stripe.model.StripeObject;
+import com.stripe.net.ApiResource;
+import com.stripe.net.LiveStripeResponseGetter;
+import com.stripe.net.RequestOptions;
 import com.stripe.param.PaymentIntentCreateParams;
+import com.stripe.param.PaymentIntentListParams;
+import com.stripe.param.PaymentIntentSearchParams;
 import com.stripe.param.RefundCreateParams;
+import io.github.resilience4j.bulkhead.annotation.Bulkhead;
+import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import jakarta.annotation.PostConstruct;
+import okhttp3.OkHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service("stripeService")
 public class StripeService implements PaymentGateway {
 
     private static final Logger logger = LoggerFactory.getLogger(StripeService.class);
-
-    @Value("${stripe.secret.key}")
-    private String stripeSecretKey;
-
-    private final PaymentRepository paymentRepository;
-    private boolean stripeInitialized = false;
-
-    public StripeService(PaymentRepository paymentRepository) {
-        this.paymentRepository = paymentRepository;
+    // Also the name of this gateway's circuit breaker and bulkhead (resilience4j.*.instances.stripe)
+    static final String GATEWAY_NAME = "stripe";
+    private static final long RECONCILE_LIST_PAGE_SIZE = 100; // Stripe's maximum
+    private static final int RECONCILE_MAX_LIST_PAGES = 20;
+    private static final long RECONCILE_WINDOW_SLACK_SECONDS = 300; // Clock skew and slow remote calls
+
+    // Empty means any currency
+    @Value("${stripe.supported-currencies:}")
+    private Set<String> supportedCurrencies = Set.of();
+
+    private final PaymentRecordService paymentRecordService;
+    private final TransactionIdGenerator transactionIdGenerator;
+    private final GatewayCallTimer gatewayCallTimer;
+    private final PaymentAuditLog paymentAuditLog;
+    private final GatewayHttpClients gatewayHttpClients;
+    private final MerchantCredentialRegistry merchantCredentials;
+
+    public StripeService(PaymentRecordService paymentRecordService, TransactionIdGenerator transactionIdGenerator,
+                         GatewayCallTimer gatewayCallTimer, PaymentAuditLog paymentAuditLog,
+                         GatewayHttpClients gatewayHttpClients, MerchantCredentialRegistry merchantCredentials) {
+        this.paymentRecordService = paymentRecordService;
+        this.transactionIdGenerator = transactionIdGenerator;
+        this.gatewayCallTimer = gatewayCallTimer;
+        this.paymentAuditLog = paymentAuditLog;
+        this.gatewayHttpClients = gatewayHttpClients;
+        this.merchantCredentials = merchantCredentials;
     }
 
     @PostConstruct
     public void init() {
-        if (stripeSecretKey == null || stripeSecretKey.isEmpty() || stripeSecretKey.equals("sk_test_YOUR_STRIPE_SECRET_KEY") || stripeSecretKey.equals("YOUR_STRIPE_SECRET_KEY")) {
-            logger.warn("Stripe API Key is not configured or using default placeholder. Stripe client will not be initialized.");
+        if (!merchantCredentials.isStripeConfigured()) {
+            logger.warn("No merchant has a Stripe API key configured. Stripe client will not be initialized.");
             return;
         }
-        Stripe.apiKey = stripeSecretKey;
-        stripeInitialized = true;
+        // The API key is not set globally: every call passes the merchant's RequestOptions
+        OkHttpClient httpClient = gatewayHttpClients.forGateway(GATEWAY_NAME);
+        // Default RequestOptions carry these timeouts; matching the client's lets every call use it as is
+        Stripe.setConnectTimeout(httpClient.connectTimeoutMillis());
+        Stripe.setReadTimeout(httpClient.readTimeoutMillis());
+        ApiResource.setStripeResponseGetter(new LiveStripeResponseGetter(new OkHttpStripeClient(httpClient)));
         logger.info("Stripe client initialized successfully.");
     }
 
     @Override
-    @Transactional
-    public PaymentResponse processPayment(PaymentRequest paymentRequest) {
-        if (!stripeInitialized) {
-            logger.error("Stripe client not initialized. Check API key configuration.");
-            throw new PaymentProcessingException("Stripe service is not available. Please check configuration.");
-        }
-
-        String internalTransactionId = UUID.randomUUID().toString();
+    public Payment preparePayment(PaymentRequest paymentRequest) {
         Payment payment = new Payment();
-        payment.setTransactionId(internalTransactionId);
+        payment.setTransactionId(transactionIdGenerator.nextId());
         payment.setAmount(paymentRequest.getAmount());
         payment.setCurrency(paymentRequest.getCurrency().toLowerCase()); // Stripe expects lowercase currency
         payment.setPaymentGateway(getGatewayName());
-        payment.setStatus("PENDING");
-        payment = paymentRepository.save(payment);
+        payment.setOrderId(paymentRequest.getOrderId());
+        payment.setMerchantId(paymentRequest.getMerchantId());
+        return payment;
+    }
+
+    @Override
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
+    public PaymentResponse processPayment(PaymentRequest paymentRequest) {
+        merchantCredentials.stripeOptions(paymentRequest.getMerchantId()); // Fails before a row is written if the merchant can't use Stripe
+
+        // Stage 1: commit the PENDING row before talking to Stripe, so no connection is held during the call.
+        Payment payment = paymentRecordService.createPending(preparePayment(paymentRequest));
+        return processPendingPayment(payment.getTransactionId(), paymentRequest);
+    }
 
+    @Override
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
+    public PaymentResponse processPendingPayment(String internalTransactionId, PaymentRequest paymentRequest) {
+        PaymentIntent paymentIntent;
         try {
             PaymentIntentCreateParams.Builder paramsBuilder =
                 PaymentIntentCreateParams.builder()
-                    .setAmount(paymentRequest.getAmount().multiply(new BigDecimal(100)).longValue()) // Amount in cents
+                    .setAmount(paymentRequest.toMoney().minorUnits()) // Amount in the currency's minor unit (cents for USD)
                     .setCurrency(paymentRequest.getCurrency().toLowerCase())
                     .setConfirmationMethod(PaymentIntentCreateParams.ConfirmationMethod.AUTOMATIC) // Or MANUAL
-                    .setConfirm(true); // Attempt to confirm the PaymentIntent immediately.
-                                       // Requires a payment method.
+                    .setConfirm(true) // Attempt to confirm the PaymentIntent immediately.
+                                      // Requires a payment method.
+                    .putMetadata("transaction_id", internalTransactionId); // Lets recoverPayment find the intent
 
             // For this server-side flow, we'd typically use `payment_method_types` and then handle client-side confirmation.
             // Or, if a payment_method_id is passed from client: paramsBuilder.setPaymentMethod("pm_card_visa");
@@ -106,54 +157,54 @@ public class StripeService implements PaymentGateway {
              }
 
 
-            PaymentIntent paymentIntent = PaymentIntent.create(paramsBuilder.build());
+            // Stage 2: remote call with no transaction open. The idempotency key makes a retried create safe.
+            RequestOptions requestOptions = merchantCredentials.stripeOptions(paymentRequest.getMerchantId(), internalTransactionId);
+            PaymentIntentCreateParams createParams = paramsBuilder.build();
+            paymentAuditLog.record(internalTransactionId, GATEWAY_NAME, "payment_intent.create.request", ApiResource.GSON.toJson(createParams.toMap()));
+            paymentIntent = gatewayCallTimer.time(GATEWAY_NAME, "payment_intent.create", () -> PaymentIntent.create(createParams, requestOptions));
+            paymentAuditLog.record(internalTransactionId, GATEWAY_NAME, "payment_intent.create.response", rawJson(paymentIntent));
             logger.info("Stripe PaymentIntent created: {} for internal transaction ID: {}", paymentIntent.getId(), internalTransactionId);
-
-            payment.setGatewayTransactionId(paymentIntent.getId());
-            payment.setStatus(mapStripePaymentIntentStatus(paymentIntent.getStatus()));
-            paymentRepository.save(payment);
-
-            PaymentResponse response = createPaymentResponse(payment, "Stripe PaymentIntent created. Status: " + paymentIntent.getStatus(), paymentIntent.getClientSecret());
-
-            // If requires_action or requires_confirmation, client_secret is needed by the client.
-            if ("requires_action".equals(paymentIntent.getStatus()) || "requires_confirmation".equals(paymentIntent.getStatus()) || "requires_payment_method".equals(paymentIntent.getStatus())) {
-                response.setRedirectUrl(null); // No specific redirect URL, client uses client_secret with Stripe.js
-                response.setStatus("PENDING_USER_ACTION");
-                Map<String, Object> gatewaySpecific = new HashMap<>();
-                gatewaySpecific.put("stripe_payment_intent_id", paymentIntent.getId());
-                gatewaySpecific.put("stripe_client_secret", paymentIntent.getClientSecret());
-                response.setGatewaySpecificResponse(gatewaySpecific);
-                 response.setMessage("Stripe PaymentIntent created. Client action required using client_secret.");
-            } else if ("succeeded".equals(paymentIntent.getStatus())) {
-                 response.setMessage("Stripe payment processed successfully.");
-            }
-
-
-            return response;
-
         } catch (StripeException e) {
             logger.error("Stripe API error during payment processing for transactionId {}: {} - {}", internalTransactionId, e.getCode(), e.getMessage(), e);
-            payment.setStatus("FAILED");
-            paymentRepository.save(payment);
+            paymentRecordService.updateStatus(internalTransactionId, PaymentStatus.FAILED);
             throw new PaymentProcessingException("Stripe payment failed: " + e.getMessage(), e);
         } catch (Exception e) {
             logger.error("Unexpected error during Stripe payment processing for transactionId {}: {}", internalTransactionId, e.getMessage(), e);
-            payment.setStatus("ERROR");
-            paymentRepository.save(payment);
+            paymentRecordService.updateStatus(internalTransactionId, PaymentStatus.ERROR);
             throw new PaymentProcessingException("Unexpected error during Stripe payment: " + e.getMessage(), e);
         }
+
+        // Stage 3: short finalize transaction. If this fails the row stays PENDING without a
+        // gateway ID and is resolved later by StalePaymentRecoveryJob.
+        Payment payment = paymentRecordService.finalizePayment(internalTransactionId, paymentIntent.getId(),
+                mapStripePaymentIntentStatus(paymentIntent.getStatus()));
+
+        PaymentResponse response = createPaymentResponse(payment, "Stripe PaymentIntent created. Status: " + paymentIntent.getStatus(), paymentIntent.getClientSecret());
+
+        // If requires_action or requires_confirmation, client_secret is needed by the client.
+        if ("requires_action".equals(paymentIntent.getStatus()) || "requires_confirmation".equals(paymentIntent.getStatus()) || "requires_payment_method".equals(paymentIntent.getStatus())) {
+            response.setRedirectUrl(null); // No specific redirect URL, client uses client_secret with Stripe.js
+            response.setStatus(PaymentStatus.PENDING_USER_ACTION.name());
+            Map<String, Object> gatewaySpecific = new HashMap<>();
+            gatewaySpecific.put("stripe_payment_intent_id", paymentIntent.getId());
+            gatewaySpecific.put("stripe_client_secret", paymentIntent.getClientSecret());
+            response.setGatewaySpecificResponse(gatewaySpecific);
+            response.setMessage("Stripe PaymentIntent created. Client action required using client_secret.");
+        } else if ("succeeded".equals(paymentIntent.getStatus())) {
+            response.setMessage("Stripe payment processed successfully.");
+        }
+
+        return response;
     }
 
     @Override
-    @Transactional
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
     public PaymentResponse getPaymentStatus(String transactionId) {
         // This `transactionId` is OUR internal system's transaction ID.
-        if (!stripeInitialized) {
-            logger.error("Stripe client not initialized. Check API key configuration.");
-            throw new PaymentProcessingException("Stripe service is not available. Please check configuration.");
-        }
-        Payment payment = paymentRepository.findByTransactionId(transactionId)
+        Payment payment = paymentRecordService.findByTransactionId(transactionId)
                 .orElseThrow(() -> new PaymentProcessingException("Payment not found with internal transaction ID: " + transactionId));
+        RequestOptions requestOptions = merchantCredentials.stripeOptions(payment.getMerchantId());
 
         String stripePaymentIntentId = payment.getGatewayTransactionId();
         if (stripePaymentIntentId == null || stripePaymentIntentId.isEmpty()) {
@@ -162,14 +213,14 @@ public class StripeService implements PaymentGateway {
         }
 
         try {
-            PaymentIntent paymentIntent = PaymentIntent.retrieve(stripePaymentIntentId);
+            PaymentIntent paymentIntent = gatewayCallTimer.time(GATEWAY_NAME, "payment_intent.retrieve", () -> PaymentIntent.retrieve(stripePaymentIntentId, requestOptions));
+            paymentAuditLog.record(transactionId, GATEWAY_NAME, "payment_intent.retrieve.response", rawJson(paymentIntent));
             String stripeStatus = paymentIntent.getStatus();
             logger.info("Stripe PaymentIntent {} status: {}", stripePaymentIntentId, stripeStatus);
 
-            payment.setStatus(mapStripePaymentIntentStatus(stripeStatus));
             // Update amount if it can change (e.g. for some payment methods or if not set initially from intent)
-            // payment.setAmount(new BigDecimal(paymentIntent.getAmountReceived()).divide(new BigDecimal(100)));
-            paymentRepository.save(payment);
+            // payment.setAmount(new Money(paymentIntent.getAmountReceived(), payment.getCurrency()).toBigDecimal());
+            payment = paymentRecordService.updateStatus(transactionId, mapStripePaymentIntentStatus(stripeStatus));
 
             return createPaymentResponse(payment, "Payment status retrieved successfully from Stripe: " + stripeStatus, paymentIntent.getClientSecret());
 
@@ -180,15 +231,13 @@ public class StripeService implements PaymentGateway {
     }
 
     @Override
-    @Transactional
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
     public PaymentResponse refundPayment(String transactionId, BigDecimal amountToRefund) {
         // This `transactionId` is OUR internal system's transaction ID.
-        if (!stripeInitialized) {
-            logger.error("Stripe client not initialized. Check API key configuration.");
-            throw new PaymentProcessingException("Stripe service is not available. Please check configuration.");
-        }
-        Payment payment = paymentRepository.findByTransactionId(transactionId)
+        Payment payment = paymentRecordService.findByTransactionId(transactionId)
                 .orElseThrow(() -> new PaymentProcessingException("Payment not found for refund with internal transaction ID: " + transactionId));
+        RequestOptions requestOptions = merchantCredentials.stripeOptions(payment.getMerchantId());
 
         String stripePaymentIntentId = payment.getGatewayTransactionId();
         if (stripePaymentIntentId == null || stripePaymentIntentId.isEmpty()) {
@@ -197,36 +246,47 @@ public class StripeService implements PaymentGateway {
 
         // Stripe refunds are against a Charge ID or PaymentIntent ID.
         // If status is not "succeeded", it might not be refundable.
-        if (!"SUCCESS".equalsIgnoreCase(payment.getStatus())) { // Our internal status
+        if (!payment.getStatus().isRefundable()) { // Our internal status
              // We could also check Stripe's status directly if needed: getPaymentStatus(transactionId); payment = ...
              throw new PaymentProcessingException("Cannot refund: Payment " + transactionId + " (Stripe PI: "+stripePaymentIntentId+") is not in a refundable state (current status: " + payment.getStatus() + ")");
         }
 
+        Money refundAmount;
+        try {
+            refundAmount = amountToRefund != null ? Money.of(amountToRefund, payment.getCurrency()) : null;
+        } catch (IllegalArgumentException e) {
+            throw new PaymentProcessingException("Cannot refund " + transactionId + ": " + e.getMessage(), e);
+        }
+
         try {
             RefundCreateParams.Builder refundParamsBuilder = RefundCreateParams.builder()
                 .setPaymentIntent(stripePaymentIntentId);
 
-            if (amountToRefund != null && amountToRefund.compareTo(BigDecimal.ZERO) > 0 && amountToRefund.compareTo(payment.getAmount()) <= 0) {
-                refundParamsBuilder.setAmount(amountToRefund.multiply(new BigDecimal(100)).longValue());
+            if (refundAmount != null && refundAmount.minorUnits() > 0 && refundAmount.minorUnits() <= payment.toMoney().minorUnits()) {
+                refundParamsBuilder.setAmount(refundAmount.minorUnits());
             } // If amountToRefund is null or zero, Stripe will attempt a full refund.
 
-            Refund refund = Refund.create(refundParamsBuilder.build());
+            RefundCreateParams refundParams = refundParamsBuilder.build();
+            paymentAuditLog.record(transactionId, GATEWAY_NAME, "refund.create.request", ApiResource.GSON.toJson(refundParams.toMap()));
+            Refund refund = gatewayCallTimer.time(GATEWAY_NAME, "refund.create", () -> Refund.create(refundParams, requestOptions));
+            paymentAuditLog.record(transactionId, GATEWAY_NAME, "refund.create.response", rawJson(refund));
             String refundId = refund.getId();
             String refundStatus = refund.getStatus(); // e.g., succeeded, pending, failed, canceled
             logger.info("Stripe refund initiated for PaymentIntent {}. Refund ID: {}, Status: {}", stripePaymentIntentId, refundId, refundStatus);
 
             // Update our payment status
+            PaymentStatus newStatus;
             if ("succeeded".equalsIgnoreCase(refundStatus) || "pending".equalsIgnoreCase(refundStatus)) {
                 // Check if it's a partial refund
                 if (amountToRefund != null && payment.getAmount().compareTo(amountToRefund) > 0 && "succeeded".equalsIgnoreCase(refundStatus)) {
-                    payment.setStatus("PARTIALLY_REFUNDED");
+                    newStatus = PaymentStatus.PARTIALLY_REFUNDED;
                 } else {
-                    payment.setStatus("REFUNDED");
+                    newStatus = PaymentStatus.REFUNDED;
                 }
             } else {
-                payment.setStatus("REFUND_FAILED");
+                newStatus = PaymentStatus.REFUND_FAILED;
             }
-            paymentRepository.save(payment);
+            payment = paymentRecordService.updateStatus(transactionId, newStatus);
 
             PaymentResponse response = createPaymentResponse(payment, "Refund request processed by Stripe. Current refund status: " + refundStatus, null);
             response.setGatewaySpecificResponse(refund.toJson()); // Convert Stripe object to map/json string
@@ -234,17 +294,159 @@ public class StripeService implements PaymentGateway {
 
         } catch (StripeException e) {
             logger.error("Stripe API error during refund for PaymentIntent {}: {}", stripePaymentIntentId, e.getMessage(), e);
-            payment.setStatus("REFUND_FAILED");
-            paymentRepository.save(payment);
+            paymentRecordService.updateStatus(transactionId, PaymentStatus.REFUND_FAILED);
             throw new PaymentProcessingException("Stripe refund failed for " + stripePaymentIntentId + ": " + e.getMessage(), e);
         }
     }
 
-    private PaymentResponse createPaymentResponse(Payment payment, String message, String clientSecret) {
+    @Override
+    @CircuitBreaker(name = GATEWAY_NAME)
+    @Bulkhead(name = GATEWAY_NAME)
+    public PaymentResponse recoverPayment(String transactionId) {
+        Payment payment = paymentRecordService.findByTransactionId(transactionId)
+                .orElseThrow(() -> new PaymentProcessingException("Payment not found for recovery with internal transaction ID: " + transactionId));
+        if (payment.getGatewayTransactionId() != null) {
+            return getPaymentStatus(transactionId); // Already finalized, just refresh
+        }
+        RequestOptions requestOptions = merchantCredentials.stripeOptions(payment.getMerchantId());
+
+        try {
+            // processPayment tags every PaymentIntent with our transaction ID, so we can find one that was
+            // created but never recorded locally. Search results can lag behind creation by about a minute,
+            // which is well inside the recovery job's staleness threshold.
+            PaymentIntentSearchParams searchParams = PaymentIntentSearchParams.builder()
+                    .setQuery("metadata['transaction_id']:'" + transactionId + "'")
+                    .build();
+            PaymentIntentSearchResult result = gatewayCallTimer.time(GATEWAY_NAME, "payment_intent.search", () -> PaymentIntent.search(searchParams, requestOptions));
+
+            if (result.getData() == null || result.getData().isEmpty()) {
+                logger.warn("No Stripe PaymentIntent found for stale transaction {}. Marking as FAILED.", transactionId);
+                payment = paymentRecordService.updateStatus(transactionId, PaymentStatus.FAILED);
+                return createPaymentResponse(payment, "Payment never reached Stripe and was marked as failed.", null);
+            }
+
+            PaymentIntent paymentIntent = result.getData().get(0);
+            logger.info("Recovered Stripe PaymentIntent {} with status {} for transaction {}", paymentIntent.getId(), paymentIntent.getStatus(), transactionId);
+            payment = paymentRecordService.finalizePayment(transactionId, paymentIntent.getId(),
+                    mapStripePaymentIntentStatus(paymentIntent.getStatus()));
+            return createPaymentResponse(payment, "Payment recovered from Stripe. Status: " + paymentIntent.getStatus(), null);
+
+        } catch (StripeException e) {
+            logger.error("Stripe API error recovering transaction {}: {}", transactionId, e.getMessage(), e);
+            throw new PaymentProcessingException("Stripe recovery failed for " + transactionId + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<PaymentStatusUpdate> reconcile(List<Payment> payments, Runnable beforeRemoteCall) {
+        // Each merchant's PaymentIntents can only be listed with its own key
+        Map<String, List<Payment>> byMerchant = payments.stream().collect(Collectors.groupingBy(
+                payment -> MerchantCredentialRegistry.merchantKey(payment.getMerchantId()), LinkedHashMap::new, Collectors.toList()));
+        List<PaymentStatusUpdate> updates = new ArrayList<>();
+        byMerchant.forEach((merchant, merchantPayments) -> {
+            if (merchantCredentials.isStripeConfigured(merchant)) {
+                updates.addAll(reconcileMerchant(merchantPayments, merchantCredentials.stripeOptions(merchant), beforeRemoteCall));
+            } else {
+                logger.warn("Skipping reconciliation of {} payment(s): merchant {} has no Stripe key", merchantPayments.size(), merchant);
+            }
+        });
+        return updates;
+    }
+
+    private List<PaymentStatusUpdate> reconcileMerchant(List<Payment> payments, RequestOptions requestOptions, Runnable beforeRemoteCall) {
+        Map<String, Payment> byIntentId = new HashMap<>();
+        Map<String, Payment> byTransactionId = new HashMap<>();
+        LocalDateTime earliest = null;
+        LocalDateTime latest = null;
+        for (Payment payment : payments) {
+            byTransactionId.put(payment.getTransactionId(), payment);
+            if (payment.getGatewayTransactionId() != null) {
+                byIntentId.put(payment.getGatewayTransactionId(), payment);
+            }
+            earliest = earliest == null || payment.getCreatedAt().isBefore(earliest) ? payment.getCreatedAt() : earliest;
+            latest = latest == null || payment.getCreatedAt().isAfter(latest) ? payment.getCreatedAt() : latest;
+        }
+        // A PaymentIntent is created during the remote call, right after its row was committed
+        PaymentIntentListParams.Created created = PaymentIntentListParams.Created.builder()
+                .setGte(toEpochSecond(earliest) - RECONCILE_WINDOW_SLACK_SECONDS)
+                .setLte(toEpochSecond(latest) + RECONCILE_WINDOW_SLACK_SECONDS)
+                .build();
+
+        Set<String> matched = new HashSet<>();
+        List<PaymentStatusUpdate> updates = new ArrayList<>();
+        String startingAfter = null;
+        boolean listedAll = false;
+        long oldestListed = Long.MAX_VALUE; // Listings come newest first
+        try {
+            for (int page = 0; page < RECONCILE_MAX_LIST_PAGES && matched.size() < payments.size(); page++) {
+                PaymentIntentListParams.Builder paramsBuilder = PaymentIntentListParams.builder()
+                        .setCreated(created)
+                        .setLimit(RECONCILE_LIST_PAGE_SIZE);
+                if (startingAfter != null) {
+                    paramsBuilder.setStartingAfter(startingAfter);
+                }
+                PaymentIntentListParams listParams = paramsBuilder.build();
+                beforeRemoteCall.run();
+                PaymentIntentCollection intents = gatewayCallTimer.time(GATEWAY_NAME, "payment_intent.list", () -> PaymentIntent.list(listParams, requestOptions));
+
+                for (PaymentIntent paymentIntent : intents.getData()) {
+                    if (paymentIntent.getCreated() != null) {
+                        oldestListed = Math.min(oldestListed, paymentIntent.getCreated());
+                    }
+                    Payment payment = byIntentId.get(paymentIntent.getId());
+                    if (payment == null && paymentIntent.getMetadata() != null) {
+                        payment = byTransactionId.get(paymentIntent.getMetadata().get("transaction_id"));
+                    }
+                    if (payment == null || !matched.add(payment.getTransactionId())) {
+                        continue;
+                    }
+                    addUpdate(updates, payment, paymentIntent);
+                }
+                if (!Boolean.TRUE.equals(intents.getHasMore()) || intents.getData().isEmpty()) {
+                    listedAll = true;
+                    break;
+                }
+                startingAfter = intents.getData().get(intents.getData().size() - 1).getId();
+            }
+
+            // The page cap was hit before the listing reached back far enough: a busy merchant's newest PaymentIntents
+            // filled it. Rows whose PaymentIntent may be older than anything listed are retrieved one by one, otherwise
+            // they would never be matched and the same window would be listed again on every run. Rows without a
+            // PaymentIntent ID can't be retrieved; StalePaymentRecoveryJob handles those.
+            if (!listedAll) {
+                for (Payment payment : payments) {
+                    if (matched.contains(payment.getTransactionId()) || payment.getGatewayTransactionId() == null
+                            || toEpochSecond(payment.getCreatedAt()) - RECONCILE_WINDOW_SLACK_SECONDS >= oldestListed) {
+                        continue;
+                    }
+                    String paymentIntentId = payment.getGatewayTransactionId();
+                    beforeRemoteCall.run();
+                    PaymentIntent paymentIntent = gatewayCallTimer.time(GATEWAY_NAME, "payment_intent.retrieve",
+                            () -> PaymentIntent.retrieve(paymentIntentId, requestOptions));
+                    matched.add(payment.getTransactionId());
+                    addUpdate(updates, payment, paymentIntent);
+                }
+            }
+        } catch (StripeException e) {
+            logger.error("Stripe API error reconciling {} payment(s): {}", payments.size(), e.getMessage(), e);
+            throw new PaymentProcessingException("Stripe reconciliation failed: " + e.getMessage(), e);
+        }
+        logger.debug("Stripe reconciliation matched {} of {} payment(s), {} changed", matched.size(), payments.size(), updates.size());
+        return updates;
+    }
+
+    private static void addUpdate(List<PaymentStatusUpdate> updates, Payment payment, PaymentIntent paymentIntent) {
+        PaymentStatus status = mapStripePaymentIntentStatus(paymentIntent.getStatus());
+        if (status != payment.getStatus() || payment.getGatewayTransactionId() == null) {
+            updates.add(new PaymentStatusUpdate(null, GATEWAY_NAME, payment.getTransactionId(), paymentIntent.getId(), null, status));
+        }
+    }
+
+    PaymentResponse createPaymentResponse(Payment payment, String message, String clientSecret) {
         PaymentResponse response = new PaymentResponse();
         response.setTransactionId(payment.getTransactionId());
         response.setGatewayTransactionId(payment.getGatewayTransactionId()); // Stripe PaymentIntent ID
-        response.setStatus(payment.getStatus());
+        response.setStatus(payment.getStatus().name());
         response.setMessage(message);
         response.setGatewayName(getGatewayName());
         response.setAmount(payment.getAmount());
@@ -260,28 +462,45 @@ public class StripeService implements PaymentGateway {
         return response;
     }
 
-    private String mapStripePaymentIntentStatus(String stripeStatus) {
-        if (stripeStatus == null) return "UNKNOWN";
+    // The body exactly as Stripe sent it, when the SDK kept the response
+    private static String rawJson(StripeObject stripeObject) {
+        return stripeObject.getLastResponse() != null ? stripeObject.getLastResponse().body() : stripeObject.toJson();
+    }
+
+    private static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toEpochSecond(); // Timestamps are stored in server local time
+    }
+
+    static PaymentStatus mapStripePaymentIntentStatus(String stripeStatus) {
+        if (stripeStatus == null) return PaymentStatus.UNKNOWN;
         switch (stripeStatus.toLowerCase()) {
             case "requires_payment_method":
             case "requires_confirmation":
             case "requires_action":
             case "processing":
-                return "PENDING"; // Or more specific if needed, e.g. PENDING_USER_ACTION
+                return PaymentStatus.PENDING; // Or more specific if needed, e.g. PENDING_USER_ACTION
             case "succeeded":
-                return "SUCCESS";
+                return PaymentStatus.SUCCESS;
             case "canceled":
-                return "CANCELED";
+                return PaymentStatus.CANCELED;
             case "requires_capture": // Relevant if using manual capture
-                return "AUTHORIZED";
+                return PaymentStatus.AUTHORIZED;
             default:
                 logger.warn("Unknown Stripe PaymentIntent status: {}", stripeStatus);
-                return stripeStatus.toUpperCase(); // Or FAILED as a fallback
+                return PaymentStatus.UNKNOWN;
+        }
+    }
+
+    @Override
+    public boolean supportsCurrency(String currency) {
+        if (!merchantCredentials.isStripeConfigured()) {
+            return false; // Not configured, so nothing should be routed here
         }
+        return supportedCurrencies.isEmpty() || (currency != null && supportedCurrencies.contains(currency.toUpperCase()));
     }
 
     @Override
     public String getGatewayName() {
-        return "stripe";
+        return GATEWAY_NAME;
     }
 }
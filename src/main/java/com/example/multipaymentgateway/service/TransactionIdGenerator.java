@@ -0,0 +1,15 @@
+package com.example.multipaymentgateway.service;
+
+/**
+ * Source of our system's transaction IDs ({@code payments.transaction_id}).
+ * <p>
+ * The implementation is chosen with {@code payments.transaction-id.strategy}: {@code time-ordered} (default)
+ * or {@code random}.
+ */
+public interface TransactionIdGenerator {
+
+    /**
+     * @return A new, globally unique transaction ID, at most 36 characters long.
+     */
+    String nextId();
+}
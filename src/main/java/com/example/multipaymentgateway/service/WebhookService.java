@@ -0,0 +1,196 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.exception.WebhookVerificationException;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.razorpay.RazorpayException;
+import com.razorpay.Utils;
+import com.stripe.exception.EventDataObjectDeserializationException;
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.model.Charge;
+import com.stripe.model.Event;
+import com.stripe.model.EventDataObjectDeserializer;
+import com.stripe.model.PaymentIntent;
+import com.stripe.model.StripeObject;
+import com.stripe.net.Webhook;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Verifies and translates Stripe and Razorpay webhooks into {@link PaymentStatusUpdate}s.
+ * <p>
+ * Signatures are checked locally with the configured webhook secrets (no call back to the gateway).
+ * Event IDs seen recently are dropped straight away; the durable check happens when
+ * {@link PaymentStatusUpdateBatcher} records the event, which it does before the webhook is acknowledged.
+ */
+@Service
+public class WebhookService {
+
+    public enum Outcome {
+        ACCEPTED,   // Recorded; applied with the next batch
+        DUPLICATE,  // Event ID already seen
+        IGNORED     // Event type we don't act on
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookService.class);
+
+    @Value("${stripe.webhook.secret:}")
+    private String stripeWebhookSecret;
+
+    @Value("${razorpay.webhook.secret:}")
+    private String razorpayWebhookSecret;
+
+    private final PaymentStatusUpdateBatcher paymentStatusUpdateBatcher;
+    private final PaymentAuditLog paymentAuditLog;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, Boolean> recentEventIds;
+
+    public WebhookService(PaymentStatusUpdateBatcher paymentStatusUpdateBatcher,
+                          PaymentAuditLog paymentAuditLog,
+                          MeterRegistry meterRegistry,
+                          @Value("${payments.webhooks.dedup-cache-size:100000}") long dedupCacheSize,
+                          @Value("${payments.webhooks.dedup-cache-ttl:24h}") Duration dedupCacheTtl) {
+        this.paymentStatusUpdateBatcher = paymentStatusUpdateBatcher;
+        this.paymentAuditLog = paymentAuditLog;
+        this.meterRegistry = meterRegistry;
+        this.recentEventIds = Caffeine.newBuilder()
+                .maximumSize(dedupCacheSize)
+                .expireAfterWrite(dedupCacheTtl)
+                .build();
+    }
+
+    public Outcome handleStripeEvent(String payload, String signatureHeader) {
+        if (!isConfigured(stripeWebhookSecret, "YOUR_STRIPE_WEBHOOK_SECRET")) {
+            throw new WebhookVerificationException("Stripe webhook secret is not configured.", "stripe");
+        }
+        Event event;
+        try {
+            event = Webhook.constructEvent(payload, signatureHeader, stripeWebhookSecret);
+        } catch (SignatureVerificationException e) {
+            count("stripe", "invalid_signature");
+            throw new WebhookVerificationException("Invalid Stripe webhook signature.", "stripe", e);
+        }
+
+        StripeObject dataObject = deserialize(event);
+        PaymentStatusUpdate update = null;
+        if (dataObject instanceof PaymentIntent paymentIntent) {
+            update = new PaymentStatusUpdate(event.getId(), "stripe",
+                    paymentIntent.getMetadata() != null ? paymentIntent.getMetadata().get("transaction_id") : null,
+                    paymentIntent.getId(), null,
+                    StripeService.mapStripePaymentIntentStatus(paymentIntent.getStatus()));
+        } else if (dataObject instanceof Charge charge && "charge.refunded".equals(event.getType())) {
+            PaymentStatus status = Boolean.TRUE.equals(charge.getRefunded()) ? PaymentStatus.REFUNDED : PaymentStatus.PARTIALLY_REFUNDED;
+            update = new PaymentStatusUpdate(event.getId(), "stripe", null, charge.getPaymentIntent(), null, status);
+        }
+        return submit("stripe", event.getId(), event.getType(), update, payload);
+    }
+
+    public Outcome handleRazorpayEvent(String payload, String signature, String eventIdHeader) {
+        if (!isConfigured(razorpayWebhookSecret, "YOUR_RAZORPAY_WEBHOOK_SECRET")) {
+            throw new WebhookVerificationException("Razorpay webhook secret is not configured.", "razorpay");
+        }
+        try {
+            if (signature == null || !Utils.verifyWebhookSignature(payload, signature, razorpayWebhookSecret)) {
+                count("razorpay", "invalid_signature");
+                throw new WebhookVerificationException("Invalid Razorpay webhook signature.", "razorpay");
+            }
+        } catch (RazorpayException e) {
+            count("razorpay", "invalid_signature");
+            throw new WebhookVerificationException("Invalid Razorpay webhook signature.", "razorpay", e);
+        }
+
+        try {
+            JSONObject event = new JSONObject(payload);
+            String eventType = event.optString("event");
+            JSONObject body = event.optJSONObject("payload");
+            JSONObject paymentEntity = entity(body, "payment");
+            JSONObject orderEntity = entity(body, "order");
+
+            // Razorpay sends the event ID as a header; fall back to something stable per event if it is missing.
+            String eventId = eventIdHeader != null && !eventIdHeader.isBlank()
+                    ? eventIdHeader
+                    : eventType + ":" + (paymentEntity != null ? paymentEntity.optString("id") : "") + ":" + event.optLong("created_at");
+
+            PaymentStatusUpdate update = null;
+            if (paymentEntity != null) {
+                PaymentStatus status;
+                if (eventType.startsWith("refund.")) {
+                    status = "partial".equalsIgnoreCase(paymentEntity.optString("refund_status")) ? PaymentStatus.PARTIALLY_REFUNDED : PaymentStatus.REFUNDED;
+                } else {
+                    status = RazorpayService.mapRazorpayOrderStatusToInternalStatus(null, paymentEntity.optString("status", null));
+                }
+                String receipt = orderEntity != null ? orderEntity.optString("receipt", null) : null; // Our transaction ID
+                update = new PaymentStatusUpdate(eventId, "razorpay", receipt,
+                        paymentEntity.optString("id", null), paymentEntity.optString("order_id", null), status);
+            }
+            return submit("razorpay", eventId, eventType, update, payload);
+        } catch (JSONException e) {
+            throw new WebhookVerificationException("Malformed Razorpay webhook payload.", "razorpay", e);
+        }
+    }
+
+    private Outcome submit(String gateway, String eventId, String eventType, PaymentStatusUpdate update, String payload) {
+        if (update == null) {
+            logger.debug("Ignoring {} webhook {} of type {}", gateway, eventId, eventType);
+            count(gateway, "ignored");
+            return Outcome.IGNORED;
+        }
+        if (recentEventIds.asMap().putIfAbsent(eventId, Boolean.TRUE) != null) {
+            logger.info("Dropping duplicate {} webhook {}", gateway, eventId);
+            count(gateway, "duplicate");
+            return Outcome.DUPLICATE;
+        }
+        boolean recorded;
+        try {
+            recorded = paymentStatusUpdateBatcher.submit(update);
+        } catch (RuntimeException e) {
+            recentEventIds.invalidate(eventId); // Not recorded; the gateway redelivers after the error response
+            count(gateway, "failed");
+            throw e;
+        }
+        if (!recorded) {
+            logger.info("Dropping duplicate {} webhook {}", gateway, eventId);
+            count(gateway, "duplicate");
+            return Outcome.DUPLICATE;
+        }
+        // Only events that name our transaction can be filed under it (Stripe refund events don't)
+        paymentAuditLog.record(update.transactionId(), gateway, "webhook." + eventType, payload);
+        count(gateway, "accepted");
+        return Outcome.ACCEPTED;
+    }
+
+    private static StripeObject deserialize(Event event) {
+        EventDataObjectDeserializer deserializer = event.getDataObjectDeserializer();
+        if (deserializer.getObject().isPresent()) {
+            return deserializer.getObject().get();
+        }
+        // Event was rendered with a different API version than the SDK's; the fields we read are stable.
+        try {
+            return deserializer.deserializeUnsafe();
+        } catch (EventDataObjectDeserializationException e) {
+            logger.warn("Unable to deserialize Stripe event {} of type {}: {}", event.getId(), event.getType(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static JSONObject entity(JSONObject payload, String name) {
+        JSONObject wrapper = payload != null ? payload.optJSONObject(name) : null;
+        return wrapper != null ? wrapper.optJSONObject("entity") : null;
+    }
+
+    private static boolean isConfigured(String secret, String placeholder) {
+        return secret != null && !secret.isBlank() && !secret.equals(placeholder);
+    }
+
+    private void count(String gateway, String outcome) {
+        meterRegistry.counter("payment.webhooks", "gateway", gateway, "outcome", outcome).increment();
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.multipaymentgateway.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GatewayExecutorConfigTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ExecutorService executor;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void gatewayCallExecutor_platformPoolFull_shouldRejectInsteadOfQueueing() throws InterruptedException {
+        executor = new GatewayExecutorConfig().gatewayCallExecutor("platform", 2, 3);
+        ThreadPoolExecutor pool = assertInstanceOf(ThreadPoolExecutor.class, executor);
+        CountDownLatch running = new CountDownLatch(2);
+
+        for (int i = 0; i < 5; i++) { // Two running, three queued
+            executor.execute(() -> {
+                running.countDown();
+                awaitRelease();
+            });
+        }
+
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertEquals(3, pool.getQueue().size());
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(this::awaitRelease));
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
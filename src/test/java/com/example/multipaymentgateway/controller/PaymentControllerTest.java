@@ -2,8 +2,16 @@ package com.example.multipaymentgateway.controller;
 
 import com.example.multipaymentgateway.dto.PaymentRequest;
 import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.service.AsyncPaymentService;
+import com.example.multipaymentgateway.service.BatchPaymentService;
+import com.example.multipaymentgateway.service.GatewayRouter;
+import com.example.multipaymentgateway.service.IdempotencyService;
 import com.example.multipaymentgateway.service.PaymentGateway;
+import com.example.multipaymentgateway.service.PaymentRecordService;
+import com.example.multipaymentgateway.service.PaymentStatusService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,19 +20,26 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(MockitoExtension.class)
@@ -38,6 +53,15 @@ public class PaymentControllerTest {
     @Mock
     private PaymentGateway mockRazorpayService; // Mock another specific gateway
 
+    @Mock
+    private IdempotencyService idempotencyService;
+
+    @Mock
+    private PaymentRecordService paymentRecordService;
+
+    @Mock
+    private BatchPaymentService batchPaymentService;
+
     @InjectMocks
     private PaymentController paymentController;
 
@@ -50,12 +74,21 @@ public class PaymentControllerTest {
         paymentGatewaysMap.put("stripeService", mockStripeService);
         paymentGatewaysMap.put("razorpayService", mockRazorpayService);
 
-        paymentController = new PaymentController(paymentGatewaysMap);
-        mockMvc = MockMvcBuilders.standaloneSetup(paymentController).build();
-
         // Common mock behavior for getGatewayName()
         when(mockStripeService.getGatewayName()).thenReturn("stripe");
         when(mockRazorpayService.getGatewayName()).thenReturn("razorpay");
+        lenient().when(mockStripeService.supportsCurrency(anyString())).thenReturn(true);
+        lenient().when(mockRazorpayService.supportsCurrency(anyString())).thenReturn(true);
+
+        // Real status service over a mocked store, so status lookups still reach the mocked gateways
+        PaymentStatusService paymentStatusService = new PaymentStatusService(paymentRecordService, new SimpleMeterRegistry(), 100, Duration.ofSeconds(5));
+        // Real router with Stripe as the default, so requests without a preference go to Stripe until calls are measured
+        GatewayRouter gatewayRouter = new GatewayRouter(paymentGatewaysMap, CircuitBreakerRegistry.ofDefaults(), new SimpleMeterRegistry(),
+                "stripeService", 0.2, 0.5, 0.0);
+        // Async operations run on the calling thread
+        AsyncPaymentService asyncPaymentService = new AsyncPaymentService(Runnable::run, paymentStatusService);
+        paymentController = new PaymentController(paymentGatewaysMap, idempotencyService, batchPaymentService, gatewayRouter, asyncPaymentService);
+        mockMvc = MockMvcBuilders.standaloneSetup(paymentController).build();
     }
 
     @Test
@@ -74,7 +107,7 @@ public class PaymentControllerTest {
 
         when(mockStripeService.processPayment(any(PaymentRequest.class))).thenReturn(mockResponse);
 
-        mockMvc.perform(post("/api/payments")
+        performAsync(post("/api/payments")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(request)))
                 .andExpect(status().isOk())
@@ -103,7 +136,7 @@ public class PaymentControllerTest {
         when(mockStripeService.processPayment(any(PaymentRequest.class))).thenReturn(mockResponse);
 
 
-        mockMvc.perform(post("/api/payments")
+        performAsync(post("/api/payments")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(request)))
                 .andExpect(status().isOk())
@@ -123,7 +156,7 @@ public class PaymentControllerTest {
         request.setCustomerEmail("error@example.com");
         request.setPreferredGateway("unknownGateway");
 
-        mockMvc.perform(post("/api/payments")
+        performAsync(post("/api/payments")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(request)))
                 .andExpect(status().isBadRequest())
@@ -144,7 +177,7 @@ public class PaymentControllerTest {
 
         when(mockStripeService.getPaymentStatus(anyString())).thenReturn(mockResponse);
 
-        mockMvc.perform(get("/api/payments/{transactionId}/status", transactionId)
+        performAsync(get("/api/payments/{transactionId}/status", transactionId)
                         .param("gatewayName", gatewayName))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.status").value("SUCCESS"))
@@ -157,7 +190,7 @@ public class PaymentControllerTest {
         String transactionId = UUID.randomUUID().toString();
         String gatewayName = "nonExistentGateway";
 
-        mockMvc.perform(get("/api/payments/{transactionId}/status", transactionId)
+        performAsync(get("/api/payments/{transactionId}/status", transactionId)
                         .param("gatewayName", gatewayName))
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.status").value("ERROR"))
@@ -172,17 +205,23 @@ public class PaymentControllerTest {
 
         PaymentResponse mockResponse = new PaymentResponse();
         mockResponse.setTransactionId(transactionId);
-        mockResponse.setStatus("REFUND_SUCCESS");
+        mockResponse.setStatus("PARTIALLY_REFUNDED");
         mockResponse.setGatewayName(gatewayName);
 
         when(mockRazorpayService.refundPayment(anyString(), any(BigDecimal.class))).thenReturn(mockResponse);
 
-        mockMvc.perform(post("/api/payments/{transactionId}/refund", transactionId)
+        performAsync(post("/api/payments/{transactionId}/refund", transactionId)
                         .param("gatewayName", gatewayName)
                         .param("amount", refundAmount.toPlainString()))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.status").value("REFUND_SUCCESS"))
+                .andExpect(jsonPath("$.status").value("PARTIALLY_REFUNDED"))
                 .andExpect(jsonPath("$.gatewayName").value(gatewayName))
                 .andExpect(jsonPath("$.transactionId").value(transactionId));
     }
+
+    // Controller endpoints return CompletableFuture: check the request went async, then dispatch its result
+    private ResultActions performAsync(RequestBuilder requestBuilder) throws Exception {
+        MvcResult mvcResult = mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+        return mockMvc.perform(asyncDispatch(mvcResult));
+    }
 }
@@ -0,0 +1,38 @@
+package com.example.multipaymentgateway.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoneyTest {
+
+    @Test
+    void toMinorUnits_shouldUseTheCurrencyExponent() {
+        assertEquals(1050, Money.toMinorUnits(new BigDecimal("10.50"), "USD"));
+        assertEquals(1050, Money.toMinorUnits(new BigDecimal("10.5"), "usd"));
+        assertEquals(500, Money.toMinorUnits(new BigDecimal("500"), "JPY"));
+        assertEquals(500, Money.toMinorUnits(new BigDecimal("500.00"), "jpy"));
+        assertEquals(1234, Money.toMinorUnits(new BigDecimal("1.234"), "KWD"));
+        assertEquals(1234, Money.toMinorUnits(new BigDecimal("1.234"), "Kwd"));
+        assertEquals(5_000_000_000L, Money.toMinorUnits(new BigDecimal("50000000.00"), "INR")); // Beyond int
+    }
+
+    @Test
+    void toMinorUnits_inexactOrOutOfRange_shouldThrowInsteadOfTruncating() {
+        assertThrows(IllegalArgumentException.class, () -> Money.toMinorUnits(new BigDecimal("10.005"), "USD"));
+        assertThrows(IllegalArgumentException.class, () -> Money.toMinorUnits(new BigDecimal("10.5"), "JPY"));
+        assertThrows(IllegalArgumentException.class, () -> Money.toMinorUnits(new BigDecimal("1E+20"), "USD"));
+        assertFalse(Money.isExact(new BigDecimal("1.2345"), "KWD"));
+        assertTrue(Money.isExact(new BigDecimal("1.2340"), "KWD"));
+    }
+
+    @Test
+    void normalize_shouldRestoreTheCurrencyScale() {
+        assertEquals("10.00", Money.normalize(new BigDecimal("10.0000"), "USD").toPlainString());
+        assertEquals("500", Money.normalize(new BigDecimal("500.0000"), "JPY").toPlainString());
+        assertEquals("10.5", Money.normalize(new BigDecimal("10.5"), "JPY").toPlainString()); // Would lose digits
+        assertEquals(new BigDecimal("1.234"), Money.of(new BigDecimal("1.2340"), "KWD").toBigDecimal());
+    }
+}
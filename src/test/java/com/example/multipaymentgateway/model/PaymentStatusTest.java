@@ -0,0 +1,48 @@
+package com.example.multipaymentgateway.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaymentStatusTest {
+
+    @Test
+    void fromCode_shouldRoundTripEveryStatusWithUniqueCodes() {
+        Set<Short> codes = new HashSet<>();
+        for (PaymentStatus status : PaymentStatus.values()) {
+            assertTrue(codes.add(status.getCode()), "duplicate code for " + status);
+            assertEquals(status, PaymentStatus.fromCode(status.getCode()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> PaymentStatus.fromCode(-1));
+        assertThrows(IllegalArgumentException.class, () -> PaymentStatus.fromCode(99));
+    }
+
+    @Test
+    void canTransitionTo_shouldFollowTheTransitionTable() {
+        assertTrue(PaymentStatus.PENDING.canTransitionTo(PaymentStatus.SUCCESS));
+        assertTrue(PaymentStatus.FAILED.canTransitionTo(PaymentStatus.SUCCESS));
+        assertTrue(PaymentStatus.SUCCESS.canTransitionTo(PaymentStatus.PARTIALLY_REFUNDED));
+        assertTrue(PaymentStatus.PARTIALLY_REFUNDED.canTransitionTo(PaymentStatus.REFUNDED));
+
+        assertFalse(PaymentStatus.REFUNDED.canTransitionTo(PaymentStatus.PENDING));
+        assertFalse(PaymentStatus.SUCCESS.canTransitionTo(PaymentStatus.FAILED));
+        assertFalse(PaymentStatus.PARTIALLY_REFUNDED.canTransitionTo(PaymentStatus.SUCCESS));
+        assertFalse(PaymentStatus.CANCELED.canTransitionTo(PaymentStatus.SUCCESS));
+        assertFalse(PaymentStatus.PENDING.canTransitionTo(PaymentStatus.REFUNDED)); // Nothing was taken yet
+        assertFalse(PaymentStatus.UNKNOWN.canTransitionTo(PaymentStatus.PARTIALLY_REFUNDED));
+        assertFalse(PaymentStatus.AUTHORIZED.canTransitionTo(PaymentStatus.REFUND_FAILED));
+        for (PaymentStatus status : PaymentStatus.values()) {
+            assertTrue(status.canTransitionTo(status), status + " should be allowed to stay put");
+        }
+    }
+
+    @Test
+    void parse_shouldIgnoreCaseAndRejectUnknownNames() {
+        assertEquals(PaymentStatus.PENDING_USER_ACTION, PaymentStatus.parse(" pending_user_action "));
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> PaymentStatus.parse("CAPTURED"));
+        assertEquals("Unknown payment status: CAPTURED", exception.getMessage());
+    }
+}
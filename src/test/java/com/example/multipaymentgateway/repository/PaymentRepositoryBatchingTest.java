@@ -0,0 +1,166 @@
+package com.example.multipaymentgateway.repository;
+
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.util.ClassUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that payments are written with JDBC batching: N rows must cost ceil(N / batch_size) statement executions.
+ */
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=create-drop")
+@Import(PaymentRepositoryBatchingTest.StatementCountingConfig.class)
+public class PaymentRepositoryBatchingTest {
+
+    private static final Pattern INSERT_PAYMENTS = Pattern.compile("^\\s*insert\\s+into\\s+payments\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern UPDATE_PAYMENTS = Pattern.compile("^\\s*update\\s+payments\\b", Pattern.CASE_INSENSITIVE);
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private StatementCounter statementCounter;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size}")
+    private int batchSize;
+
+    @Test
+    void saveAll_shouldInsertPaymentsInJdbcBatches() {
+        int count = 2 * batchSize + 7;
+
+        statementCounter.reset();
+        paymentRepository.saveAll(payments(count));
+        entityManager.flush();
+
+        assertEquals(ceilDiv(count, batchSize), statementCounter.executions(INSERT_PAYMENTS));
+    }
+
+    @Test
+    void saveAll_shouldUpdatePaymentsInJdbcBatches() {
+        int count = batchSize + 1;
+        List<Payment> saved = paymentRepository.saveAll(payments(count));
+        entityManager.flush();
+
+        statementCounter.reset();
+        saved.forEach(payment -> payment.setStatus(PaymentStatus.SUCCESS));
+        paymentRepository.saveAll(saved);
+        entityManager.flush();
+
+        assertEquals(ceilDiv(count, batchSize), statementCounter.executions(UPDATE_PAYMENTS));
+    }
+
+    private static List<Payment> payments(int count) {
+        List<Payment> payments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Payment payment = new Payment();
+            payment.setTransactionId(UUID.randomUUID().toString());
+            payment.setPaymentGateway("stripe");
+            payment.setAmount(new BigDecimal("10.00"));
+            payment.setCurrency("USD");
+            payment.setStatus(PaymentStatus.PENDING);
+            payments.add(payment);
+        }
+        return payments;
+    }
+
+    private static int ceilDiv(int x, int y) {
+        return (x + y - 1) / y;
+    }
+
+    @TestConfiguration
+    static class StatementCountingConfig {
+
+        @Bean
+        static StatementCounter statementCounter() {
+            return new StatementCounter();
+        }
+    }
+
+    /**
+     * Wraps the DataSource and records the SQL of every executed prepared statement; an
+     * {@code executeBatch} counts once, however many rows it carries.
+     */
+    static class StatementCounter implements BeanPostProcessor {
+
+        private final List<String> executedSql = Collections.synchronizedList(new ArrayList<>());
+
+        void reset() {
+            executedSql.clear();
+        }
+
+        long executions(Pattern sql) {
+            synchronized (executedSql) {
+                return executedSql.stream().filter(s -> sql.matcher(s).find()).count();
+            }
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof DataSource dataSource) {
+                return proxy(dataSource, ClassUtils.getAllInterfaces(dataSource), (method, result, args) ->
+                        result instanceof Connection connection ? wrap(connection) : result);
+            }
+            return bean;
+        }
+
+        private Connection wrap(Connection connection) {
+            return (Connection) proxy(connection, new Class<?>[]{Connection.class}, (method, result, args) ->
+                    result instanceof PreparedStatement statement && args != null && args.length > 0 && args[0] instanceof String sql
+                            ? wrap(statement, sql)
+                            : result);
+        }
+
+        private PreparedStatement wrap(PreparedStatement statement, String sql) {
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().startsWith("execute") && (args == null || args.length == 0)) {
+                            executedSql.add(sql);
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private Object proxy(Object target, Class<?>[] interfaces, ResultMapper mapper) {
+            return Proxy.newProxyInstance(getClass().getClassLoader(), interfaces,
+                    (proxy, method, args) -> mapper.map(method, invoke(target, method, args), args));
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private interface ResultMapper {
+            Object map(Method method, Object result, Object[] args);
+        }
+    }
+}
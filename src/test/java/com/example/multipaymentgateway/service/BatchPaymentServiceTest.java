@@ -0,0 +1,157 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.dto.BatchPaymentResponse;
+import com.example.multipaymentgateway.dto.PaymentRequest;
+import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.exception.PaymentProcessingException;
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BatchPaymentServiceTest {
+
+    @Mock
+    private PaymentRecordService paymentRecordService;
+
+    @Mock
+    private PaymentGateway stripeGateway;
+
+    private BatchPaymentService batchPaymentService;
+
+    @BeforeEach
+    void setUp() {
+        MockEnvironment environment = new MockEnvironment().withProperty("payments.batch.max-concurrency.stripe", "2");
+        batchPaymentService = new BatchPaymentService(paymentRecordService,
+                Validation.buildDefaultValidatorFactory().getValidator(), environment, 100, 8, Duration.ofSeconds(10));
+        lenient().when(stripeGateway.getGatewayName()).thenReturn("stripe");
+        lenient().when(stripeGateway.preparePayment(any(PaymentRequest.class))).thenAnswer(invocation -> {
+            Payment payment = new Payment();
+            payment.setTransactionId("txn-" + ((PaymentRequest) invocation.getArgument(0)).getDescription());
+            return payment;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchPaymentService.shutdown();
+    }
+
+    @Test
+    void processBatch_failingItems_shouldNotFailTheBatch() {
+        PaymentRequest invalid = request("invalid");
+        invalid.setAmount(null);
+        PaymentRequest unknownGateway = request("unknown");
+        unknownGateway.setPreferredGateway("unknown");
+
+        when(stripeGateway.processPendingPayment(eq("txn-ok"), any())).thenReturn(response("txn-ok", "SUCCESS"));
+        when(stripeGateway.processPendingPayment(eq("txn-declined"), any()))
+                .thenThrow(new PaymentProcessingException("Card declined", "txn-declined", "stripe"));
+
+        BatchPaymentResponse response = batchPaymentService.processBatch(
+                List.of(request("ok"), invalid, unknownGateway, request("declined")),
+                paymentRequest -> "unknown".equals(paymentRequest.getPreferredGateway()) ? null : stripeGateway);
+
+        assertEquals(4, response.getTotal());
+        assertEquals(1, response.getSucceeded());
+        assertEquals(3, response.getFailed());
+        assertTrue(response.getResults().get(0).isSuccess());
+        assertEquals("txn-ok", response.getResults().get(0).getPayment().getTransactionId());
+        assertTrue(response.getResults().get(1).getError().contains("amount"));
+        assertEquals("Invalid or unsupported payment gateway specified.", response.getResults().get(2).getError());
+        assertEquals("Card declined", response.getResults().get(3).getError());
+        assertEquals("txn-declined", response.getResults().get(3).getPayment().getTransactionId());
+
+        // Only the two valid items are recorded, in a single batch
+        verify(paymentRecordService, times(1)).createPendingBatch(argThat(payments -> payments.size() == 2));
+    }
+
+    @Test
+    void processBatch_shouldRespectPerGatewayConcurrencyLimit() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(stripeGateway.processPendingPayment(anyString(), any())).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return response(invocation.getArgument(0), "SUCCESS");
+        });
+
+        List<PaymentRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            requests.add(request(String.valueOf(i)));
+        }
+        BatchPaymentResponse response = batchPaymentService.processBatch(requests, paymentRequest -> stripeGateway);
+
+        assertEquals(10, response.getSucceeded());
+        assertTrue(maxInFlight.get() <= 2, "at most 2 concurrent calls expected, saw " + maxInFlight.get());
+    }
+
+    @Test
+    void processBatch_timeout_shouldReportRunningItemsPendingAndFailItemsNeverSent() throws Exception {
+        MockEnvironment environment = new MockEnvironment().withProperty("payments.batch.max-concurrency.stripe", "1");
+        BatchPaymentService slowBatches = new BatchPaymentService(paymentRecordService,
+                Validation.buildDefaultValidatorFactory().getValidator(), environment, 100, 8, Duration.ofMillis(200));
+        CountDownLatch release = new CountDownLatch(1);
+        when(stripeGateway.processPendingPayment(eq("txn-slow"), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return response("txn-slow", "SUCCESS");
+        });
+
+        try {
+            BatchPaymentResponse response = slowBatches.processBatch(List.of(request("slow"), request("queued")), paymentRequest -> stripeGateway);
+
+            assertEquals(1, response.getPending());
+            assertEquals(1, response.getFailed());
+            assertTrue(response.getResults().get(0).isPending());
+            assertEquals("txn-slow", response.getResults().get(0).getPayment().getTransactionId());
+            assertEquals("PENDING", response.getResults().get(0).getPayment().getStatus());
+            assertFalse(response.getResults().get(1).isPending());
+            assertEquals("FAILED", response.getResults().get(1).getPayment().getStatus());
+            verify(paymentRecordService).updateStatus("txn-queued", PaymentStatus.FAILED);
+        } finally {
+            release.countDown();
+            slowBatches.shutdown();
+        }
+        Thread.sleep(100); // Let the pool pick up the queued item, which must not reach the gateway
+        verify(stripeGateway, never()).processPendingPayment(eq("txn-queued"), any());
+    }
+
+    private static PaymentRequest request(String description) {
+        PaymentRequest request = new PaymentRequest();
+        request.setAmount(new BigDecimal("10.00"));
+        request.setCurrency("USD");
+        request.setPaymentMethod("card");
+        request.setCustomerEmail("batch@example.com");
+        request.setPreferredGateway("stripe");
+        request.setDescription(description);
+        return request;
+    }
+
+    private static PaymentResponse response(String transactionId, String status) {
+        PaymentResponse response = new PaymentResponse();
+        response.setTransactionId(transactionId);
+        response.setStatus(status);
+        response.setGatewayName("stripe");
+        return response;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.exception.PaymentProcessingException;
+import com.razorpay.RazorpayException;
+import com.stripe.exception.ApiConnectionException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import org.junit.jupiter.api.Test;
+
+import java.net.SocketTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GatewayFailurePredicateTest {
+
+    private final GatewayFailurePredicate predicate = new GatewayFailurePredicate();
+
+    @Test
+    void test_connectionErrors_shouldCountAsFailures() {
+        assertTrue(predicate.test(new PaymentProcessingException("Stripe payment failed", new ApiConnectionException("connect timed out"))));
+        assertTrue(predicate.test(new PaymentProcessingException("Unexpected error", new SocketTimeoutException("read timed out"))));
+        assertTrue(predicate.test(new PaymentProcessingException("Razorpay payment failed", new RazorpayException("SERVER_ERROR:The server encountered an error"))));
+    }
+
+    @Test
+    void test_clientAndStateErrors_shouldNotCountAsFailures() {
+        assertFalse(predicate.test(new PaymentProcessingException("Razorpay payment failed", new RazorpayException("BAD_REQUEST_ERROR:Invalid amount"))));
+        assertFalse(predicate.test(new PaymentProcessingException("Cannot refund: Payment txn-1 is not in a refundable state")));
+        assertFalse(predicate.test(BulkheadFullException.createBulkheadFullException(Bulkhead.ofDefaults("stripe"))));
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.multipaymentgateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GatewayHttpClientsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private GatewayHttpClients gatewayHttpClients;
+
+    @BeforeEach
+    void setUp() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("payments.http.connect-timeout", "1s")
+                .withProperty("payments.http.read-timeout", "10s")
+                .withProperty("payments.http.razorpay.read-timeout", "20s");
+        environment.setConversionService(new ApplicationConversionService()); // As Spring Boot sets up the real one
+        gatewayHttpClients = new GatewayHttpClients(environment, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        gatewayHttpClients.close();
+    }
+
+    @Test
+    void forGateway_shouldApplyPerGatewayOverridesOnTopOfSharedSettings() {
+        OkHttpClient stripe = gatewayHttpClients.forGateway("stripe");
+        OkHttpClient razorpay = gatewayHttpClients.forGateway("razorpay");
+
+        assertSame(stripe, gatewayHttpClients.forGateway("stripe"));
+        assertNotSame(stripe.connectionPool(), razorpay.connectionPool());
+        assertEquals(1000, stripe.connectTimeoutMillis());
+        assertEquals(1000, razorpay.connectTimeoutMillis());
+        assertEquals(10_000, stripe.readTimeoutMillis());
+        assertEquals(20_000, razorpay.readTimeoutMillis());
+        assertEquals(40_000, stripe.callTimeoutMillis()); // Default
+    }
+
+    @Test
+    void forGateway_shouldPublishPoolMetricsPerGateway() {
+        gatewayHttpClients.forGateway("stripe");
+
+        assertFalse(meterRegistry.find("payment.gateway.http.pool.connection.count").tag("gateway", "stripe").gauges().isEmpty());
+        assertEquals(0, meterRegistry.get("payment.gateway.http.calls.active").tag("gateway", "stripe").gauge().value());
+        assertEquals(0, meterRegistry.get("payment.gateway.http.connections.opened").tag("gateway", "stripe").counter().count());
+    }
+}
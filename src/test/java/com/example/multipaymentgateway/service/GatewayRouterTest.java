@@ -0,0 +1,84 @@
+package com.example.multipaymentgateway.service;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class GatewayRouterTest {
+
+    @Mock
+    private PaymentGateway stripeGateway;
+
+    @Mock
+    private PaymentGateway razorpayGateway;
+
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    private GatewayRouter gatewayRouter;
+
+    @BeforeEach
+    void setUp() {
+        when(stripeGateway.getGatewayName()).thenReturn("stripe");
+        when(razorpayGateway.getGatewayName()).thenReturn("razorpay");
+        lenient().when(stripeGateway.supportsCurrency(anyString())).thenReturn(true);
+        lenient().when(razorpayGateway.supportsCurrency(anyString())).thenAnswer(invocation -> "INR".equals(invocation.getArgument(0)));
+
+        Map<String, PaymentGateway> gateways = new LinkedHashMap<>();
+        gateways.put("stripeService", stripeGateway);
+        gateways.put("razorpayService", razorpayGateway);
+        circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        gatewayRouter = new GatewayRouter(gateways, circuitBreakerRegistry, new SimpleMeterRegistry(), "stripeService", 0.5, 0.5, 0.0);
+    }
+
+    @Test
+    void select_noMeasurements_shouldPreferDefaultGateway() {
+        assertSame(stripeGateway, gatewayRouter.select("INR"));
+    }
+
+    @Test
+    void select_shouldPreferFasterGateway() {
+        circuitBreakerRegistry.circuitBreaker("stripe").onSuccess(400, TimeUnit.MILLISECONDS);
+        circuitBreakerRegistry.circuitBreaker("razorpay").onSuccess(100, TimeUnit.MILLISECONDS);
+
+        assertSame(razorpayGateway, gatewayRouter.select("INR"));
+    }
+
+    @Test
+    void select_shouldSkipGatewaysThatDoNotSupportTheCurrency() {
+        circuitBreakerRegistry.circuitBreaker("stripe").onSuccess(400, TimeUnit.MILLISECONDS);
+        circuitBreakerRegistry.circuitBreaker("razorpay").onSuccess(100, TimeUnit.MILLISECONDS);
+
+        assertSame(stripeGateway, gatewayRouter.select("USD"));
+    }
+
+    @Test
+    void select_shouldFailOverWhenGatewayDegrades() {
+        circuitBreakerRegistry.circuitBreaker("stripe").onSuccess(400, TimeUnit.MILLISECONDS);
+        circuitBreakerRegistry.circuitBreaker("razorpay").onSuccess(100, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 3; i++) {
+            circuitBreakerRegistry.circuitBreaker("razorpay").onError(100, TimeUnit.MILLISECONDS, new IOException("timeout"));
+        }
+        assertSame(stripeGateway, gatewayRouter.select("INR"), "low success rate");
+
+        circuitBreakerRegistry.circuitBreaker("stripe").transitionToOpenState();
+        assertSame(stripeGateway, gatewayRouter.select("INR"), "nothing healthy: first supporting gateway answers");
+
+        circuitBreakerRegistry.circuitBreaker("stripe").transitionToClosedState();
+        circuitBreakerRegistry.circuitBreaker("razorpay").transitionToOpenState();
+        assertSame(stripeGateway, gatewayRouter.select("INR"), "open circuit");
+    }
+}
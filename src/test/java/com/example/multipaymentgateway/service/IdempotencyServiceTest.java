@@ -0,0 +1,196 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.dto.PaymentRequest;
+import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.exception.IdempotencyKeyConflictException;
+import com.example.multipaymentgateway.exception.PaymentProcessingException;
+import com.example.multipaymentgateway.model.IdempotencyRecord;
+import com.example.multipaymentgateway.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    private IdempotencyService idempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new IdempotencyService(idempotencyRecordRepository, new ObjectMapper().findAndRegisterModules(),
+                100, Duration.ofMinutes(10), Duration.ofSeconds(5), Duration.ofMinutes(2), Duration.ofHours(24));
+    }
+
+    @Test
+    void execute_replayedKey_shouldReturnStoredResponseWithoutRunningActionAgain() {
+        when(idempotencyRecordRepository.findByIdempotencyKey(anyString())).thenReturn(Optional.empty());
+        when(idempotencyRecordRepository.saveAndFlush(any(IdempotencyRecord.class))).thenAnswer(inv -> inv.getArgument(0));
+        AtomicInteger calls = new AtomicInteger();
+        PaymentRequest request = paymentRequest("100.00");
+
+        ResponseEntity<PaymentResponse> first = idempotencyService.execute("key-1", request, () -> {
+            calls.incrementAndGet();
+            return ResponseEntity.ok(paymentResponse("txn-1"));
+        });
+        clearInvocations(idempotencyRecordRepository);
+
+        ResponseEntity<PaymentResponse> replay = idempotencyService.execute("key-1", paymentRequest("100.00"), () -> {
+            calls.incrementAndGet();
+            return ResponseEntity.ok(paymentResponse("txn-2"));
+        });
+
+        assertEquals(1, calls.get());
+        assertEquals("txn-1", first.getBody().getTransactionId());
+        assertEquals("txn-1", replay.getBody().getTransactionId());
+        assertEquals("true", replay.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        verifyNoInteractions(idempotencyRecordRepository);
+    }
+
+    @Test
+    void execute_sameKeyDifferentPayload_shouldThrowConflict() {
+        when(idempotencyRecordRepository.findByIdempotencyKey(anyString())).thenReturn(Optional.empty());
+        when(idempotencyRecordRepository.saveAndFlush(any(IdempotencyRecord.class))).thenAnswer(inv -> inv.getArgument(0));
+        idempotencyService.execute("key-2", paymentRequest("100.00"), () -> ResponseEntity.ok(paymentResponse("txn-1")));
+
+        assertThrows(IdempotencyKeyConflictException.class, () ->
+                idempotencyService.execute("key-2", paymentRequest("200.00"), () -> ResponseEntity.ok(paymentResponse("txn-2"))));
+    }
+
+    @Test
+    void execute_concurrentDuplicate_shouldWaitForFirstRequest() throws Exception {
+        when(idempotencyRecordRepository.findByIdempotencyKey(anyString())).thenReturn(Optional.empty());
+        when(idempotencyRecordRepository.saveAndFlush(any(IdempotencyRecord.class))).thenAnswer(inv -> inv.getArgument(0));
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<ResponseEntity<PaymentResponse>> first = CompletableFuture.supplyAsync(() ->
+                idempotencyService.execute("key-3", paymentRequest("100.00"), () -> {
+                    calls.incrementAndGet();
+                    firstStarted.countDown();
+                    await(releaseFirst);
+                    return ResponseEntity.ok(paymentResponse("txn-1"));
+                }));
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<ResponseEntity<PaymentResponse>> duplicate = CompletableFuture.supplyAsync(() ->
+                idempotencyService.execute("key-3", paymentRequest("100.00"), () -> {
+                    calls.incrementAndGet();
+                    return ResponseEntity.ok(paymentResponse("txn-2"));
+                }));
+        releaseFirst.countDown();
+
+        assertEquals("txn-1", first.get(5, TimeUnit.SECONDS).getBody().getTransactionId());
+        assertEquals("txn-1", duplicate.get(5, TimeUnit.SECONDS).getBody().getTransactionId());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void execute_actionFails_shouldStoreTheFailureAsTheKeysResult() {
+        when(idempotencyRecordRepository.findByIdempotencyKey(anyString())).thenReturn(Optional.empty());
+        when(idempotencyRecordRepository.saveAndFlush(any(IdempotencyRecord.class))).thenAnswer(inv -> inv.getArgument(0));
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(PaymentProcessingException.class, () -> idempotencyService.execute("key-4", paymentRequest("100.00"), () -> {
+            calls.incrementAndGet();
+            throw new PaymentProcessingException("Read timed out", "txn-1", "stripe");
+        }));
+        ResponseEntity<PaymentResponse> retry = idempotencyService.execute("key-4", paymentRequest("100.00"), () -> {
+            calls.incrementAndGet();
+            return ResponseEntity.ok(paymentResponse("txn-2"));
+        });
+
+        assertEquals(1, calls.get()); // The first attempt may have charged, so the retry must not run again
+        assertEquals(500, retry.getStatusCode().value());
+        assertEquals("PAYMENT_ERROR", retry.getBody().getStatus());
+        assertEquals("txn-1", retry.getBody().getTransactionId());
+        verify(idempotencyRecordRepository).save(argThat(record -> IdempotencyRecord.STATUS_COMPLETED.equals(record.getStatus())
+                && record.getResponseStatusCode() == 500));
+        verify(idempotencyRecordRepository, never()).deleteInProgress(anyString());
+    }
+
+    @Test
+    void execute_rejectedBeforeGatewayCall_shouldReleaseKey() {
+        when(idempotencyRecordRepository.findByIdempotencyKey(anyString())).thenReturn(Optional.empty());
+        when(idempotencyRecordRepository.saveAndFlush(any(IdempotencyRecord.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        assertThrows(RejectedExecutionException.class, () -> idempotencyService.execute("key-5", paymentRequest("100.00"), () -> {
+            throw new RejectedExecutionException("executor saturated");
+        }));
+        verify(idempotencyRecordRepository).deleteInProgress("key-5");
+    }
+
+    @Test
+    void execute_keyLeftInProgressPastItsLease_shouldBeTakenOverAndRun() {
+        PaymentRequest request = paymentRequest("100.00");
+        when(idempotencyRecordRepository.saveAndFlush(any(IdempotencyRecord.class))).thenAnswer(inv -> inv.getArgument(0));
+        idempotencyService.execute("key-other", request, () -> ResponseEntity.ok(paymentResponse("txn-0")));
+        ArgumentCaptor<IdempotencyRecord> earlier = ArgumentCaptor.forClass(IdempotencyRecord.class);
+        verify(idempotencyRecordRepository).saveAndFlush(earlier.capture());
+        // Claimed for the same payload by an instance that died: never completed, and its lease has run out
+        IdempotencyRecord abandoned = new IdempotencyRecord();
+        abandoned.setIdempotencyKey("key-6");
+        abandoned.setRequestHash(earlier.getValue().getRequestHash());
+        abandoned.setStatus(IdempotencyRecord.STATUS_IN_PROGRESS);
+        abandoned.setLeaseExpiresAt(LocalDateTime.now().minusMinutes(1));
+        when(idempotencyRecordRepository.findByIdempotencyKey("key-6")).thenReturn(Optional.of(abandoned));
+        when(idempotencyRecordRepository.takeOverExpiredLease(eq("key-6"), any(), any())).thenReturn(1);
+
+        ResponseEntity<PaymentResponse> response = idempotencyService.execute("key-6", request, () -> ResponseEntity.ok(paymentResponse("txn-1")));
+
+        assertEquals("txn-1", response.getBody().getTransactionId());
+        assertNull(response.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        verify(idempotencyRecordRepository).save(argThat(record -> "key-6".equals(record.getIdempotencyKey())
+                && IdempotencyRecord.STATUS_COMPLETED.equals(record.getStatus())));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static PaymentRequest paymentRequest(String amount) {
+        PaymentRequest request = new PaymentRequest();
+        request.setAmount(new BigDecimal(amount));
+        request.setCurrency("USD");
+        request.setPaymentMethod("card");
+        request.setCustomerEmail("test@example.com");
+        return request;
+    }
+
+    private static PaymentResponse paymentResponse(String transactionId) {
+        PaymentResponse response = new PaymentResponse();
+        response.setTransactionId(transactionId);
+        response.setStatus("SUCCESS");
+        response.setGatewayName("stripe");
+        return response;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.exception.PaymentProcessingException;
+import com.stripe.net.RequestOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MerchantCredentialRegistryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MerchantCredentialRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("stripe.secret.key", "sk_test_global")
+                .withProperty("razorpay.api.key", "YOUR_RAZORPAY_KEY_ID")
+                .withProperty("razorpay.api.secret", "YOUR_RAZORPAY_KEY_SECRET")
+                .withProperty("payments.merchants.acme.stripe-secret-key", "sk_test_acme")
+                .withProperty("payments.merchants.acme.razorpay-key-id", "rzp_test_acme")
+                .withProperty("payments.merchants.acme.razorpay-key-secret", "acme_secret");
+        registry = new MerchantCredentialRegistry(environment, meterRegistry, 100, Duration.ofHours(1));
+    }
+
+    @Test
+    void stripeOptions_shouldCarryEachMerchantsKeyAndBeBuiltOnce() {
+        RequestOptions acme = registry.stripeOptions("acme");
+
+        assertEquals("sk_test_acme", acme.getApiKey());
+        assertSame(acme, registry.stripeOptions("acme"));
+        assertEquals("sk_test_global", registry.stripeOptions(null).getApiKey()); // Default merchant
+        assertSame(registry.stripeOptions(null), registry.stripeOptions(MerchantCredentialRegistry.DEFAULT_MERCHANT));
+        assertEquals(3, meterRegistry.get("cache.gets").tag("cache", "merchant.clients.stripe").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void stripeOptions_withIdempotencyKey_shouldAddItWithoutChangingTheCachedOptions() {
+        RequestOptions create = registry.stripeOptions("acme", "txn-1");
+
+        assertEquals("sk_test_acme", create.getApiKey());
+        assertEquals("txn-1", create.getIdempotencyKey());
+        assertNull(registry.stripeOptions("acme").getIdempotencyKey());
+    }
+
+    @Test
+    void razorpayClient_missingOrPlaceholderKeys_shouldThrow() {
+        assertSame(registry.razorpayClient("acme"), registry.razorpayClient("acme"));
+        assertThrows(PaymentProcessingException.class, () -> registry.razorpayClient(null));
+        assertThrows(PaymentProcessingException.class, () -> registry.stripeOptions("unknown"));
+
+        assertTrue(registry.isRazorpayConfigured()); // Through acme
+        assertFalse(registry.isRazorpayConfigured(null));
+        assertFalse(registry.isStripeConfigured("unknown"));
+    }
+}
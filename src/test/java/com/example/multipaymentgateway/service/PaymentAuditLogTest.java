@@ -0,0 +1,109 @@
+package com.example.multipaymentgateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaymentAuditLogTest {
+
+    @TempDir
+    Path directory;
+
+    private PaymentAuditLog auditLog;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (auditLog != null) {
+            auditLog.close();
+        }
+    }
+
+    @Test
+    void history_shouldReturnOnlyTheTransactionsPayloadsInOrder() throws Exception {
+        auditLog = open(DataSize.ofMegabytes(1), 100);
+        auditLog.record("txn-1", "stripe", "payment_intent.create.request", "{\"amount\":1000}");
+        auditLog.record("txn-2", "razorpay", "orders.create.request", "{\"amount\":500}");
+        auditLog.record("txn-1", "stripe", "payment_intent.create.response", "{\"id\":\"pi_1\",\"client_secret\": \"pi_1_secret_abc\"}");
+        assertTrue(auditLog.history("txn-1").isEmpty()); // Nothing is written until the flush
+
+        auditLog.flush();
+
+        List<PaymentAuditEntry> history = auditLog.history("txn-1");
+        assertEquals(2, history.size());
+        assertEquals("payment_intent.create.request", history.get(0).type());
+        assertEquals("stripe", history.get(1).gateway());
+        assertEquals("{\"id\":\"pi_1\",\"client_secret\": \"[redacted]\"}", history.get(1).payload());
+        assertEquals(1, auditLog.history("txn-2").size());
+        assertTrue(auditLog.history("txn-3").isEmpty());
+    }
+
+    @Test
+    void flush_shouldRollSegmentsBySizeAndReadAcrossThem() throws Exception {
+        auditLog = open(DataSize.ofBytes(256), 100);
+        for (int i = 0; i < 20; i++) {
+            auditLog.record("txn-1", "stripe", "webhook.payment_intent.succeeded", "{\"sequence\":" + i + "}");
+            auditLog.flush();
+        }
+
+        List<PaymentAuditEntry> history = auditLog.history("txn-1");
+        assertEquals(20, history.size());
+        assertEquals("{\"sequence\":19}", history.get(19).payload());
+        assertTrue(segmentFiles().size() > 1);
+    }
+
+    @Test
+    void open_shouldRebuildTheIndexAndDropATornRecord() throws Exception {
+        auditLog = open(DataSize.ofMegabytes(1), 100);
+        auditLog.record("txn-1", "razorpay", "orders.create.response", "{\"id\":\"order_1\"}");
+        auditLog.close();
+        // A crash in the middle of a write leaves part of a record at the end of the segment
+        Files.write(segmentFiles().get(0), new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        auditLog = open(DataSize.ofMegabytes(1), 100);
+        auditLog.record("txn-1", "razorpay", "payments.fetch.response", "{\"id\":\"pay_1\"}");
+        auditLog.flush();
+
+        List<PaymentAuditEntry> history = auditLog.history("txn-1");
+        assertEquals(2, history.size());
+        assertEquals("{\"id\":\"order_1\"}", history.get(0).payload());
+        assertEquals("{\"id\":\"pay_1\"}", history.get(1).payload());
+    }
+
+    @Test
+    void record_whenQueueIsFull_shouldDropAndCount() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        auditLog = new PaymentAuditLog(directory, DataSize.ofMegabytes(1), Duration.ofHours(1), Duration.ofDays(30), 1, meterRegistry);
+        auditLog.open();
+
+        auditLog.record("txn-1", "stripe", "refund.create.request", "{}");
+        auditLog.record("txn-1", "stripe", "refund.create.response", "{}");
+        auditLog.flush();
+
+        assertEquals(1, auditLog.history("txn-1").size());
+        assertEquals(1.0, meterRegistry.get("payment.audit.dropped").counter().count());
+    }
+
+    private PaymentAuditLog open(DataSize segmentMaxSize, int queueCapacity) throws Exception {
+        PaymentAuditLog log = new PaymentAuditLog(directory, segmentMaxSize, Duration.ofHours(1), Duration.ofDays(30),
+                queueCapacity, new SimpleMeterRegistry());
+        log.open();
+        return log;
+    }
+
+    private List<Path> segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.example.multipaymentgateway.repository.PaymentRepository;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.JsonNodeFeature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {"spring.jpa.hibernate.ddl-auto=create-drop", "payments.export.fetch-size=2"})
+@ImportAutoConfiguration(JdbcTemplateAutoConfiguration.class)
+@Import(PaymentExportService.class)
+public class PaymentExportServiceTest {
+
+    private static final PaymentSearchCriteria ALL = new PaymentSearchCriteria(null, null, null, null, null, null);
+
+    @Autowired
+    private PaymentExportService paymentExportService;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        paymentRepository.saveAll(List.of(
+                payment("txn-1", "stripe", "usd", PaymentStatus.SUCCESS, "order-1"),
+                payment("txn-2", "razorpay", "INR", PaymentStatus.PENDING, "order \"2\", gift"),
+                payment("txn-3", "stripe", "usd", PaymentStatus.PENDING, "order-3")));
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void export_csv_shouldWriteHeaderAndEscapedRowsAcrossFetches() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = paymentExportService.export(ALL, PaymentExportService.Format.CSV, false, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(3, rows);
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("transaction_id,gateway_transaction_id,"));
+        assertTrue(lines[1].startsWith("txn-1,,,order-1,stripe,SUCCESS,10.00,usd,"));
+        assertTrue(lines[2].contains(",\"order \"\"2\"\", gift\",razorpay,"));
+    }
+
+    @Test
+    void export_ndjsonGzipped_shouldWriteOneFilteredObjectPerLine() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = paymentExportService.export(new PaymentSearchCriteria(PaymentStatus.PENDING, null, null, null, null, null),
+                PaymentExportService.Format.NDJSON, true, out);
+
+        byte[] json;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            json = in.readAllBytes();
+        }
+        String[] lines = new String(json, StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, rows);
+        assertEquals(2, lines.length);
+        // Reads numbers as BigDecimal with their scale intact, so the exported 10.00 can be checked exactly
+        ObjectMapper objectMapper = new ObjectMapper()
+                .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+                .configure(JsonNodeFeature.STRIP_TRAILING_BIGDECIMAL_ZEROES, false);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertEquals("txn-2", first.get("transaction_id").asText());
+        assertEquals(new BigDecimal("10.00"), first.get("amount").decimalValue());
+        assertTrue(first.get("gateway_transaction_id").isNull());
+        assertEquals("txn-3", objectMapper.readTree(lines[1]).get("transaction_id").asText());
+    }
+
+    private static Payment payment(String transactionId, String gateway, String currency, PaymentStatus status, String orderId) {
+        Payment payment = new Payment();
+        payment.setTransactionId(transactionId);
+        payment.setPaymentGateway(gateway);
+        payment.setAmount(new BigDecimal("10.00"));
+        payment.setCurrency(currency);
+        payment.setStatus(status);
+        payment.setOrderId(orderId);
+        return payment;
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.PaymentOutboxEvent;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.example.multipaymentgateway.repository.PaymentOutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PaymentOutboxRelayTest {
+
+    @Mock
+    private PaymentOutboxRepository paymentOutboxRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private RecordingSink firstSink;
+    private RecordingSink secondSink;
+    private PaymentOutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        firstSink = new RecordingSink("first");
+        secondSink = new RecordingSink("second");
+        relay = new PaymentOutboxRelay(paymentOutboxRepository, List.of(firstSink, secondSink), meterRegistry, 2, 10);
+    }
+
+    @Test
+    void relay_shouldDeliverBatchesInOrderToEverySinkAndDeleteThem() {
+        when(paymentOutboxRepository.findAllByOrderByIdAsc(PageRequest.of(0, 2)))
+                .thenReturn(List.of(event(1L, PaymentStatus.PENDING), event(2L, PaymentStatus.SUCCESS)))
+                .thenReturn(List.of(event(3L, PaymentStatus.REFUNDED)));
+
+        relay.relay();
+
+        assertEquals(List.of(1L, 2L, 3L), firstSink.eventIds());
+        assertEquals(List.of(1L, 2L, 3L), secondSink.eventIds());
+        verify(paymentOutboxRepository).deleteAllByIdInBatch(List.of(1L, 2L));
+        verify(paymentOutboxRepository).deleteAllByIdInBatch(List.of(3L));
+        assertEquals(3.0, meterRegistry.get("payment.outbox.published").counter().count());
+        assertEquals(0.0, meterRegistry.get("payment.outbox.lag").gauge().value());
+    }
+
+    @Test
+    void relay_whenASinkFails_shouldKeepTheBatchAndRetryItNextRun() {
+        when(paymentOutboxRepository.findAllByOrderByIdAsc(PageRequest.of(0, 2)))
+                .thenReturn(List.of(event(1L, PaymentStatus.PENDING)));
+        secondSink.failNext = true;
+
+        relay.relay();
+
+        verify(paymentOutboxRepository, never()).deleteAllByIdInBatch(anyIterable());
+        assertEquals(1.0, meterRegistry.get("payment.outbox.failures").tag("sink", "second").counter().count());
+        assertTrue(meterRegistry.get("payment.outbox.lag").gauge().value() > 0); // Still waiting
+
+        relay.relay();
+
+        // At least once: the sink that had accepted the batch gets it again
+        assertEquals(List.of(1L, 1L), firstSink.eventIds());
+        assertEquals(List.of(1L), secondSink.eventIds());
+        verify(paymentOutboxRepository).deleteAllByIdInBatch(List.of(1L));
+    }
+
+    private static PaymentOutboxEvent event(long id, PaymentStatus status) {
+        PaymentOutboxEvent event = new PaymentOutboxEvent();
+        event.setId(id);
+        event.setTransactionId("txn-" + id);
+        event.setPaymentGateway("stripe");
+        event.setStatus(status);
+        event.setAmount(new BigDecimal("10.00"));
+        event.setCurrency("usd");
+        event.setOccurredAt(LocalDateTime.now().minusSeconds(5));
+        return event;
+    }
+
+    private static class RecordingSink implements PaymentEventSink {
+
+        private final String name;
+        private final List<PaymentStatusChangedEvent> received = new ArrayList<>();
+        private boolean failNext;
+
+        RecordingSink(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void publish(List<PaymentStatusChangedEvent> events) {
+            if (failNext) {
+                failNext = false;
+                throw new IllegalStateException("unavailable");
+            }
+            received.addAll(events);
+        }
+
+        @Override
+        public String getSinkName() {
+            return name;
+        }
+
+        List<Long> eventIds() {
+            return received.stream().map(PaymentStatusChangedEvent::eventId).toList();
+        }
+    }
+}
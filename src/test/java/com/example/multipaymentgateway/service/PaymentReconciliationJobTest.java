@@ -0,0 +1,154 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PaymentReconciliationJobTest {
+
+    private static final Set<PaymentStatus> STATUSES = Set.of(PaymentStatus.PENDING);
+
+    @Mock
+    private PaymentRecordService paymentRecordService;
+
+    @Mock
+    private PaymentStatusService paymentStatusService;
+
+    @Mock
+    private PaymentGateway stripeGateway;
+
+    private SimpleMeterRegistry meterRegistry;
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+    }
+
+    @Test
+    void reconcile_shouldWalkKeysetPagesAndApplyOneBatchPerPage() {
+        PaymentReconciliationJob job = job(RateLimiterConfig.custom().limitForPeriod(100).build(), 10);
+        when(paymentRecordService.findReconcilable(eq(STATUSES), eq(0L), any(), any(), eq(2)))
+                .thenReturn(List.of(payment(1L, "txn-1"), payment(2L, "txn-2")));
+        when(paymentRecordService.findReconcilable(eq(STATUSES), eq(2L), any(), any(), eq(2)))
+                .thenReturn(List.of(payment(3L, "txn-3")));
+        when(paymentRecordService.findReconcilable(eq(STATUSES), eq(3L), any(), any(), eq(2)))
+                .thenReturn(List.of());
+        PaymentStatusUpdate update = new PaymentStatusUpdate(null, "stripe", "txn-1", "pi_1", null, PaymentStatus.SUCCESS);
+        when(stripeGateway.reconcile(anyList(), any()))
+                .thenReturn(List.of(update))
+                .thenReturn(List.of());
+        Payment changed = payment(1L, "txn-1");
+        when(paymentRecordService.applyStatusUpdates(List.of(update))).thenReturn(List.of(changed));
+
+        job.reconcile();
+
+        verify(stripeGateway).reconcile(argThat(payments -> payments.size() == 2), any());
+        verify(stripeGateway).reconcile(argThat(payments -> payments.size() == 1), any());
+        verify(paymentRecordService, times(1)).applyStatusUpdates(anyList()); // The second page had nothing to write
+        verify(paymentStatusService).evict("stripe", "txn-1");
+        assertEquals(3.0, meterRegistry.get("payment.reconciliation.payments").counter().count());
+        assertEquals(1.0, meterRegistry.get("payment.reconciliation.updates").counter().count());
+
+        // The end of the table was reached, so the next run starts over
+        job.reconcile();
+        verify(paymentRecordService, times(2)).findReconcilable(eq(STATUSES), eq(0L), any(), any(), eq(2));
+    }
+
+    @Test
+    void reconcile_shouldStopAtMaxPagesAndContinueFromCursorOnNextRun() {
+        PaymentReconciliationJob job = job(RateLimiterConfig.custom().limitForPeriod(100).build(), 1);
+        when(paymentRecordService.findReconcilable(eq(STATUSES), eq(0L), any(), any(), eq(2)))
+                .thenReturn(List.of(payment(1L, "txn-1"), payment(2L, "txn-2")));
+        when(paymentRecordService.findReconcilable(eq(STATUSES), eq(2L), any(), any(), eq(2)))
+                .thenReturn(List.of());
+        when(stripeGateway.reconcile(anyList(), any())).thenReturn(List.of());
+
+        job.reconcile();
+        verify(paymentRecordService, never()).findReconcilable(eq(STATUSES), eq(2L), any(), any(), anyInt());
+
+        job.reconcile();
+        verify(paymentRecordService).findReconcilable(eq(STATUSES), eq(2L), any(), any(), eq(2));
+    }
+
+    @Test
+    void reconcile_shouldCapGatewayCallRate() {
+        // Two calls per (long) period and no waiting: the third remote call of the page is refused
+        PaymentReconciliationJob job = job(RateLimiterConfig.custom()
+                .limitForPeriod(2)
+                .limitRefreshPeriod(Duration.ofHours(1))
+                .timeoutDuration(Duration.ZERO)
+                .build(), 1);
+        when(paymentRecordService.findReconcilable(eq(STATUSES), eq(0L), any(), any(), eq(2)))
+                .thenReturn(List.of(payment(1L, "txn-1")));
+        when(stripeGateway.reconcile(anyList(), any())).thenAnswer(invocation -> {
+            Runnable beforeRemoteCall = invocation.getArgument(1);
+            for (int i = 0; i < 3; i++) {
+                beforeRemoteCall.run();
+            }
+            return List.of(new PaymentStatusUpdate(null, "stripe", "txn-1", "pi_1", null, PaymentStatus.SUCCESS));
+        });
+
+        job.reconcile();
+
+        // The page is left for the next sweep rather than partially applied
+        verify(paymentRecordService, never()).applyStatusUpdates(anyList());
+        assertEquals(0.0, meterRegistry.get("payment.reconciliation.payments").counter().count());
+    }
+
+    @Test
+    void reconcile_openCircuit_shouldLeaveThePageWithoutRecordingIntoTheBreaker() {
+        PaymentReconciliationJob job = job(RateLimiterConfig.custom().limitForPeriod(100).build(), 1);
+        circuitBreakerRegistry.circuitBreaker("stripe").transitionToOpenState();
+        when(paymentRecordService.findReconcilable(eq(STATUSES), eq(0L), any(), any(), eq(2)))
+                .thenReturn(List.of(payment(1L, "txn-1")));
+        when(stripeGateway.reconcile(anyList(), any())).thenAnswer(invocation -> {
+            Runnable beforeRemoteCall = invocation.getArgument(1);
+            beforeRemoteCall.run();
+            return List.of(new PaymentStatusUpdate(null, "stripe", "txn-1", "pi_1", null, PaymentStatus.SUCCESS));
+        });
+
+        job.reconcile();
+
+        verify(paymentRecordService, never()).applyStatusUpdates(anyList());
+        assertEquals(0, circuitBreakerRegistry.circuitBreaker("stripe").getMetrics().getNumberOfBufferedCalls());
+    }
+
+    private PaymentReconciliationJob job(RateLimiterConfig rateLimiterConfig, int maxPagesPerRun) {
+        RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(
+                Map.of(PaymentReconciliationJob.RATE_LIMITER_CONFIG, rateLimiterConfig));
+        return new PaymentReconciliationJob(paymentRecordService, paymentStatusService, Map.of("stripeService", stripeGateway),
+                rateLimiterRegistry, circuitBreakerRegistry, meterRegistry, STATUSES, 2, maxPagesPerRun, Duration.ofMinutes(2), Duration.ofDays(7));
+    }
+
+    private static Payment payment(long id, String transactionId) {
+        Payment payment = new Payment();
+        payment.setId(id);
+        payment.setTransactionId(transactionId);
+        payment.setPaymentGateway("stripe");
+        payment.setAmount(new BigDecimal("10.00"));
+        payment.setCurrency("usd");
+        payment.setStatus(PaymentStatus.PENDING);
+        return payment;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentOutboxEvent;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.example.multipaymentgateway.repository.PaymentOutboxRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that every status transition made through {@link PaymentRecordService} leaves exactly one outbox row.
+ */
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=create-drop")
+@Import(PaymentRecordService.class)
+public class PaymentRecordServiceOutboxTest {
+
+    @Autowired
+    private PaymentRecordService paymentRecordService;
+
+    @Autowired
+    private PaymentOutboxRepository paymentOutboxRepository;
+
+    @Test
+    void statusChanges_shouldEachWriteOneOutboxEvent() {
+        Payment payment = paymentRecordService.createPending(payment("txn-1"));
+        paymentRecordService.finalizePayment("txn-1", "pi_1", PaymentStatus.PENDING); // Gateway ID only, no transition
+        paymentRecordService.updateStatus("txn-1", PaymentStatus.SUCCESS);
+        paymentRecordService.applyStatusUpdates(List.of(
+                new PaymentStatusUpdate("evt_1", "stripe", null, "pi_1", null, PaymentStatus.REFUNDED),
+                new PaymentStatusUpdate("evt_2", "stripe", null, "pi_1", null, PaymentStatus.PENDING))); // Regression, skipped
+
+        List<PaymentOutboxEvent> events = paymentOutboxRepository.findAllByOrderByIdAsc(PageRequest.of(0, 10));
+        assertEquals(3, events.size());
+        assertNull(events.get(0).getPreviousStatus());
+        assertEquals(PaymentStatus.PENDING, events.get(0).getStatus());
+        assertEquals(PaymentStatus.PENDING, events.get(1).getPreviousStatus());
+        assertEquals(PaymentStatus.SUCCESS, events.get(1).getStatus());
+        assertEquals("pi_1", events.get(1).getGatewayTransactionId());
+        assertEquals(PaymentStatus.SUCCESS, events.get(2).getPreviousStatus());
+        assertEquals(PaymentStatus.REFUNDED, events.get(2).getStatus());
+        assertTrue(events.stream().allMatch(event -> payment.getTransactionId().equals(event.getTransactionId())));
+    }
+
+    private static Payment payment(String transactionId) {
+        Payment payment = new Payment();
+        payment.setTransactionId(transactionId);
+        payment.setPaymentGateway("stripe");
+        payment.setAmount(new BigDecimal("10.00"));
+        payment.setCurrency("usd");
+        return payment;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.example.multipaymentgateway.repository.PaymentRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=create-drop")
+@Import(PaymentRecordService.class)
+public class PaymentRecordServiceTest {
+
+    @Autowired
+    private PaymentRecordService paymentRecordService;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Test
+    void changeStatus_shouldReportEachOutcomeAndBumpVersionOnlyOnWrites() {
+        paymentRecordService.createPending(payment("txn-1"));
+
+        StatusChangeResult applied = paymentRecordService.changeStatus("txn-1", "pi_1", null, PaymentStatus.SUCCESS);
+        assertEquals(StatusChangeResult.Outcome.APPLIED, applied.outcome());
+        assertEquals(PaymentStatus.PENDING, applied.previousStatus());
+        assertTrue(applied.statusChanged());
+        assertEquals(1L, applied.payment().getVersion());
+
+        StatusChangeResult unchanged = paymentRecordService.changeStatus("txn-1", "pi_1", null, PaymentStatus.SUCCESS);
+        assertEquals(StatusChangeResult.Outcome.UNCHANGED, unchanged.outcome());
+
+        StatusChangeResult rejected = paymentRecordService.changeStatus("txn-1", null, null, PaymentStatus.PENDING);
+        assertEquals(StatusChangeResult.Outcome.REJECTED, rejected.outcome());
+        assertFalse(rejected.statusChanged());
+
+        Payment stored = paymentRepository.findByTransactionId("txn-1").orElseThrow();
+        assertEquals(PaymentStatus.SUCCESS, stored.getStatus());
+        assertEquals("pi_1", stored.getGatewayTransactionId());
+        assertEquals(1L, stored.getVersion());
+    }
+
+    @Test
+    void updateStatusIfUnchanged_staleStatusOrVersion_shouldNotWrite() {
+        paymentRecordService.createPending(payment("txn-2"));
+        LocalDateTime now = LocalDateTime.now();
+
+        assertEquals(1, paymentRepository.updateStatusIfUnchanged("txn-2", PaymentStatus.PENDING, 0L, PaymentStatus.AUTHORIZED, "pi_2", null, now));
+        // Both of these were read before the write above
+        assertEquals(0, paymentRepository.updateStatusIfUnchanged("txn-2", PaymentStatus.PENDING, 0L, PaymentStatus.FAILED, "pi_2", null, now));
+        assertEquals(0, paymentRepository.updateStatusIfUnchanged("txn-2", PaymentStatus.PENDING, 1L, PaymentStatus.FAILED, "pi_2", null, now));
+
+        Payment stored = paymentRepository.findByTransactionId("txn-2").orElseThrow();
+        assertEquals(PaymentStatus.AUTHORIZED, stored.getStatus());
+        assertEquals(1L, stored.getVersion());
+    }
+
+    private static Payment payment(String transactionId) {
+        Payment payment = new Payment();
+        payment.setTransactionId(transactionId);
+        payment.setPaymentGateway("stripe");
+        payment.setAmount(new BigDecimal("10.00"));
+        payment.setCurrency("usd");
+        return payment;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.dto.PaymentSearchResponse;
+import com.example.multipaymentgateway.dto.PaymentSummary;
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.example.multipaymentgateway.repository.PaymentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=create-drop")
+@Import(PaymentSearchService.class)
+public class PaymentSearchServiceTest {
+
+    private static final PaymentSearchCriteria ALL = new PaymentSearchCriteria(null, null, null, null, null, null);
+
+    @Autowired
+    private PaymentSearchService paymentSearchService;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        // Saved in one flush, so several rows may share a createdAt and only the id tells them apart
+        List<Payment> payments = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            payments.add(payment(i % 2 == 0 ? "stripe" : "razorpay", i < 3 ? PaymentStatus.SUCCESS : PaymentStatus.PENDING, i < 2 ? "order-1" : "order-" + i));
+        }
+        paymentRepository.saveAll(payments);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void search_shouldPageThroughAllRowsNewestFirstWithoutGapsOrDuplicates() {
+        List<String> expected = paymentRepository.findAll(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id")))
+                .stream().map(Payment::getTransactionId).toList();
+
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            PaymentSearchResponse page = paymentSearchService.search(ALL, cursor, 3);
+            page.getPayments().forEach(payment -> seen.add(payment.getTransactionId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(expected, seen);
+        assertEquals(3, pages);
+    }
+
+    @Test
+    void search_shouldApplyFilters() {
+        PaymentSearchResponse byOrder = paymentSearchService.search(new PaymentSearchCriteria(null, null, null, "order-1", null, null), null, 10);
+        assertEquals(2, byOrder.getPayments().size());
+        assertNull(byOrder.getNextCursor());
+
+        PaymentSearchResponse byStatusAndGateway = paymentSearchService.search(
+                new PaymentSearchCriteria(PaymentStatus.PENDING, "STRIPE", "usd", null, null, null), null, 10);
+        assertEquals(2, byStatusAndGateway.getPayments().size()); // Rows 4 and 6
+        for (PaymentSummary payment : byStatusAndGateway.getPayments()) {
+            assertEquals("PENDING", payment.getStatus());
+            assertEquals("stripe", payment.getGatewayName());
+        }
+    }
+
+    @Test
+    void search_invalidCursorOrLimit_shouldBeRejected() {
+        assertThrows(IllegalArgumentException.class, () -> paymentSearchService.search(ALL, "not-a-cursor", 10));
+        assertThrows(IllegalArgumentException.class, () -> paymentSearchService.search(ALL, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> paymentSearchService.search(ALL, null, 100_000));
+    }
+
+    private static Payment payment(String gateway, PaymentStatus status, String orderId) {
+        Payment payment = new Payment();
+        payment.setTransactionId(UUID.randomUUID().toString());
+        payment.setPaymentGateway(gateway);
+        payment.setAmount(new BigDecimal("10.00"));
+        payment.setCurrency("stripe".equals(gateway) ? "usd" : "INR");
+        payment.setStatus(status);
+        payment.setOrderId(orderId);
+        return payment;
+    }
+}
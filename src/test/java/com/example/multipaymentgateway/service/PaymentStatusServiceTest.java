@@ -0,0 +1,174 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class PaymentStatusServiceTest {
+
+    @Mock
+    private PaymentRecordService paymentRecordService;
+
+    @Mock
+    private PaymentGateway stripeGateway;
+
+    private SimpleMeterRegistry meterRegistry;
+    private PaymentStatusService paymentStatusService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        paymentStatusService = new PaymentStatusService(paymentRecordService, meterRegistry, 100, Duration.ofMinutes(1));
+        when(stripeGateway.getGatewayName()).thenReturn("stripe");
+    }
+
+    @Test
+    void getPaymentStatus_terminalPayment_shouldNotCallGateway() {
+        when(paymentRecordService.findByTransactionId("txn-1")).thenReturn(Optional.of(payment("txn-1", PaymentStatus.SUCCESS)));
+
+        PaymentResponse response = paymentStatusService.getPaymentStatus(stripeGateway, "txn-1");
+
+        assertEquals("SUCCESS", response.getStatus());
+        assertEquals("txn-1", response.getTransactionId());
+        verify(stripeGateway, never()).getPaymentStatus(anyString());
+        assertEquals(1.0, meterRegistry.get("payment.status.lookups").tag("source", "stored").counter().count());
+    }
+
+    @Test
+    void getPaymentStatus_pendingPayment_shouldServeRepeatLookupsFromCache() {
+        when(paymentRecordService.findByTransactionId("txn-2")).thenReturn(Optional.of(payment("txn-2", PaymentStatus.PENDING)));
+        when(stripeGateway.getPaymentStatus("txn-2")).thenReturn(response("txn-2", "PENDING"));
+
+        paymentStatusService.getPaymentStatus(stripeGateway, "txn-2");
+        PaymentResponse second = paymentStatusService.getPaymentStatus(stripeGateway, "txn-2");
+
+        assertEquals("PENDING", second.getStatus());
+        verify(stripeGateway, times(1)).getPaymentStatus("txn-2");
+        verify(paymentRecordService, times(1)).findByTransactionId("txn-2");
+        assertEquals(1.0, meterRegistry.get("payment.status.lookups").tag("source", "cache").counter().count());
+    }
+
+    @Test
+    void evict_shouldForceFreshLookup() {
+        when(paymentRecordService.findByTransactionId("txn-3")).thenReturn(Optional.of(payment("txn-3", PaymentStatus.PENDING)));
+        when(stripeGateway.getPaymentStatus("txn-3")).thenReturn(response("txn-3", "PENDING"));
+
+        paymentStatusService.getPaymentStatus(stripeGateway, "txn-3");
+        paymentStatusService.evict("stripe", "txn-3");
+        paymentStatusService.getPaymentStatus(stripeGateway, "txn-3");
+
+        verify(stripeGateway, times(2)).getPaymentStatus("txn-3");
+    }
+
+    @Test
+    void getPaymentStatus_concurrentLookups_shouldShareOneGatewayCall() throws Exception {
+        int callers = 8;
+        CountDownLatch release = new CountDownLatch(1);
+        when(paymentRecordService.findByTransactionId("txn-4")).thenReturn(Optional.of(payment("txn-4", PaymentStatus.PENDING)));
+        when(stripeGateway.getPaymentStatus("txn-4")).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return response("txn-4", "PENDING");
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<PaymentResponse>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> paymentStatusService.getPaymentStatus(stripeGateway, "txn-4")));
+            }
+            // Let the first call go only once everyone else is waiting on it
+            awaitCount("coalesced", callers - 1);
+            release.countDown();
+
+            for (Future<PaymentResponse> result : results) {
+                assertEquals("PENDING", result.get(5, TimeUnit.SECONDS).getStatus());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(stripeGateway, times(1)).getPaymentStatus("txn-4");
+        assertEquals(1.0, meterRegistry.get("payment.status.lookups").tag("source", "gateway").counter().count());
+    }
+
+    @Test
+    void refundPayment_shouldWaitForLookupInProgressOnSameTransaction() throws Exception {
+        CountDownLatch lookupStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(paymentRecordService.findByTransactionId("txn-5")).thenReturn(Optional.of(payment("txn-5", PaymentStatus.PENDING)));
+        when(stripeGateway.getPaymentStatus("txn-5")).thenAnswer(invocation -> {
+            lookupStarted.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return response("txn-5", "SUCCESS");
+        });
+        when(stripeGateway.refundPayment(eq("txn-5"), any())).thenReturn(response("txn-5", "REFUNDED"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<PaymentResponse> lookup = executor.submit(() -> paymentStatusService.getPaymentStatus(stripeGateway, "txn-5"));
+            assertTrue(lookupStarted.await(5, TimeUnit.SECONDS));
+            Future<PaymentResponse> refund = executor.submit(() -> paymentStatusService.refundPayment(stripeGateway, "txn-5", null));
+
+            verify(stripeGateway, after(200).never()).refundPayment(anyString(), any());
+            release.countDown();
+
+            assertEquals("SUCCESS", lookup.get(5, TimeUnit.SECONDS).getStatus());
+            assertEquals("REFUNDED", refund.get(5, TimeUnit.SECONDS).getStatus());
+        } finally {
+            executor.shutdownNow();
+        }
+        // The refund evicted the status cached by the lookup, so the next lookup goes back to the gateway
+        paymentStatusService.getPaymentStatus(stripeGateway, "txn-5");
+        verify(stripeGateway, times(2)).getPaymentStatus("txn-5");
+    }
+
+    private void awaitCount(String source, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get("payment.status.lookups").tag("source", source).counter().count() < expected) {
+            assertTrue(System.nanoTime() < deadline, "timed out waiting for " + expected + " " + source + " lookups");
+            Thread.sleep(5);
+        }
+    }
+
+    private static Payment payment(String transactionId, PaymentStatus status) {
+        Payment payment = new Payment();
+        payment.setTransactionId(transactionId);
+        payment.setGatewayTransactionId("pi_" + transactionId);
+        payment.setPaymentGateway("stripe");
+        payment.setAmount(new BigDecimal("10.00"));
+        payment.setCurrency("usd");
+        payment.setStatus(status);
+        payment.setUpdatedAt(LocalDateTime.now());
+        return payment;
+    }
+
+    private static PaymentResponse response(String transactionId, String status) {
+        PaymentResponse response = new PaymentResponse();
+        response.setTransactionId(transactionId);
+        response.setStatus(status);
+        response.setGatewayName("stripe");
+        return response;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.example.multipaymentgateway.model.ProcessedWebhookEvent;
+import com.example.multipaymentgateway.repository.PaymentOutboxRepository;
+import com.example.multipaymentgateway.repository.PaymentRepository;
+import com.example.multipaymentgateway.repository.ProcessedWebhookEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the batcher against the real processed_webhook_events table. Not transactional, so each submit and flush
+ * commits the way it does behind the webhook endpoints.
+ */
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=create-drop")
+@Import(PaymentRecordService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class PaymentStatusUpdateBatcherTest {
+
+    @Autowired
+    private PaymentRecordService paymentRecordService;
+
+    @Autowired
+    private ProcessedWebhookEventRepository processedWebhookEventRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private PaymentOutboxRepository paymentOutboxRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final PaymentStatusService paymentStatusService = mock(PaymentStatusService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // Nothing is rolled back, and the database is shared with the other JPA tests
+    @AfterEach
+    void cleanUp() {
+        processedWebhookEventRepository.deleteAll();
+        paymentOutboxRepository.deleteAll();
+        paymentRepository.deleteAll();
+    }
+
+    @Test
+    void submit_shouldRecordThePendingEventAndRejectItsRedelivery() {
+        PaymentStatusUpdateBatcher batcher = batcher(paymentRecordService);
+
+        assertTrue(batcher.submit(update("evt_1", "txn-submit")));
+        assertFalse(batcher.submit(update("evt_1", "txn-submit")));
+
+        List<ProcessedWebhookEvent> events = processedWebhookEventRepository.findAll();
+        assertEquals(1, events.size());
+        assertEquals("txn-submit", events.get(0).getTransactionId());
+        assertEquals(PaymentStatus.SUCCESS, events.get(0).getStatus());
+        assertNull(events.get(0).getAppliedAt());
+    }
+
+    @Test
+    void flush_shouldApplyPendingEventsAndMarkThemApplied() {
+        pending("txn-flush");
+        PaymentStatusUpdateBatcher batcher = batcher(paymentRecordService);
+        batcher.submit(update("evt_2", "txn-flush"));
+
+        batcher.flush();
+
+        assertEquals(PaymentStatus.SUCCESS, paymentRecordService.findByTransactionId("txn-flush").orElseThrow().getStatus());
+        assertNotNull(processedWebhookEventRepository.findAll().get(0).getAppliedAt());
+        verify(paymentStatusService).evict("stripe", "txn-flush");
+    }
+
+    @Test
+    void flush_failingBatch_shouldStayPendingAndBeCounted() {
+        PaymentRecordService failingRecords = mock(PaymentRecordService.class);
+        when(failingRecords.applyStatusUpdates(anyList())).thenThrow(new RuntimeException("Database unavailable"));
+        PaymentStatusUpdateBatcher batcher = batcher(failingRecords);
+        batcher.submit(update("evt_3", "txn-fail"));
+
+        batcher.flush();
+
+        assertNull(processedWebhookEventRepository.findAll().get(0).getAppliedAt());
+        assertEquals(1.0, meterRegistry.counter("payment.webhooks.apply.failures").count());
+        verifyNoInteractions(paymentStatusService);
+    }
+
+    private PaymentStatusUpdateBatcher batcher(PaymentRecordService records) {
+        return new PaymentStatusUpdateBatcher(records, paymentStatusService, processedWebhookEventRepository,
+                new TransactionTemplate(transactionManager), meterRegistry, 50);
+    }
+
+    private void pending(String transactionId) {
+        Payment payment = new Payment();
+        payment.setTransactionId(transactionId);
+        payment.setPaymentGateway("stripe");
+        payment.setAmount(new BigDecimal("10.00"));
+        payment.setCurrency("usd");
+        paymentRecordService.createPending(payment);
+    }
+
+    private static PaymentStatusUpdate update(String eventId, String transactionId) {
+        return new PaymentStatusUpdate(eventId, "stripe", transactionId, null, null, PaymentStatus.SUCCESS);
+    }
+}
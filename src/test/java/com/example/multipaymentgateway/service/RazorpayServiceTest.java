@@ -0,0 +1,211 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.razorpay.OrderClient;
+import com.razorpay.PaymentClient;
+import com.razorpay.RazorpayClient;
+import com.razorpay.Refund;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Counts the Razorpay round trips (via the {@code payment.gateway.remote} timer) and database reads each operation costs.
+ */
+@ExtendWith(MockitoExtension.class)
+public class RazorpayServiceTest {
+
+    @Mock
+    private PaymentRecordService paymentRecordService;
+
+    @Mock
+    private RazorpayClient razorpayClient;
+
+    @Mock
+    private OrderClient orderClient;
+
+    @Mock
+    private PaymentClient paymentClient;
+
+    @Mock
+    private PaymentAuditLog paymentAuditLog;
+
+    @Mock
+    private MerchantCredentialRegistry merchantCredentials;
+
+    private SimpleMeterRegistry meterRegistry;
+    private RazorpayService razorpayService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        razorpayService = new RazorpayService(paymentRecordService, new RandomTransactionIdGenerator(), new GatewayCallTimer(meterRegistry), paymentAuditLog, null, merchantCredentials);
+        razorpayClient.orders = orderClient;
+        razorpayClient.payments = paymentClient;
+        lenient().when(merchantCredentials.razorpayClient(any())).thenReturn(razorpayClient);
+        lenient().when(merchantCredentials.isRazorpayConfigured(any())).thenReturn(true);
+        lenient().when(paymentRecordService.updateStatus(anyString(), any()))
+                .thenAnswer(invocation -> payment(invocation.getArgument(0), "pay_1", "order_1", invocation.getArgument(1)));
+        lenient().when(paymentRecordService.finalizePayment(anyString(), any(), any(), any()))
+                .thenAnswer(invocation -> payment(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2), invocation.getArgument(3)));
+    }
+
+    @Test
+    void getPaymentStatus_withStoredPaymentId_shouldFetchThePaymentOnly() throws Exception {
+        stored(payment("txn-1", "pay_1", "order_1", PaymentStatus.AUTHORIZED));
+        when(paymentClient.fetch("pay_1")).thenReturn(new com.razorpay.Payment(new JSONObject().put("id", "pay_1").put("status", "captured")));
+
+        PaymentResponse response = razorpayService.getPaymentStatus("txn-1");
+
+        assertEquals("SUCCESS", response.getStatus());
+        assertEquals("pay_1", response.getGatewayTransactionId());
+        assertEquals(1, remoteCalls());
+        verifyNoInteractions(orderClient);
+    }
+
+    @Test
+    void getPaymentStatus_withStoredPaymentIdAndUnchangedStatus_shouldNotWrite() throws Exception {
+        stored(payment("txn-1", "pay_1", "order_1", PaymentStatus.SUCCESS));
+        when(paymentClient.fetch("pay_1")).thenReturn(new com.razorpay.Payment(new JSONObject().put("id", "pay_1").put("status", "captured")));
+
+        razorpayService.getPaymentStatus("txn-1");
+
+        assertEquals(1, remoteCalls());
+        verify(paymentRecordService, never()).updateStatus(anyString(), any());
+    }
+
+    @Test
+    void getPaymentStatus_withOrderIdOnly_shouldMakeOneCallAndStoreThePaymentId() throws Exception {
+        stored(payment("txn-1", null, "order_1", PaymentStatus.AUTHORIZED));
+        when(orderClient.fetchPayments("order_1")).thenReturn(List.of(
+                new com.razorpay.Payment(new JSONObject().put("id", "pay_0").put("status", "failed")),
+                new com.razorpay.Payment(new JSONObject().put("id", "pay_1").put("status", "captured"))));
+
+        PaymentResponse response = razorpayService.getPaymentStatus("txn-1");
+
+        assertEquals("SUCCESS", response.getStatus());
+        assertEquals("pay_1", response.getGatewayTransactionId());
+        assertEquals(1, remoteCalls());
+        verify(paymentRecordService).finalizePayment("txn-1", "pay_1", "order_1", PaymentStatus.SUCCESS);
+    }
+
+    @Test
+    void getPaymentStatus_orderWithoutPayments_shouldNotFetchTheOrder() throws Exception {
+        stored(payment("txn-1", null, "order_1", PaymentStatus.AUTHORIZED));
+        when(orderClient.fetchPayments("order_1")).thenReturn(List.of());
+
+        razorpayService.getPaymentStatus("txn-1");
+
+        assertEquals(1, remoteCalls());
+        verify(orderClient, never()).fetch(anyString());
+        verify(paymentRecordService).updateStatus("txn-1", PaymentStatus.PENDING_USER_ACTION);
+    }
+
+    @Test
+    void refundPayment_withStoredPaymentId_shouldMakeOneCallAndOneRead() throws Exception {
+        stored(payment("txn-1", "pay_1", "order_1", PaymentStatus.SUCCESS));
+        when(paymentClient.refund(eq("pay_1"), any(JSONObject.class)))
+                .thenReturn(new Refund(new JSONObject().put("id", "rfnd_1").put("status", "processed")));
+
+        PaymentResponse response = razorpayService.refundPayment("txn-1", new BigDecimal("10.00"));
+
+        assertEquals("REFUNDED", response.getStatus());
+        assertEquals(1, remoteCalls());
+        verify(paymentRecordService, times(1)).findByTransactionId("txn-1");
+        verifyNoInteractions(orderClient);
+    }
+
+    @Test
+    void refundPayment_lessThanThePaymentAmount_shouldBePartialAndAllowAnotherRefund() throws Exception {
+        stored(payment("txn-1", "pay_1", "order_1", PaymentStatus.SUCCESS));
+        when(paymentClient.refund(eq("pay_1"), any(JSONObject.class)))
+                .thenReturn(new Refund(new JSONObject().put("id", "rfnd_1").put("status", "processed")));
+
+        razorpayService.refundPayment("txn-1", new BigDecimal("4.00"));
+
+        verify(paymentRecordService).finalizePayment("txn-1", "pay_1", "order_1", PaymentStatus.PARTIALLY_REFUNDED);
+
+        stored(payment("txn-1", "pay_1", "order_1", PaymentStatus.PARTIALLY_REFUNDED));
+        razorpayService.refundPayment("txn-1", new BigDecimal("6.00"));
+
+        verify(paymentClient, times(2)).refund(eq("pay_1"), any(JSONObject.class));
+    }
+
+    @Test
+    void refundPayment_withOrderIdOnly_shouldLookUpThePaymentOnceThenRefund() throws Exception {
+        stored(payment("txn-1", null, "order_1", PaymentStatus.AUTHORIZED));
+        when(orderClient.fetchPayments("order_1")).thenReturn(List.of(
+                new com.razorpay.Payment(new JSONObject().put("id", "pay_1").put("status", "captured"))));
+        when(paymentClient.refund(eq("pay_1"), any(JSONObject.class)))
+                .thenReturn(new Refund(new JSONObject().put("id", "rfnd_1").put("status", "processed")));
+
+        razorpayService.refundPayment("txn-1", new BigDecimal("10.00"));
+
+        assertEquals(2, remoteCalls());
+        verify(paymentRecordService, times(1)).findByTransactionId("txn-1");
+        verify(paymentRecordService).finalizePayment("txn-1", "pay_1", "order_1", PaymentStatus.REFUNDED);
+        verify(orderClient, never()).fetch(anyString());
+    }
+
+    @Test
+    void reconcile_listingCapHit_shouldFetchRowsOlderThanTheListingOneByOne() throws Exception {
+        Payment old = payment("txn-old", "pay_old", "order_old", PaymentStatus.AUTHORIZED);
+        old.setCreatedAt(LocalDateTime.now().minusDays(2));
+        Payment recent = payment("txn-new", "pay_new", "order_new", PaymentStatus.AUTHORIZED);
+        recent.setCreatedAt(LocalDateTime.now().minusMinutes(1));
+        // A busy merchant: every page is full of other payments from the last hour
+        long anHourAgo = Instant.now().getEpochSecond() - 3600;
+        List<com.razorpay.Payment> busyPage = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            busyPage.add(new com.razorpay.Payment(new JSONObject().put("id", "pay_other_" + i).put("status", "captured").put("created_at", anHourAgo)));
+        }
+        when(paymentClient.fetchAll(any(JSONObject.class))).thenReturn(busyPage);
+        when(paymentClient.fetch("pay_old")).thenReturn(new com.razorpay.Payment(new JSONObject().put("id", "pay_old").put("status", "captured")));
+
+        List<PaymentStatusUpdate> updates = razorpayService.reconcile(List.of(old, recent), () -> { });
+
+        assertEquals(1, updates.size());
+        assertEquals("txn-old", updates.get(0).transactionId());
+        assertEquals(PaymentStatus.SUCCESS, updates.get(0).status());
+        verify(paymentClient, times(20)).fetchAll(any(JSONObject.class));
+        verify(paymentClient, never()).fetch("pay_new"); // Created after the oldest listed payment, so the listing covered it
+    }
+
+    private void stored(Payment payment) {
+        when(paymentRecordService.findByTransactionId(payment.getTransactionId())).thenReturn(Optional.of(payment));
+    }
+
+    private long remoteCalls() {
+        return meterRegistry.find("payment.gateway.remote").timers().stream().mapToLong(Timer::count).sum();
+    }
+
+    private static Payment payment(String transactionId, String gatewayTransactionId, String gatewayOrderId, PaymentStatus status) {
+        Payment payment = new Payment();
+        payment.setTransactionId(transactionId);
+        payment.setGatewayTransactionId(gatewayTransactionId);
+        payment.setGatewayOrderId(gatewayOrderId);
+        payment.setPaymentGateway("razorpay");
+        payment.setAmount(new BigDecimal("10.00"));
+        payment.setCurrency("INR");
+        payment.setStatus(status);
+        return payment;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.dto.PaymentRequest;
+import com.example.multipaymentgateway.dto.PaymentResponse;
+import com.example.multipaymentgateway.exception.PaymentProcessingException;
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class SimulatorServiceTest {
+
+    @Mock
+    private PaymentRecordService paymentRecordService;
+
+    @Mock
+    private PaymentStatusUpdateBatcher paymentStatusUpdateBatcher;
+
+    private SimulatorService simulatorService;
+
+    @BeforeEach
+    void setUp() {
+        simulatorService = new SimulatorService(paymentRecordService, new RandomTransactionIdGenerator(), paymentStatusUpdateBatcher, 1000, 1);
+        ReflectionTestUtils.setField(simulatorService, "lifecycle", "stripe");
+        ReflectionTestUtils.setField(simulatorService, "latencyMedian", Duration.ofMillis(1));
+        ReflectionTestUtils.setField(simulatorService, "latencyP99", Duration.ofMillis(2));
+        ReflectionTestUtils.setField(simulatorService, "settleAfter", Duration.ofMillis(10));
+        lenient().when(paymentRecordService.finalizePayment(anyString(), anyString(), any()))
+                .thenAnswer(invocation -> payment(invocation.getArgument(0), invocation.getArgument(2)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        simulatorService.shutdown();
+    }
+
+    @Test
+    void processPendingPayment_shouldAcceptThenSettleAsynchronously() {
+        when(paymentStatusUpdateBatcher.submit(any())).thenReturn(true);
+
+        PaymentResponse response = simulatorService.processPendingPayment("txn-1", request());
+
+        assertEquals("PENDING", response.getStatus());
+        assertTrue(response.getGatewayTransactionId().startsWith("pi_sim_"));
+        verify(paymentStatusUpdateBatcher, timeout(2000)).submit(argThat(update ->
+                "txn-1".equals(update.transactionId()) && update.status() == PaymentStatus.SUCCESS && "simulator".equals(update.gatewayName())));
+    }
+
+    @Test
+    void processPendingPayment_throttled_shouldFailAndMarkPaymentFailed() {
+        ReflectionTestUtils.setField(simulatorService, "throttleRate", 1.0);
+
+        PaymentProcessingException exception = assertThrows(PaymentProcessingException.class,
+                () -> simulatorService.processPendingPayment("txn-2", request()));
+
+        assertEquals(429, ((SimulatedGatewayException) exception.getCause()).getStatusCode());
+        assertTrue(new GatewayFailurePredicate().test(exception), "throttling should count against the circuit breaker");
+        verify(paymentRecordService).updateStatus("txn-2", PaymentStatus.FAILED);
+        verifyNoInteractions(paymentStatusUpdateBatcher);
+    }
+
+    private static PaymentRequest request() {
+        PaymentRequest request = new PaymentRequest();
+        request.setAmount(new BigDecimal("25.00"));
+        request.setCurrency("USD");
+        request.setPaymentMethod("card");
+        request.setCustomerEmail("sim@example.com");
+        request.setPreferredGateway("simulator");
+        return request;
+    }
+
+    private static Payment payment(String transactionId, PaymentStatus status) {
+        Payment payment = new Payment();
+        payment.setTransactionId(transactionId);
+        payment.setGatewayTransactionId("pi_sim_test");
+        payment.setPaymentGateway("simulator");
+        payment.setAmount(new BigDecimal("25.00"));
+        payment.setCurrency("USD");
+        payment.setStatus(status);
+        return payment;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.Payment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the job against the real stale-payment query, so the age threshold is the one the database applies.
+ */
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=create-drop")
+@Import(PaymentRecordService.class)
+public class StalePaymentRecoveryJobTest {
+
+    @Autowired
+    private PaymentRecordService paymentRecordService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private final PaymentGateway stripeGateway = mock(PaymentGateway.class);
+    private final PaymentGateway razorpayGateway = mock(PaymentGateway.class);
+    private StalePaymentRecoveryJob job;
+
+    @BeforeEach
+    void setUp() {
+        job = new StalePaymentRecoveryJob(paymentRecordService, Map.of("stripeService", stripeGateway, "razorpayService", razorpayGateway));
+        ReflectionTestUtils.setField(job, "staleAfter", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(job, "batchSize", 100);
+    }
+
+    @Test
+    void recoverStalePayments_shouldRecoverOnlyStaleRowsAndSurviveFailures() {
+        pending("txn-stale-1", "stripe", LocalDateTime.now().minusHours(1));
+        pending("txn-stale-2", "razorpay", LocalDateTime.now().minusMinutes(30));
+        pending("txn-fresh", "stripe", LocalDateTime.now().minusMinutes(1)); // Its request may still be running
+        when(stripeGateway.recoverPayment("txn-stale-1")).thenThrow(new RuntimeException("Gateway unavailable"));
+
+        job.recoverStalePayments();
+
+        verify(stripeGateway).recoverPayment("txn-stale-1");
+        verify(razorpayGateway).recoverPayment("txn-stale-2"); // Still recovered after the other row failed
+        verify(stripeGateway, never()).recoverPayment("txn-fresh");
+        verifyNoMoreInteractions(stripeGateway, razorpayGateway);
+    }
+
+    @Test
+    void recoverStalePayments_rowsThatKeepFailing_shouldNotHideTheRowsBehindThem() {
+        ReflectionTestUtils.setField(job, "batchSize", 2);
+        pending("txn-stuck-1", "stripe", LocalDateTime.now().minusHours(2));
+        pending("txn-stuck-2", "stripe", LocalDateTime.now().minusHours(2));
+        pending("txn-stale", "razorpay", LocalDateTime.now().minusHours(1));
+        when(stripeGateway.recoverPayment(anyString())).thenThrow(new RuntimeException("Gateway unavailable"));
+
+        job.recoverStalePayments();
+
+        verify(razorpayGateway).recoverPayment("txn-stale"); // On the second page, behind a full page of failures
+        verify(stripeGateway, times(2)).recoverPayment(anyString());
+    }
+
+    // createdAt is set on insert, so it is backdated with a plain UPDATE
+    private void pending(String transactionId, String gateway, LocalDateTime createdAt) {
+        Payment payment = new Payment();
+        payment.setTransactionId(transactionId);
+        payment.setPaymentGateway(gateway);
+        payment.setAmount(new BigDecimal("10.00"));
+        payment.setCurrency("stripe".equals(gateway) ? "usd" : "INR");
+        paymentRecordService.createPending(payment);
+        entityManager.flush();
+        entityManager.getEntityManager()
+                .createNativeQuery("update payments set created_at = ?1 where transaction_id = ?2")
+                .setParameter(1, createdAt)
+                .setParameter(2, transactionId)
+                .executeUpdate();
+        entityManager.clear();
+    }
+}
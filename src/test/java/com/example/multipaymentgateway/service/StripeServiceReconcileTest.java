@@ -0,0 +1,100 @@
+package com.example.multipaymentgateway.service;
+
+import com.example.multipaymentgateway.model.Payment;
+import com.example.multipaymentgateway.model.PaymentStatus;
+import com.stripe.model.PaymentIntent;
+import com.stripe.model.PaymentIntentCollection;
+import com.stripe.net.RequestOptions;
+import com.stripe.param.PaymentIntentListParams;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Reconciliation against Stripe's list and retrieve calls, with the SDK's static methods mocked.
+ */
+@ExtendWith(MockitoExtension.class)
+public class StripeServiceReconcileTest {
+
+    @Mock
+    private PaymentRecordService paymentRecordService;
+
+    @Mock
+    private PaymentAuditLog paymentAuditLog;
+
+    @Mock
+    private MerchantCredentialRegistry merchantCredentials;
+
+    private StripeService stripeService;
+
+    @BeforeEach
+    void setUp() {
+        stripeService = new StripeService(paymentRecordService, new RandomTransactionIdGenerator(), new GatewayCallTimer(new SimpleMeterRegistry()), paymentAuditLog, null, merchantCredentials);
+        when(merchantCredentials.isStripeConfigured(any())).thenReturn(true);
+        when(merchantCredentials.stripeOptions(any())).thenReturn(RequestOptions.getDefault());
+    }
+
+    @Test
+    void reconcile_listingCapHit_shouldRetrieveRowsOlderThanTheListingOneByOne() {
+        Payment old = payment("txn-old", "pi_old", LocalDateTime.now().minusDays(2));
+        Payment recent = payment("txn-new", "pi_new", LocalDateTime.now().minusMinutes(1));
+        // A busy merchant: every page is full of other PaymentIntents from the last hour
+        long anHourAgo = Instant.now().getEpochSecond() - 3600;
+        List<PaymentIntent> busyPage = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            busyPage.add(paymentIntent("pi_other_" + i, "succeeded", anHourAgo));
+        }
+        PaymentIntentCollection intents = new PaymentIntentCollection();
+        intents.setData(busyPage);
+        intents.setHasMore(true);
+
+        try (MockedStatic<PaymentIntent> paymentIntents = mockStatic(PaymentIntent.class)) {
+            paymentIntents.when(() -> PaymentIntent.list(any(PaymentIntentListParams.class), any(RequestOptions.class))).thenReturn(intents);
+            paymentIntents.when(() -> PaymentIntent.retrieve(eq("pi_old"), any(RequestOptions.class)))
+                    .thenReturn(paymentIntent("pi_old", "succeeded", anHourAgo - 2 * 86400));
+
+            List<PaymentStatusUpdate> updates = stripeService.reconcile(List.of(old, recent), () -> { });
+
+            assertEquals(1, updates.size());
+            assertEquals("txn-old", updates.get(0).transactionId());
+            assertEquals(PaymentStatus.SUCCESS, updates.get(0).status());
+            paymentIntents.verify(() -> PaymentIntent.list(any(PaymentIntentListParams.class), any(RequestOptions.class)), times(20));
+            // Created after the oldest listed PaymentIntent, so the listing covered it
+            paymentIntents.verify(() -> PaymentIntent.retrieve(eq("pi_new"), any(RequestOptions.class)), never());
+        }
+    }
+
+    private static Payment payment(String transactionId, String paymentIntentId, LocalDateTime createdAt) {
+        Payment payment = new Payment();
+        payment.setTransactionId(transactionId);
+        payment.setGatewayTransactionId(paymentIntentId);
+        payment.setPaymentGateway("stripe");
+        payment.setAmount(new BigDecimal("10.00"));
+        payment.setCurrency("usd");
+        payment.setStatus(PaymentStatus.PENDING);
+        payment.setCreatedAt(createdAt);
+        return payment;
+    }
+
+    private static PaymentIntent paymentIntent(String id, String status, long created) {
+        PaymentIntent paymentIntent = new PaymentIntent();
+        paymentIntent.setId(id);
+        paymentIntent.setStatus(status);
+        paymentIntent.setCreated(created);
+        return paymentIntent;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.multipaymentgateway.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeOrderedTransactionIdGeneratorTest {
+
+    private final TimeOrderedTransactionIdGenerator generator = new TimeOrderedTransactionIdGenerator();
+
+    @Test
+    void nextId_shouldBeVersion7AndCarryTheCurrentTime() {
+        long before = System.currentTimeMillis();
+        UUID id = UUID.fromString(generator.nextId());
+
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        long timestamp = id.getMostSignificantBits() >>> 16;
+        assertTrue(timestamp >= before && timestamp <= System.currentTimeMillis() + 1000);
+    }
+
+    @Test
+    void nextId_shouldBeStrictlyIncreasingAsStrings() {
+        // Far more than 4096 per millisecond, so the sequence has to carry into the timestamp
+        String previous = generator.nextId();
+        for (int i = 0; i < 100_000; i++) {
+            String next = generator.nextId();
+            String prior = previous;
+            assertTrue(next.compareTo(prior) > 0, () -> next + " should sort after " + prior);
+            previous = next;
+        }
+    }
+
+    @Test
+    void nextId_concurrentCallers_shouldNeverCollide() throws InterruptedException {
+        int threads = 8;
+        int perThread = 20_000;
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    ids.add(generator.nextId());
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(threads * perThread, ids.size());
+    }
+}